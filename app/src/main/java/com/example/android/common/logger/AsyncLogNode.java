@@ -0,0 +1,156 @@
+package com.example.android.common.logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link LogNode} which hands log data to the next node on a background thread.
+ *
+ * <p>The calling thread only claims a slot in a preallocated ring buffer and stores the priority,
+ * tag, message and throwable references in it; nothing is allocated or formatted. A single
+ * consumer thread passes the entries, in order, to the next node, so formatting and output never
+ * happen on the logging thread. Logging never blocks: when the buffer is full the entry is
+ * dropped and counted instead.</p>
+ *
+ * <p>Any number of threads may log at the same time. The next node is only ever called from the
+ * consumer thread.</p>
+ */
+public class AsyncLogNode implements LogNode {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** How long the consumer sleeps at most before checking for entries again. */
+    private static final long MAX_PARK_NANOS = 100 * 1000 * 1000;
+
+    private final int mMask;
+    private final int[] mPriorities;
+    private final String[] mTags;
+    private final String[] mMessages;
+    private final Throwable[] mThrowables;
+
+    /** Sequence number of the entry stored in each slot; -1 until the slot is first used. */
+    private final AtomicLongArray mPublished;
+
+    /** Next sequence number to claim. */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /** Next sequence number to deliver. Only written by the consumer. */
+    private volatile long mHead = 0;
+
+    private volatile boolean mConsumerSleeping = false;
+    private final AtomicLong mDropped = new AtomicLong();
+    private final Thread mConsumer;
+
+    // The next LogNode in the chain.
+    private volatile LogNode mNext;
+
+    public AsyncLogNode(LogNode next) {
+        this(next, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param next The node receiving the log data, on the consumer thread.
+     * @param capacity Minimum number of entries which can wait for delivery; rounded up to a
+     *                 power of two.
+     */
+    public AsyncLogNode(LogNode next, int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mPriorities = new int[size];
+        mTags = new String[size];
+        mMessages = new String[size];
+        mThrowables = new Throwable[size];
+        mPublished = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mPublished.set(i, -1);
+        }
+        mNext = next;
+
+        mConsumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "AsyncLogNode");
+        mConsumer.setDaemon(true);
+        mConsumer.start();
+    }
+
+    /**
+     * Queues the log data for the next node. Returns immediately.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        long sequence;
+        do {
+            sequence = mTail.get();
+            if (sequence - mHead > mMask) {
+                mDropped.incrementAndGet();
+                return;
+            }
+        } while (!mTail.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mMask;
+        mPriorities[slot] = priority;
+        mTags[slot] = tag;
+        mMessages[slot] = msg;
+        mThrowables[slot] = tr;
+        // A volatile write, so the check below cannot miss a consumer going to sleep
+        mPublished.set(slot, sequence);
+
+        if (mConsumerSleeping) {
+            LockSupport.unpark(mConsumer);
+        }
+    }
+
+    /**
+     * Returns the number of entries dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    private void consume() {
+        while (true) {
+            long sequence = mHead;
+            int slot = (int) sequence & mMask;
+            if (mPublished.get(slot) != sequence) {
+                mConsumerSleeping = true;
+                if (mPublished.get(slot) != sequence) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                mConsumerSleeping = false;
+                continue;
+            }
+
+            int priority = mPriorities[slot];
+            String tag = mTags[slot];
+            String msg = mMessages[slot];
+            Throwable tr = mThrowables[slot];
+            mTags[slot] = null;
+            mMessages[slot] = null;
+            mThrowables[slot] = null;
+            mHead = sequence + 1;
+
+            LogNode next = mNext;
+            if (next != null) {
+                next.println(priority, tag, msg, tr);
+            }
+        }
+    }
+}
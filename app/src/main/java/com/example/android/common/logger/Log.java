@@ -35,7 +35,7 @@ public class Log {
     public static final int ASSERT = android.util.Log.ASSERT;
 
     // Stores the beginning of the LogNode topology.
-    private static LogNode mLogNode;
+    private static volatile LogNode mLogNode;
 
     /**
      * Returns the next LogNode in the linked list.
@@ -0,0 +1,240 @@
+package com.example.android.common.logger;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.support.v4.view.ViewCompat;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List which shows the log data it receives through the LogNode interface, one row per entry.
+ *
+ * <p>Unlike {@link LogView}, which appends to a single ever-growing TextView, the entries are kept
+ * in a circular buffer of fixed size, dropping the oldest once it is full, and rendered through a
+ * recycling list so only the visible rows are laid out. Entries arriving from any thread are
+ * collected and added to the list once per frame. While the list is scrolled to the end it follows
+ * new entries; once the user scrolls up it stays where it is.</p>
+ */
+public class LogListView extends ListView implements LogNode {
+
+    public static final int DEFAULT_CAPACITY = 500;
+
+    private final Object mPendingLock = new Object();
+    private List<String> mPending = new ArrayList<String>();
+    private List<String> mSpare = new ArrayList<String>();
+    private boolean mFlushScheduled = false;
+
+    // Circular buffer of formatted entries. Only touched on the UI thread.
+    private String[] mEntries = new String[DEFAULT_CAPACITY];
+    private int mFirst = 0;
+    private int mCount = 0;
+
+    private final EntryAdapter mAdapter = new EntryAdapter();
+
+    // The next LogNode in the chain.
+    private volatile LogNode mNext;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushPending();
+        }
+    };
+
+    public LogListView(Context context) {
+        super(context);
+        init();
+    }
+
+    public LogListView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public LogListView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init();
+    }
+
+    private void init() {
+        // Start at the bottom, like a terminal, and follow new entries while scrolled to the end
+        setStackFromBottom(true);
+        setTranscriptMode(AbsListView.TRANSCRIPT_MODE_NORMAL);
+        setDivider(null);
+        setAdapter(mAdapter);
+    }
+
+    /**
+     * Sets the number of entries kept. Must be called on the UI thread; drops the entries shown
+     * so far.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mEntries = new String[capacity];
+        mFirst = 0;
+        mCount = 0;
+        mAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Formats the log data and queues it for display with the next frame. May be called from any
+     * thread.
+     * @param priority Log level of the data being logged.  Verbose, Error, etc.
+     * @param tag Tag for for the log data.  Can be used to organize log statements.
+     * @param msg The actual message to be logged. The actual message to be logged.
+     * @param tr If an exception was thrown, this can be sent along for the logging facilities
+     *           to extract and print useful information.
+     */
+    @Override
+    public void println(int priority, String tag, String msg, Throwable tr) {
+        String line = format(priority, tag, msg, tr);
+
+        boolean schedule;
+        synchronized (mPendingLock) {
+            mPending.add(line);
+            schedule = !mFlushScheduled;
+            mFlushScheduled = true;
+        }
+        if (schedule) {
+            ViewCompat.postOnAnimation(this, mFlush);
+        }
+
+        LogNode next = mNext;
+        if (next != null) {
+            next.println(priority, tag, msg, tr);
+        }
+    }
+
+    public LogNode getNext() {
+        return mNext;
+    }
+
+    public void setNext(LogNode node) {
+        mNext = node;
+    }
+
+    /**
+     * Moves the entries queued since the last frame into the buffer and updates the list once.
+     */
+    private void flushPending() {
+        List<String> lines;
+        synchronized (mPendingLock) {
+            lines = mPending;
+            mPending = mSpare;
+            mFlushScheduled = false;
+        }
+
+        // When scrolled up, keep the same entry in view even though older ones get dropped
+        int firstVisible = getFirstVisiblePosition();
+        boolean atEnd = getLastVisiblePosition() >= mCount - 1;
+        View firstView = getChildAt(0);
+
+        int capacity = mEntries.length;
+        int dropped = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (mCount < capacity) {
+                mEntries[(mFirst + mCount) % capacity] = lines.get(i);
+                mCount++;
+            } else {
+                mEntries[mFirst] = lines.get(i);
+                mFirst = (mFirst + 1) % capacity;
+                dropped++;
+            }
+        }
+        lines.clear();
+        mSpare = lines;
+
+        mAdapter.notifyDataSetChanged();
+        if (dropped > 0 && !atEnd && firstView != null) {
+            setSelectionFromTop(Math.max(0, firstVisible - dropped), firstView.getTop());
+        }
+    }
+
+    /**
+     * Formats one entry as "priority\ttag\tmessage\tstack trace", leaving out missing parts.
+     */
+    static String format(int priority, String tag, String msg, Throwable tr) {
+        StringBuilder line = new StringBuilder();
+        appendIfNotNull(line, priorityName(priority));
+        appendIfNotNull(line, tag);
+        appendIfNotNull(line, msg);
+        if (tr != null) {
+            appendIfNotNull(line, android.util.Log.getStackTraceString(tr));
+        }
+        // Drop the trailing delimiter
+        if (line.length() > 0) {
+            line.setLength(line.length() - 1);
+        }
+        return line.toString();
+    }
+
+    private static void appendIfNotNull(StringBuilder line, String part) {
+        if (part != null && part.length() > 0) {
+            line.append(part).append('\t');
+        }
+    }
+
+    private static String priorityName(int priority) {
+        switch (priority) {
+            case android.util.Log.VERBOSE:
+                return "VERBOSE";
+            case android.util.Log.DEBUG:
+                return "DEBUG";
+            case android.util.Log.INFO:
+                return "INFO";
+            case android.util.Log.WARN:
+                return "WARN";
+            case android.util.Log.ERROR:
+                return "ERROR";
+            case android.util.Log.ASSERT:
+                return "ASSERT";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Shows the buffered entries, oldest first, recycling the row views.
+     */
+    private class EntryAdapter extends BaseAdapter {
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String getItem(int position) {
+            return mEntries[(mFirst + position) % mEntries.length];
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView row = (TextView) convertView;
+            if (row == null) {
+                row = new TextView(getContext());
+                row.setTypeface(Typeface.MONOSPACE);
+                row.setTextAppearance(getContext(), android.R.style.TextAppearance_Holo_Small);
+                int padding = (int) (4 * getResources().getDisplayMetrics().density + .5f);
+                row.setPadding(padding * 4, padding, padding * 4, padding);
+            }
+            row.setText(getItem(position));
+            return row;
+        }
+    }
+}
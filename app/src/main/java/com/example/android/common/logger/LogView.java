@@ -91,14 +91,16 @@ public class LogView extends TextView implements LogNode {
         appendIfNotNull(outputBuilder, exceptionStr, delimiter);
 
         // In case this was originally called from an AsyncTask or some other off-UI thread,
-        // make sure the update occurs within the UI thread.
-        ((Activity) getContext()).runOnUiThread( (new Thread(new Runnable() {
+        // make sure the update occurs within the UI thread. A plain Runnable is enough; there is
+        // no need to create a Thread for every line.
+        final String line = outputBuilder.toString();
+        ((Activity) getContext()).runOnUiThread(new Runnable() {
             @Override
             public void run() {
                 // Display the text we just generated within the LogView.
-                appendToLog(outputBuilder.toString());
+                appendToLog(line);
             }
-        })));
+        });
 
         if (mNext != null) {
             mNext.println(priority, tag, msg, tr);
@@ -21,7 +21,6 @@ import java.util.ArrayList;
 import com.radiusnetworks.campaignkit.Campaign;
 import com.radiusnetworks.campaignkit.CampaignKitNotifier;
 import com.radiusnetworks.campaignkitreference.DetailActivity;
-import com.radiusnetworks.campaignkitreference.MyApplication;
 import com.example.android.slidingtabsbasic.*;
 
 import android.R;
@@ -30,7 +29,11 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.res.Resources;
+import android.graphics.Color;
 import android.graphics.Typeface;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.StateListDrawable;
 import android.os.Build;
 import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
@@ -79,9 +82,38 @@ public class SlidingTabLayout extends HorizontalScrollView {
 
 	}
 
+	/**
+	 * Receives the tabs the user confirmed to delete with a long click. Set with
+	 * {@link #setOnTabDeleteListener(OnTabDeleteListener)}.
+	 */
+	public interface OnTabDeleteListener {
+
+		/**
+		 * Delete the tab at {@code position}. The tab is only removed once the pager's data says
+		 * so, e.g. through {@link #removeTab(int)}.
+		 */
+		void onTabDelete(int position);
+
+	}
+
+	/**
+	 * Receives clicks on the tabs before the pager does. Set with
+	 * {@link #setOnTabClickListener(OnTabClickListener)}.
+	 */
+	public interface OnTabClickListener {
+
+		/**
+		 * @return {@code true} if the click on the tab at {@code position} was handled, otherwise
+		 * the pager moves to the tab.
+		 */
+		boolean onTabClick(int position);
+
+	}
+
 	private static final int TITLE_OFFSET_DIPS = 24;
 	private static final int TAB_VIEW_PADDING_DIPS = 16;
 	private static final int TAB_VIEW_TEXT_SIZE_SP = 12;
+	private static final int DEFAULT_CHECKED_TAB_COLOR = 0x33000000;
 
 	private int mTitleOffset;
 
@@ -90,11 +122,17 @@ public class SlidingTabLayout extends HorizontalScrollView {
 
 	private ViewPager mViewPager;
 	private ViewPager.OnPageChangeListener mViewPagerPageChangeListener;
+	private OnTabDeleteListener mOnTabDeleteListener;
+	private OnTabClickListener mOnTabClickListener;
+	private int mCheckedTabColor = DEFAULT_CHECKED_TAB_COLOR;
 
 	private Context _context;
 
 	private final SlidingTabStrip mTabStrip;
 
+	private final View.OnClickListener mTabClickListener = new TabClickListener();
+	private final View.OnLongClickListener mTabLongClickListener = new TabLongClickListener();
+
 	public SlidingTabLayout(Context context) {
 		this(context, null);
 	}
@@ -156,6 +194,47 @@ public class SlidingTabLayout extends HorizontalScrollView {
 		mViewPagerPageChangeListener = listener;
 	}
 
+	/**
+	 * Set the {@link OnTabDeleteListener} for tabs deleted with a long click.
+	 */
+	public void setOnTabDeleteListener(OnTabDeleteListener listener) {
+		mOnTabDeleteListener = listener;
+	}
+
+	/**
+	 * Set the {@link OnTabClickListener}, e.g. to pick tabs instead of switching pages.
+	 */
+	public void setOnTabClickListener(OnTabClickListener listener) {
+		mOnTabClickListener = listener;
+	}
+
+	/**
+	 * Sets the color drawn behind checked tabs. Only applies to tabs created afterwards.
+	 */
+	public void setCheckedTabColor(int color) {
+		mCheckedTabColor = color;
+	}
+
+	/**
+	 * Mark the tab at {@code position} as checked or not. A tab stays checked when other tabs are
+	 * added, removed or moved around it.
+	 */
+	public void setTabChecked(int position, boolean checked) {
+		View tabView = mTabStrip.getChildAt(position);
+		if (tabView != null) {
+			tabView.setSelected(checked);
+		}
+	}
+
+	/**
+	 * Uncheck all tabs.
+	 */
+	public void clearCheckedTabs() {
+		for (int i = 0; i < mTabStrip.getChildCount(); i++) {
+			mTabStrip.getChildAt(i).setSelected(false);
+		}
+	}
+
 	/**
 	 * Set the custom layout to be inflated for the tab views.
 	 *
@@ -168,8 +247,9 @@ public class SlidingTabLayout extends HorizontalScrollView {
 	}
 
 	/**
-	 * Sets the associated view pager. Note that the assumption here is that the pager content
-	 * (number of tabs and tab titles) does not change after this call has been made.
+	 * Sets the associated view pager. If pages are later added, removed or moved in the pager's
+	 * adapter, report each change through {@link #addTab(int)}, {@link #removeTab(int)} and
+	 * {@link #moveTab(int, int)} so only the affected tabs are touched.
 	 */
 	public void setViewPager(ViewPager viewPager) {
 		mTabStrip.removeAllViews();
@@ -213,34 +293,100 @@ public class SlidingTabLayout extends HorizontalScrollView {
 
 	private void populateTabStrip() {
 		final PagerAdapter adapter = mViewPager.getAdapter();
-		final View.OnClickListener tabClickListener = new TabClickListener();
-		final View.OnLongClickListener tabLongClickListener = new TabLongClickListener();
 
 		for (int i = 0; i < adapter.getCount(); i++) {
-			View tabView = null;
-			TextView tabTitleView = null;
-
-			if (mTabViewLayoutId != 0) {
-				// If there is a custom tab view layout id set, try and inflate it
-				tabView = LayoutInflater.from(getContext()).inflate(mTabViewLayoutId, mTabStrip,
-						false);
-				tabTitleView = (TextView) tabView.findViewById(mTabViewTextViewId);
-			}
+			mTabStrip.addView(createTabView(adapter, i));
+		}
+	}
 
-			if (tabView == null) {
-				tabView = createDefaultTabView(getContext());
-			}
+	/**
+	 * Create the tab for the adapter page at {@code position}, titled from the adapter.
+	 */
+	private View createTabView(PagerAdapter adapter, int position) {
+		View tabView = null;
+		TextView tabTitleView = null;
+
+		if (mTabViewLayoutId != 0) {
+			// If there is a custom tab view layout id set, try and inflate it
+			tabView = LayoutInflater.from(getContext()).inflate(mTabViewLayoutId, mTabStrip,
+					false);
+			tabTitleView = (TextView) tabView.findViewById(mTabViewTextViewId);
+		}
 
-			if (tabTitleView == null && TextView.class.isInstance(tabView)) {
-				tabTitleView = (TextView) tabView;
-			}
+		if (tabView == null) {
+			tabView = createDefaultTabView(getContext());
+		}
+
+		if (tabTitleView == null && TextView.class.isInstance(tabView)) {
+			tabTitleView = (TextView) tabView;
+		}
+
+		tabTitleView.setText(adapter.getPageTitle(position));
+		setCheckableBackground(tabView);
+		tabView.setOnClickListener(mTabClickListener);
+		tabView.setOnLongClickListener(mTabLongClickListener);
+		tabView.setLongClickable(true);
 
-			tabTitleView.setText(adapter.getPageTitle(i));
-			tabView.setOnClickListener(tabClickListener);
-			tabView.setOnLongClickListener(tabLongClickListener);
-			tabView.setLongClickable(true);
+		return tabView;
+	}
+
+	/**
+	 * Draw the checked color behind {@code tabView} while it is selected, and its own background
+	 * otherwise.
+	 */
+	@SuppressWarnings("deprecation")
+	private void setCheckableBackground(View tabView) {
+		Drawable background = tabView.getBackground();
+		StateListDrawable checkable = new StateListDrawable();
+		checkable.addState(new int[] { R.attr.state_selected }, new ColorDrawable(mCheckedTabColor));
+		checkable.addState(new int[0], (background != null)
+				? background : new ColorDrawable(Color.TRANSPARENT));
+		// setBackground is API 16
+		tabView.setBackgroundDrawable(checkable);
+	}
 
-			mTabStrip.addView(tabView);
+	/**
+	 * Insert a tab for the page which the adapter now has at {@code position}. The other tabs are
+	 * left untouched.
+	 */
+	public void addTab(int position) {
+		if (mViewPager == null) {
+			return;
+		}
+		mTabStrip.addView(createTabView(mViewPager.getAdapter(), position), position);
+		syncSelectedTab();
+	}
+
+	/**
+	 * Remove the tab at {@code position} after its page has been removed from the adapter.
+	 */
+	public void removeTab(int position) {
+		if (position < 0 || position >= mTabStrip.getChildCount()) {
+			return;
+		}
+		mTabStrip.removeViewAt(position);
+		syncSelectedTab();
+	}
+
+	/**
+	 * Move an existing tab, without recreating it, after its page moved in the adapter.
+	 */
+	public void moveTab(int fromPosition, int toPosition) {
+		View tabView = mTabStrip.getChildAt(fromPosition);
+		if (tabView == null || fromPosition == toPosition) {
+			return;
+		}
+		mTabStrip.removeViewAt(fromPosition);
+		mTabStrip.addView(tabView, toPosition);
+		syncSelectedTab();
+	}
+
+	/**
+	 * Point the indicator back at the pager's current page after the tabs changed under it.
+	 */
+	private void syncSelectedTab() {
+		if (mViewPager != null) {
+			mTabStrip.onViewPagerPageChanged(mViewPager.getCurrentItem(), 0f);
 		}
 	}
 
@@ -327,6 +473,9 @@ public class SlidingTabLayout extends HorizontalScrollView {
 
 			for (int i = 0; i < mTabStrip.getChildCount(); i++) {
 				if (v == mTabStrip.getChildAt(i)) {
+					if (mOnTabClickListener != null && mOnTabClickListener.onTabClick(i)) {
+						return;
+					}
 					mViewPager.setCurrentItem(i);
 					return;
 				}
@@ -359,15 +508,10 @@ public class SlidingTabLayout extends HorizontalScrollView {
 							dialog.dismiss();
 
 							for (int i = 0; i < mTabStrip.getChildCount(); i++) {
-								if (view == mTabStrip.getChildAt(i) && _context != null) {
-									
-									MyApplication app = ((MyApplication) ((Activity) _context).getApplication());
-									app.removeCampaign(i);
-									((DetailActivity) _context).refreshList();
-									
-									//if no campaigns left on list, go back to MainActivity.
-									if (app.getTriggeredCampaignArray().size() == 0)
-										((Activity)_context).finish();
+								if (view == mTabStrip.getChildAt(i) && mOnTabDeleteListener != null) {
+									// The pager and these tabs are updated from the
+									// campaign store's change events.
+									mOnTabDeleteListener.onTabDelete(i);
 								}
 							}
 						}					
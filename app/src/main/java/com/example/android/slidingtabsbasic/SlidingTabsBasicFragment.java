@@ -16,7 +16,7 @@
 
 package com.example.android.slidingtabsbasic;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import com.example.android.common.logger.Log;
 import com.example.android.common.view.SlidingTabLayout;
@@ -24,6 +24,7 @@ import com.radiusnetworks.campaignkit.Campaign;
 import com.radiusnetworks.campaignkitreference.DetailActivity;
 import com.radiusnetworks.campaignkitreference.MyApplication;
 import com.radiusnetworks.campaignkitreference.R;
+import com.radiusnetworks.campaignkitreference.WebViewPool;
 
 import android.content.Context;
 import android.os.Bundle;
@@ -108,9 +109,9 @@ public class SlidingTabsBasicFragment extends Fragment {
 	 * {@link SlidingTabLayout}.
 	 */
 	class SamplePagerAdapter extends PagerAdapter {
-		ArrayList<Campaign> _campaignArray;
+		List<Campaign> _campaignArray;
 
-		public void setCampaignArray(ArrayList<Campaign> array){
+		public void setCampaignArray(List<Campaign> array){
 			_campaignArray = array;
 		}
 
@@ -148,20 +149,23 @@ public class SlidingTabsBasicFragment extends Fragment {
 
 		/**
 		 * Instantiate the {@link View} which should be displayed at {@code position}. Here we
-		 * inflate a layout from the apps resources and then change the text view to signify the position.
+		 * inflate a layout from the apps resources and put a WebView from the
+		 * {@link WebViewPool} in it.
 		 */
 		@Override
 		public Object instantiateItem(ViewGroup container, int position) {
 			// Inflate a new layout from our resources
-			View view = getActivity().getLayoutInflater().inflate(R.layout.pager_item,
-					container, false);
+			ViewGroup view = (ViewGroup) getActivity().getLayoutInflater().inflate(
+					R.layout.pager_item, container, false);
 			// Add the newly created View to the ViewPager
 			container.addView(view);
 
 			if (_campaignArray.get( position ) != null){
-				WebView contentView = (WebView) container.findViewById(R.id.contentWV);
-				contentView.loadData(_campaignArray.get( position ).getBody(),
-						"text/html", null);  
+				WebView contentView = getApplication().getWebViewPool().acquire(getActivity());
+				view.addView(contentView, new ViewGroup.LayoutParams(
+						ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+				getApplication().getContentCache().load(contentView,
+						_campaignArray.get( position ).getBody());
 
 			} else Log.e("instantiateItem","campaign at position "+position+" = null");
 			// Return the View
@@ -169,14 +173,22 @@ public class SlidingTabsBasicFragment extends Fragment {
 		}
 
 		/**
-		 * Destroy the item from the {@link ViewPager}. In our case this is simply removing the
-		 * {@link View}.
+		 * Destroy the item from the {@link ViewPager}. The page's WebView goes back to the pool
+		 * before the {@link View} is removed.
 		 */
 		@Override
 		public void destroyItem(ViewGroup container, int position, Object object) {
-			container.removeView((View) object);
+			ViewGroup view = (ViewGroup) object;
+			if (view.getChildCount() > 0) {
+				getApplication().getWebViewPool().release((WebView) view.getChildAt(0));
+			}
+			container.removeView(view);
 			Log.i(LOG_TAG, "destroyItem() [position: " + position + "]");
 		}
 
+		private MyApplication getApplication() {
+			return (MyApplication) getActivity().getApplication();
+		}
+
 	}
 }
@@ -17,7 +17,9 @@
 package com.example.android.slidingtabscolors;
 
 import com.example.android.common.logger.Log;
+import com.radiusnetworks.campaignkitreference.MyApplication;
 import com.radiusnetworks.campaignkitreference.R;
+import com.radiusnetworks.campaignkitreference.WebViewPool;
 import com.radiusnetworks.campaignkitreference.R.id;
 import com.radiusnetworks.campaignkitreference.R.layout;
 
@@ -35,17 +37,25 @@ import android.widget.TextView;
  */
 public class ContentFragment extends Fragment {
 
+    private static final String KEY_CONTENT_ID = "content_id";
     private static final String KEY_TITLE = "title";
     private static final String KEY_HTML_CONTENT = "html_content";
     private static final String KEY_INDICATOR_COLOR = "indicator_color";
     private static final String KEY_DIVIDER_COLOR = "divider_color";
-    
+
+    /**
+     * Borrowed from the {@link WebViewPool} while the view exists.
+     */
+    private WebView mContentView;
+
     /**
      * @return a new instance of {@link ContentFragment}, adding the parameters into a bundle and
      * setting them as arguments.
      */
-    public static ContentFragment newInstance(CharSequence title, String htmlContent) {
+    public static ContentFragment newInstance(String contentId, CharSequence title,
+            String htmlContent) {
         Bundle bundle = new Bundle();
+        bundle.putString(KEY_CONTENT_ID, contentId);
         bundle.putCharSequence(KEY_TITLE, title);
         bundle.putString(KEY_HTML_CONTENT, htmlContent);
 
@@ -55,6 +65,14 @@ public class ContentFragment extends Fragment {
         return fragment;
     }
 
+    /**
+     * @return the id of the content shown by this fragment, or {@code null} if none was given
+     */
+    public String getContentId() {
+        Bundle args = getArguments();
+        return (args != null) ? args.getString(KEY_CONTENT_ID) : null;
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
@@ -69,11 +87,12 @@ public class ContentFragment extends Fragment {
 
         if (args != null) {
 
-			
-			WebView contentView = (WebView) view.findViewById(R.id.contentWV);
-			contentView.loadData(args.getString(KEY_HTML_CONTENT),
-					"text/html", null);  
-			
+			ViewGroup container = (ViewGroup) view.findViewById(R.id.contentContainer);
+			mContentView = getApplication().getWebViewPool().acquire(getActivity());
+			container.addView(mContentView, new ViewGroup.LayoutParams(
+					ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+			getApplication().getContentCache().load(mContentView,
+					args.getString(KEY_HTML_CONTENT));
 
 		//	  TextView title = (TextView) view.findViewById(R.id.item_title);
 	    //    title.setText("Title: " + args.getCharSequence(KEY_TITLE));
@@ -89,4 +108,20 @@ public class ContentFragment extends Fragment {
         //   dividerColorView.setTextColor(dividerColor);
         }
     }
+
+    /**
+     * Hand the WebView back to the pool so the next page can reuse it.
+     */
+    @Override
+    public void onDestroyView() {
+        if (mContentView != null) {
+            getApplication().getWebViewPool().release(mContentView);
+            mContentView = null;
+        }
+        super.onDestroyView();
+    }
+
+    private MyApplication getApplication() {
+        return (MyApplication) getActivity().getApplication();
+    }
 }
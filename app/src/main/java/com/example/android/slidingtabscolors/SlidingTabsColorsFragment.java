@@ -19,28 +19,50 @@ package com.example.android.slidingtabscolors;
 import com.example.android.common.view.SlidingTabLayout;
 import com.radiusnetworks.campaignkit.Campaign;
 import com.radiusnetworks.campaignkit.CampaignKitNotifier;
+import com.radiusnetworks.campaignkit.Place;
+import com.radiusnetworks.campaignkitreference.CampaignKitIds;
+import com.radiusnetworks.campaignkitreference.CampaignViewRecorder;
 import com.radiusnetworks.campaignkitreference.DetailActivity;
+import com.radiusnetworks.campaignkitreference.MetricsRegistry;
 import com.radiusnetworks.campaignkitreference.MyApplication;
 import com.radiusnetworks.campaignkitreference.R;
 import com.radiusnetworks.campaignkitreference.R.id;
 import com.radiusnetworks.campaignkitreference.R.layout;
 import com.radiusnetworks.campaignkitreference.R.string;
+import com.radiusnetworks.campaignkitreference.core.CampaignChange;
+import com.radiusnetworks.campaignkitreference.core.CampaignStore;
+import com.radiusnetworks.campaignkitreference.core.ProximityIndex;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentPagerAdapter;
+import android.support.v4.app.FragmentTransaction;
+import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A basic sample which shows how to use {@link com.example.android.common.view.SlidingTabLayout}
@@ -54,14 +76,16 @@ public class SlidingTabsColorsFragment extends Fragment {
 	 * {@link SlidingTabLayout}.
 	 */
 	static class SamplePagerItem {
+		private final Campaign mCampaign;
 		private final CharSequence mTitle;
 		private final String mHtmlContent;
 		private final int mIndicatorColor;
 		private final int mDividerColor;
 
-		SamplePagerItem(CharSequence title, String htmlContent, int indicatorColor, int dividerColor) {
-			mTitle = title;
-			mHtmlContent = htmlContent;
+		SamplePagerItem(Campaign campaign, int indicatorColor, int dividerColor) {
+			mCampaign = campaign;
+			mTitle = campaign.getTitle();
+			mHtmlContent = campaign.getBody();
 			mIndicatorColor = indicatorColor;
 			mDividerColor = dividerColor;
 		}
@@ -70,7 +94,14 @@ public class SlidingTabsColorsFragment extends Fragment {
 		 * @return A new {@link Fragment} to be displayed by a {@link ViewPager}
 		 */
 		Fragment createFragment() {
-			return ContentFragment.newInstance(mTitle, mHtmlContent);
+			return ContentFragment.newInstance(mCampaign.getId(), mTitle, mHtmlContent);
+		}
+
+		/**
+		 * @return the {@link Campaign} shown on this tab
+		 */
+		Campaign getCampaign() {
+			return mCampaign;
 		}
 
 		/**
@@ -114,11 +145,82 @@ public class SlidingTabsColorsFragment extends Fragment {
 	private ViewPager mViewPager;
 
 	/**
-	 * List of {@link SamplePagerItem} which represent this sample's tabs.
+	 * The {@link PagerAdapter} for {@link #mViewPager}, kept to report tab changes to it.
+	 */
+	private SampleFragmentPagerAdapter mAdapter;
+
+	/**
+	 * List of {@link SamplePagerItem} which represent this sample's tabs. It shows the campaigns
+	 * of the campaign store, those at the nearest places first, and is only modified on the UI
+	 * thread, by applying the differences to that order.
 	 */
 	private List<SamplePagerItem> mTabs = new ArrayList<SamplePagerItem>();
-	private ArrayList<Campaign> mCampaignArray;
+
+	/**
+	 * Position of each campaign's tab by campaign id, rebuilt whenever the tabs change.
+	 */
+	private final Map<String, Integer> mTabPositions = new HashMap<String, Integer>();
 	private Activity mActivity;
+	private CampaignStore<Campaign> mCampaignStore;
+	private ProximityIndex<Place, CampaignKitNotifier.CKEventType> mProximityIndex;
+	private int mIndicatorColor;
+	private int mDividerColor;
+
+	private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Listener registered with the campaign store while this fragment is started. A fresh
+	 * instance is used for every registration so that changes posted for an earlier one can be
+	 * recognised and dropped.
+	 */
+	private CampaignStore.OnChangeListener<Campaign> mStoreListener;
+
+	/**
+	 * Listener registered with the proximity index while this fragment is started, replaced the
+	 * same way as {@link #mStoreListener}.
+	 */
+	private ProximityIndex.OnRankingChangeListener<Place> mRankingListener;
+
+	/**
+	 * Campaign to select once its tab is shown, from a notification. {@code null} if none.
+	 */
+	private String mPendingCampaignId;
+
+	/**
+	 * Counts the campaigns viewed, from the page shown by the pager.
+	 */
+	private CampaignViewRecorder mViewRecorder;
+
+	/**
+	 * Campaign of the page last reported shown to {@link #mViewRecorder}, {@code null} while
+	 * none is.
+	 */
+	private String mShownCampaignId;
+
+	/**
+	 * Whether tab clicks pick campaigns to delete instead of switching pages.
+	 */
+	private boolean mSelecting;
+
+	/**
+	 * Ids of the campaigns picked while {@link #mSelecting}, in the order they were picked.
+	 */
+	private final Set<String> mSelectedIds = new LinkedHashSet<String>();
+	private CharSequence mTitle;
+
+	/**
+	 * Whether the user has swiped the pager, clicked a tab or started selecting since this
+	 * fragment was started. Until then the tabs follow the proximity ranking; from then on they
+	 * keep their order, so nothing moves under the user's finger, and campaigns found meanwhile
+	 * are added after the shown tabs. The ranking is applied again when the screen is reopened.
+	 */
+	private boolean mOrderSettled;
+
+	/**
+	 * Time taken to apply a set of store changes to the tabs and the pager.
+	 */
+	private final MetricsRegistry.Histogram mPagerUpdateTime =
+			MyApplication.getMetrics().histogram("ui.pager.applyChanges");
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
@@ -126,20 +228,231 @@ public class SlidingTabsColorsFragment extends Fragment {
 
 		mActivity = this.getActivity();
 		MyApplication app = ((MyApplication) this.getActivity().getApplication());
-		mCampaignArray = app.getTriggeredCampaignArray();
+		mCampaignStore = app.getCampaignStore();
+		mProximityIndex = app.getProximityIndex();
+		mViewRecorder = app.getViewRecorder();
+		mIndicatorColor = Color.parseColor(getResources().getString(R.color.radius_blue));
+		mDividerColor = Color.parseColor(getResources().getString(R.color.radius_light_grey));
 
-		// BEGIN_INCLUDE (populate_tabs)
+		setHasOptionsMenu(true);
 
-		for (Campaign c : mCampaignArray){
-			mTabs.add(new SamplePagerItem(
-					c.getTitle(), // Title
-					c.getBody(), //HTML Content
-					Color.parseColor(getResources().getString(R.color.radius_blue)), // Indicator color
-					Color.parseColor(getResources().getString(R.color.radius_light_grey)) //  Divider color
-					));
+		if (savedInstanceState == null && getArguments() != null) {
+			mPendingCampaignId = getArguments().getString(DetailActivity.KEY_CAMPAIGN_ID);
 		}
+	}
 
+	/**
+	 * Select the tab of the campaign with {@code campaignId}, e.g. when a notification for it is
+	 * opened. The position comes from the index of tab positions, so nothing is rebuilt or
+	 * scanned. If the tab is not shown yet it is selected as soon as it is.
+	 */
+	public void showCampaign(String campaignId) {
+		mPendingCampaignId = campaignId;
+		selectPendingCampaign();
+	}
+
+	private void selectPendingCampaign() {
+		if (mPendingCampaignId == null || mViewPager == null) {
+			return;
+		}
+		Integer position = mTabPositions.get(mPendingCampaignId);
+		if (position != null) {
+			Log.d(LOG_TAG, "selecting campaign " + mPendingCampaignId + " at " + position);
+			mViewPager.setCurrentItem(position, false);
+			mPendingCampaignId = null;
+		} else if (mCampaignStore.indexOf(mPendingCampaignId) == CampaignChange.NO_POSITION) {
+			Log.w(LOG_TAG, "campaign " + mPendingCampaignId + " is not among the found campaigns");
+			mPendingCampaignId = null;
+		}
+		// Otherwise the store is ahead of the tabs; try again once its changes are applied
+	}
+
+	/**
+	 * Start following the campaign store and the proximity ranking. Whatever changed while this
+	 * fragment was stopped is applied as a single diff against the tabs already shown, so
+	 * returning to the screen only touches the tabs which actually changed.
+	 */
+	@Override
+	public void onStart() {
+		super.onStart();
+		mOrderSettled = false;
+
+		final CampaignStore.OnChangeListener<Campaign> listener =
+				new CampaignStore.OnChangeListener<Campaign>() {
+			@Override
+			public void onCampaignsChanged(List<CampaignChange<Campaign>> changes,
+										   final List<Campaign> campaigns) {
+				final CampaignStore.OnChangeListener<Campaign> self = this;
+				mUiHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (mStoreListener == self) {
+							showInProximityOrder(campaigns);
+						}
+					}
+				});
+			}
+		};
+		mStoreListener = listener;
+
+		final ProximityIndex.OnRankingChangeListener<Place> rankingListener =
+				new ProximityIndex.OnRankingChangeListener<Place>() {
+			@Override
+			public void onRankingChanged(List<ProximityIndex.Ranked<Place>> nearest) {
+				final ProximityIndex.OnRankingChangeListener<Place> self = this;
+				mUiHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (mRankingListener == self && !mOrderSettled) {
+							showInProximityOrder(mCampaignStore.getCampaigns());
+						}
+					}
+				});
+			}
+		};
+		mRankingListener = rankingListener;
+		mProximityIndex.addOnRankingChangeListener(rankingListener);
+
+		// BEGIN_INCLUDE (populate_tabs)
+		showInProximityOrder(mCampaignStore.addOnChangeListener(listener));
 		// END_INCLUDE (populate_tabs)
+		selectPendingCampaign();
+
+		// The pager may not lay out again when the screen comes back
+		if (mViewPager != null && mViewPager.getCurrentItem() < mTabs.size()) {
+			showPage(mViewPager.getCurrentItem());
+		}
+	}
+
+	/**
+	 * Report the page at {@code position} shown to the view recorder, unless it already is.
+	 */
+	private void showPage(int position) {
+		if (mStoreListener == null) {
+			// Stopped; nothing is shown
+			return;
+		}
+		Campaign campaign = mTabs.get(position).getCampaign();
+		if (!campaign.getId().equals(mShownCampaignId)) {
+			Log.d(LOG_TAG, "showing campaign " + campaign.getId() + " at " + position);
+			mShownCampaignId = campaign.getId();
+			mViewRecorder.onPageShown(campaign);
+		}
+	}
+
+	@Override
+	public void onStop() {
+		mViewRecorder.onPagesHidden();
+		mShownCampaignId = null;
+		if (mStoreListener != null) {
+			mCampaignStore.removeOnChangeListener(mStoreListener);
+			mStoreListener = null;
+		}
+		if (mRankingListener != null) {
+			mProximityIndex.removeOnRankingChangeListener(mRankingListener);
+			mRankingListener = null;
+		}
+		super.onStop();
+	}
+
+	/**
+	 * Show {@code campaigns}, those at the nearest places first and the rest in the order they
+	 * were found. Once {@link #mOrderSettled} the shown tabs keep their order instead and only
+	 * campaigns which came or went are added or removed. Only the tabs whose position differs
+	 * from the resulting order are touched. Must run on the UI thread.
+	 *
+	 * @param campaigns the found campaigns, in the order of the store
+	 */
+	private void showInProximityOrder(List<Campaign> campaigns) {
+		List<Campaign> ordered = ProximityIndex.orderByProximity(campaigns,
+				mProximityIndex.getNearest(), CampaignKitIds.CAMPAIGN_PLACE);
+		if (mOrderSettled) {
+			ordered = inShownOrder(ordered);
+		}
+		applyChanges(CampaignChange.diff(getShownCampaigns(), ordered, CampaignKitIds.CAMPAIGN));
+	}
+
+	/**
+	 * @return the shown campaigns which are still among {@code ordered}, in tab order, followed
+	 * by the campaigns of {@code ordered} which are not shown yet, in their order there
+	 */
+	private List<Campaign> inShownOrder(List<Campaign> ordered) {
+		Set<String> ids = new HashSet<String>(ordered.size());
+		for (Campaign campaign : ordered) {
+			ids.add(campaign.getId());
+		}
+		List<Campaign> campaigns = new ArrayList<Campaign>(ordered.size());
+		for (SamplePagerItem item : mTabs) {
+			if (ids.contains(item.getCampaign().getId())) {
+				campaigns.add(item.getCampaign());
+			}
+		}
+		for (Campaign campaign : ordered) {
+			if (!mTabPositions.containsKey(campaign.getId())) {
+				campaigns.add(campaign);
+			}
+		}
+		return campaigns;
+	}
+
+	/**
+	 * @return the campaigns currently shown, in tab order
+	 */
+	private List<Campaign> getShownCampaigns() {
+		List<Campaign> campaigns = new ArrayList<Campaign>(mTabs.size());
+		for (SamplePagerItem item : mTabs) {
+			campaigns.add(item.getCampaign());
+		}
+		return campaigns;
+	}
+
+	/**
+	 * Apply changes to the tabs, the tab strip and the pager. Must run on the UI thread.
+	 */
+	private void applyChanges(List<CampaignChange<Campaign>> changes) {
+		if (changes.isEmpty()) {
+			return;
+		}
+		long start = MetricsRegistry.Histogram.start();
+
+		for (CampaignChange<Campaign> change : changes) {
+			SamplePagerItem item = null;
+			if (change.getType() == CampaignChange.Type.ADDED) {
+				item = new SamplePagerItem(change.getCampaign(), mIndicatorColor, mDividerColor);
+			}
+			change.applyTo(mTabs, item);
+
+			if (mSlidingTabLayout == null) {
+				continue;
+			}
+			switch (change.getType()) {
+				case ADDED:
+					mSlidingTabLayout.addTab(change.getToPosition());
+					break;
+				case REMOVED:
+					mSlidingTabLayout.removeTab(change.getFromPosition());
+					break;
+				case MOVED:
+					mSlidingTabLayout.moveTab(change.getFromPosition(), change.getToPosition());
+					break;
+			}
+		}
+
+		mTabPositions.clear();
+		for (int i = 0; i < mTabs.size(); i++) {
+			mTabPositions.put(mTabs.get(i).getCampaign().getId(), i);
+		}
+		// Checked tabs keep their views, so only campaigns which are gone need unpicking
+		if (mSelectedIds.retainAll(mTabPositions.keySet())) {
+			onSelectionChanged();
+		}
+
+		if (mAdapter != null) {
+			mAdapter.notifyDataSetChanged();
+		}
+		mPagerUpdateTime.recordSince(start);
+		Log.d(LOG_TAG, "applied " + changes.size() + " change(s), " + mTabs.size() + " tab(s)");
+		selectPendingCampaign();
 	}
 
 	/**
@@ -174,7 +487,8 @@ public class SlidingTabsColorsFragment extends Fragment {
 		// BEGIN_INCLUDE (setup_viewpager)
 		// Get the ViewPager and set it's PagerAdapter so that it can display items
 		mViewPager = (ViewPager) view.findViewById(R.id.viewpager);
-		mViewPager.setAdapter(new SampleFragmentPagerAdapter(getChildFragmentManager()));
+		mAdapter = new SampleFragmentPagerAdapter(getChildFragmentManager());
+		mViewPager.setAdapter(mAdapter);
 
 
 
@@ -209,21 +523,177 @@ public class SlidingTabsColorsFragment extends Fragment {
 		// END_INCLUDE (tab_colorizer)
 		// END_INCLUDE (setup_slidingtablayout)
 
-		//NOT WORKING YET
-		//Sending to the specific Campaign that was triggered
-		try{
-			if (getArguments() != null){
-				String campaignId = getArguments().getString(DetailActivity.KEY_CAMPAIGN_ID,"");
-				Log.d("SlidingTabsColorsFragment","setCurrentItem to campaignId: "+campaignId );
-				mViewPager.setCurrentItem(Integer.parseInt(campaignId), true);
+		// Once the user swipes or clicks a tab, stop reordering the tabs by proximity
+		mSlidingTabLayout.setOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+
+			@Override
+			public void onPageScrollStateChanged(int state) {
+				if (state != ViewPager.SCROLL_STATE_IDLE) {
+					mOrderSettled = true;
+				}
+			}
+
+		});
+
+		// Deleting a tab removes its campaign from the store, which removes the tab
+		mSlidingTabLayout.setOnTabDeleteListener(new SlidingTabLayout.OnTabDeleteListener() {
+
+			@Override
+			public void onTabDelete(int position) {
+				if (position >= mTabs.size()) {
+					return;
+				}
+				MyApplication app = (MyApplication) mActivity.getApplication();
+				app.removeCampaign(mTabs.get(position).getCampaign().getId());
+
+				// If no campaigns are left, go back to MainActivity
+				if (app.getCampaignStore().isEmpty()) {
+					mActivity.finish();
+				}
 			}
-		}
-		catch(NumberFormatException nfe){ nfe.printStackTrace(); }
-		catch(Exception e){ e.printStackTrace(); }
 
+		});
+
+		// While selecting, a click picks the tab's campaign instead of showing it
+		mSlidingTabLayout.setOnTabClickListener(new SlidingTabLayout.OnTabClickListener() {
+
+			@Override
+			public boolean onTabClick(int position) {
+				if (!mSelecting || position >= mTabs.size()) {
+					return false;
+				}
+				String campaignId = mTabs.get(position).getCampaign().getId();
+				boolean checked = mSelectedIds.add(campaignId);
+				if (!checked) {
+					mSelectedIds.remove(campaignId);
+				}
+				mSlidingTabLayout.setTabChecked(position, checked);
+				onSelectionChanged();
+				return true;
+			}
+
+		});
+
+		// Jump to the campaign whose notification opened the screen
+		selectPendingCampaign();
 	}
 	// END_INCLUDE (fragment_onviewcreated)
 
+	@Override
+	public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+		inflater.inflate(R.menu.campaigns, menu);
+	}
+
+	@Override
+	public void onPrepareOptionsMenu(Menu menu) {
+		menu.findItem(R.id.action_select).setVisible(!mSelecting && !mTabs.isEmpty());
+		menu.findItem(R.id.action_select_all).setVisible(mSelecting);
+		menu.findItem(R.id.action_done_selecting).setVisible(mSelecting);
+		MenuItem delete = menu.findItem(R.id.action_delete_selected);
+		delete.setVisible(mSelecting);
+		delete.setEnabled(!mSelectedIds.isEmpty());
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		int itemId = item.getItemId();
+		if (itemId == R.id.action_select) {
+			setSelecting(true);
+		} else if (itemId == R.id.action_select_all) {
+			for (int i = 0; i < mTabs.size(); i++) {
+				mSelectedIds.add(mTabs.get(i).getCampaign().getId());
+				if (mSlidingTabLayout != null) {
+					mSlidingTabLayout.setTabChecked(i, true);
+				}
+			}
+			onSelectionChanged();
+		} else if (itemId == R.id.action_delete_selected) {
+			confirmDeleteSelected();
+		} else if (itemId == R.id.action_done_selecting) {
+			setSelecting(false);
+		} else {
+			return super.onOptionsItemSelected(item);
+		}
+		return true;
+	}
+
+	/**
+	 * Enter or leave the mode in which tab clicks pick campaigns to delete. Leaving it unpicks
+	 * every campaign.
+	 */
+	private void setSelecting(boolean selecting) {
+		if (mSelecting == selecting) {
+			return;
+		}
+		mSelecting = selecting;
+		if (selecting) {
+			mOrderSettled = true;
+			mTitle = mActivity.getTitle();
+		} else {
+			mSelectedIds.clear();
+			if (mSlidingTabLayout != null) {
+				mSlidingTabLayout.clearCheckedTabs();
+			}
+		}
+		onSelectionChanged();
+	}
+
+	/**
+	 * Show the number of picked campaigns in the title and update the menu to match.
+	 */
+	private void onSelectionChanged() {
+		if (mSelecting) {
+			mActivity.setTitle(getString(string.campaigns_selected, mSelectedIds.size()));
+		} else if (mTitle != null) {
+			mActivity.setTitle(mTitle);
+			mTitle = null;
+		}
+		getActivity().supportInvalidateOptionsMenu();
+	}
+
+	/**
+	 * Ask once before deleting all picked campaigns, then remove them from the store in a single
+	 * write, which updates the tabs once.
+	 */
+	private void confirmDeleteSelected() {
+		if (mSelectedIds.isEmpty()) {
+			return;
+		}
+		final Set<String> campaignIds = new HashSet<String>(mSelectedIds);
+		new AlertDialog.Builder(mActivity)
+				.setTitle(string.delete_selected_title)
+				.setMessage(getString(string.delete_selected_message, campaignIds.size()))
+				.setPositiveButton(string.action_delete_selected,
+						new DialogInterface.OnClickListener() {
+
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						dialog.dismiss();
+						MyApplication app = (MyApplication) mActivity.getApplication();
+						int removed = app.removeCampaigns(campaignIds);
+						Log.d(LOG_TAG, "deleted " + removed + " selected campaign(s)");
+						setSelecting(false);
+
+						// If no campaigns are left, go back to MainActivity
+						if (app.getCampaignStore().isEmpty()) {
+							mActivity.finish();
+						}
+					}
+
+				})
+				.setNegativeButton(android.R.string.cancel, null)
+				.show();
+	}
+
+	@Override
+	public void onDestroyView() {
+		setSelecting(false);
+		mSlidingTabLayout = null;
+		mViewPager = null;
+		mAdapter = null;
+		super.onDestroyView();
+	}
+
 	/**
 	 * The {@link FragmentPagerAdapter} used to display pages in this sample. The individual pages
 	 * are instances of {@link ContentFragment} which just display three lines of text. Each page is
@@ -231,11 +701,53 @@ public class SlidingTabsColorsFragment extends Fragment {
 	 * <p>
 	 * The important section of this class is the {@link #getPageTitle(int)} method which controls
 	 * what is displayed in the {@link SlidingTabLayout}.
+	 * <p>
+	 * {@link FragmentPagerAdapter} only detaches the pages it destroys, so the pages of removed
+	 * campaigns are removed from the fragment manager once the pager has let go of them.
 	 */
 	class SampleFragmentPagerAdapter extends FragmentPagerAdapter {
 
+		private final FragmentManager mFragmentManager;
+
+		/**
+		 * Pages created or reattached by this adapter, attached or not, by campaign id.
+		 */
+		private final Map<String, Fragment> mPages = new HashMap<String, Fragment>();
+
 		SampleFragmentPagerAdapter(FragmentManager fm) {
 			super(fm);
+			mFragmentManager = fm;
+		}
+
+		@Override
+		public Object instantiateItem(ViewGroup container, int position) {
+			ContentFragment page = (ContentFragment) super.instantiateItem(container, position);
+			mPages.put(page.getContentId(), page);
+			return page;
+		}
+
+		/**
+		 * Commit the pager's changes, then remove the pages whose campaign is no longer shown.
+		 */
+		@Override
+		public void finishUpdate(ViewGroup container) {
+			super.finishUpdate(container);
+
+			FragmentTransaction removal = null;
+			Iterator<Map.Entry<String, Fragment>> pages = mPages.entrySet().iterator();
+			while (pages.hasNext()) {
+				Map.Entry<String, Fragment> page = pages.next();
+				if (!mTabPositions.containsKey(page.getKey())) {
+					if (removal == null) {
+						removal = mFragmentManager.beginTransaction();
+					}
+					removal.remove(page.getValue());
+					pages.remove();
+				}
+			}
+			if (removal != null) {
+				removal.commitAllowingStateLoss();
+			}
 		}
 
 		/**
@@ -246,12 +758,7 @@ public class SlidingTabsColorsFragment extends Fragment {
 		@Override
 		public Fragment getItem(int i) {
 			Log.i("SlidingTabsColorsFragment","SampleFragmentPagerAdapter.getItem position = "+i);
-			if (mActivity != null && mCampaignArray != null && mCampaignArray.get(i) != null)
-				((MyApplication) mActivity.getApplication())
-				.setCampaignViewed(mCampaignArray.get(i));
-			else
-				Log.i("SlidingTabsColorsFragment","SampleFragmentPagerAdapter.what's null? mActivity="
-						+mActivity+". mCampaignArray="+mCampaignArray);
+			// Not a view: pages are also created offscreen and when the tabs change
 			return mTabs.get(i).createFragment();
 		}
 
@@ -260,11 +767,37 @@ public class SlidingTabsColorsFragment extends Fragment {
 			return mTabs.size();
 		}
 
+		/**
+		 * Pages are identified by campaign rather than by position, so a page keeps its fragment
+		 * when other campaigns are added or removed around it.
+		 */
 		@Override
-		public void setPrimaryItem (ViewGroup container, int position, Object object) {
-			Log.i("SlidingTabsColorsFragment","SampleFragmentPagerAdapter.setPrimaryItem position = "+position);
+		public long getItemId(int position) {
+			return mTabs.get(position).getCampaign().getIdAsInt();
+		}
 
+		/**
+		 * Locate an existing page after {@link #notifyDataSetChanged()}: pages whose campaign is
+		 * still present keep their fragment and follow it when the tabs are reordered, pages whose
+		 * campaign was removed are destroyed.
+		 */
+		@Override
+		public int getItemPosition(Object object) {
+			Integer position = mTabPositions.get(((ContentFragment) object).getContentId());
+			return (position != null) ? position : POSITION_NONE;
+		}
+
+		/**
+		 * Tell the view recorder when the page shown changes. This is called on every layout of
+		 * the pager, mostly with the same page.
+		 */
+		@Override
+		public void setPrimaryItem (ViewGroup container, int position, Object object) {
 			super.setPrimaryItem ( container,  position, object);
+
+			if (position < mTabs.size()) {
+				showPage(position);
+			}
 		}
 		// BEGIN_INCLUDE (pageradapter_getpagetitle)
 		/**
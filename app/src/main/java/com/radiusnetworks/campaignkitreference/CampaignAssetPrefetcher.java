@@ -0,0 +1,141 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkitreference.core.AssetStore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the images, stylesheets and scripts referenced by campaign content ahead of time, so
+ * campaigns render without a network connection.
+ * <p/>
+ * After a sync {@link #prefetch(Collection)} hands every campaign body to an {@link AssetStore},
+ * which downloads the resources not stored yet, a few at a time on background threads, and
+ * deletes those no longer referenced.
+ * <p/>
+ * Stored resources reach the WebView two ways: through {@link #getWebViewClient()}, which serves
+ * them from {@code shouldInterceptRequest}, and as the {@link CampaignContentCache.ResourceResolver}
+ * used when rendering campaign HTML.
+ */
+public class CampaignAssetPrefetcher implements CampaignContentCache.ResourceResolver {
+    private static final String TAG = "AssetPrefetcher";
+
+    /**
+     * Downloads running at the same time when no other limit is provided.
+     */
+    public static final int DEFAULT_PARALLEL_DOWNLOADS = 3;
+
+    static final String DIRECTORY_NAME = "campaign-assets";
+
+    private final AssetStore store;
+
+    private final WebViewClient webViewClient = new WebViewClient() {
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+            AssetStore.Asset asset = store.get(url);
+            if (asset == null) {
+                return null;
+            }
+            try {
+                return new WebResourceResponse(asset.getMimeType(), asset.getEncoding(),
+                        new FileInputStream(asset.getBlob()));
+            } catch (IOException e) {
+                // Deleted since it was indexed; let the WebView fetch it
+                store.forget(url);
+                return null;
+            }
+        }
+    };
+
+    public CampaignAssetPrefetcher(@NonNull Context context) {
+        this(context, DEFAULT_PARALLEL_DOWNLOADS);
+    }
+
+    /**
+     * @param context
+     *         Context whose cache directory holds the downloads
+     * @param parallelDownloads
+     *         Maximum number of downloads running at once
+     */
+    public CampaignAssetPrefetcher(@NonNull Context context, int parallelDownloads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelDownloads, parallelDownloads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "AssetPrefetch-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        store = new AssetStore(new File(context.getCacheDir(), DIRECTORY_NAME), executor);
+    }
+
+    /**
+     * Client to install on campaign WebViews so cached resources are served locally.
+     */
+    @NonNull
+    public WebViewClient getWebViewClient() {
+        return webViewClient;
+    }
+
+    /**
+     * Download every resource referenced by {@code campaigns} which is not cached yet, and forget
+     * those no longer referenced. Returns immediately; downloads run in the background.
+     *
+     * @param campaigns
+     *         The complete campaign set, e.g. after a sync
+     */
+    public void prefetch(@NonNull Collection<Campaign> campaigns) {
+        List<String> bodies = new ArrayList<>(campaigns.size());
+        for (Campaign campaign : campaigns) {
+            bodies.add(campaign.getBody());
+        }
+        int queued = store.prefetch(bodies);
+        Log.d(TAG, campaigns.size() + " campaigns, " + queued + " resources to download");
+    }
+
+    @Nullable
+    @Override
+    public String resolveUrl(@NonNull String url) {
+        AssetStore.Asset asset = store.get(url);
+        return (asset != null) ? Uri.fromFile(asset.getBlob()).toString() : null;
+    }
+
+    @Nullable
+    @Override
+    public String readStylesheet(@NonNull String url) {
+        return store.readStylesheet(url);
+    }
+}
@@ -0,0 +1,419 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.webkit.WebView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Disk cache of rendered campaign HTML.
+ * <p/>
+ * {@link com.radiusnetworks.campaignkit.Campaign#getBody()} is raw HTML from the Campaign Kit
+ * server. Before it is shown it is normalized once: the document is declared as UTF-8, images
+ * are pointed at local copies and stylesheets are inlined, as far as the {@link ResourceResolver}
+ * can supply them. The result is written to the app's cache directory, named after the SHA-1 of
+ * the body and of the local copies the resolver has of the resources it references, and WebViews
+ * load that file directly. Showing the same body again, including after a restart, skips the
+ * normalization entirely, unless a resource it references was downloaded since: a page rendered
+ * before its images were prefetched is rendered again once they are.
+ * <p/>
+ * Files are evicted least recently used first once their total size exceeds the limit. Rendering
+ * and file IO happen on a background thread; {@link #load(WebView, String)} must be called on the
+ * main thread.
+ */
+public class CampaignContentCache {
+    private static final String TAG = "CampaignContentCache";
+
+    /**
+     * Name of the directory, inside the app cache directory, holding the rendered files.
+     */
+    static final String DIRECTORY_NAME = "campaign-html";
+
+    private static final String SUFFIX = ".html";
+    private static final String CHARSET = "UTF-8";
+
+    private static final Pattern CHARSET_META = Pattern.compile(
+            "<meta\\b[^>]*\\bcharset\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HEAD_TAG = Pattern.compile(
+            "<head\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HTML_TAG = Pattern.compile(
+            "<html\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IMG_SRC = Pattern.compile(
+            "(<img\\b[^>]*?\\bsrc\\s*=\\s*)([\"'])(.*?)\\2", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LINK_TAG = Pattern.compile(
+            "<link\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern STYLESHEET_REL = Pattern.compile(
+            "\\brel\\s*=\\s*([\"']?)stylesheet\\1", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HREF = Pattern.compile(
+            "\\bhref\\s*=\\s*([\"'])(.*?)\\1", Pattern.CASE_INSENSITIVE);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Supplies local copies of the resources referenced by campaign HTML.
+     */
+    public interface ResourceResolver {
+        /**
+         * Also asked for stylesheets, to tell whether they can be inlined.
+         *
+         * @return A URL the WebView can load {@code url} from locally, or {@code null} to leave
+         * the reference as it is
+         */
+        @Nullable
+        String resolveUrl(@NonNull String url);
+
+        /**
+         * @return The text of the stylesheet at {@code url}, or {@code null} if it is not
+         * available locally
+         */
+        @Nullable
+        String readStylesheet(@NonNull String url);
+    }
+
+    /**
+     * Leaves every reference untouched.
+     */
+    public static final ResourceResolver NO_RESOURCES = new ResourceResolver() {
+        @Override
+        public String resolveUrl(@NonNull String url) {
+            return null;
+        }
+
+        @Override
+        public String readStylesheet(@NonNull String url) {
+            return null;
+        }
+    };
+
+    private final File directory;
+    private final long maxBytes;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile ResourceResolver resolver = NO_RESOURCES;
+
+    /**
+     * Size of each rendered file by key, least recently used first. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    /**
+     * @param context
+     *         Context whose cache directory holds the files
+     * @param maxBytes
+     *         Total size of the rendered files above which the least recently used are deleted
+     */
+    public CampaignContentCache(@NonNull Context context, long maxBytes) {
+        this.directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        this.maxBytes = maxBytes;
+
+        HandlerThread thread =
+                new HandlerThread("CampaignContent", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                loadIndex();
+            }
+        });
+    }
+
+    /**
+     * Resolver used for content rendered from now on. Content on disk which this resolver would
+     * render differently is rendered again when it is next shown.
+     */
+    public void setResourceResolver(@Nullable ResourceResolver resolver) {
+        this.resolver = (resolver != null) ? resolver : NO_RESOURCES;
+    }
+
+    /**
+     * Show {@code body} in {@code view}, rendering it first if it is not cached yet.
+     * <p/>
+     * If {@code view} is asked to load other content before rendering completes the rendered
+     * file is not shown in it.
+     */
+    public void load(@NonNull final WebView view, @NonNull final String body) {
+        // A later load into the same view replaces the tag
+        view.setTag(body);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                final File file = getOrRender(body);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (view.getTag() != body) {
+                            return;
+                        }
+                        if (file != null) {
+                            view.loadUrl(Uri.fromFile(file).toString());
+                        } else {
+                            view.loadData(body, "text/html", null);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Delete every rendered file.
+     */
+    public void clear() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CampaignContentCache.this) {
+                    for (String key : entries.keySet()) {
+                        fileFor(key).delete();
+                    }
+                    entries.clear();
+                    totalBytes = 0;
+                }
+            }
+        });
+    }
+
+    /**
+     * The SHA-1 of {@code body} and of what {@code resolver} resolves the images and stylesheets
+     * it references to, as lowercase hex.
+     */
+    @NonNull
+    static String keyFor(@NonNull String body, @NonNull ResourceResolver resolver) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(body.getBytes(CHARSET));
+            for (String url : collectResources(body)) {
+                String local = resolver.resolveUrl(url);
+                digest.update(("\n" + url + "\n" + ((local != null) ? local : ""))
+                        .getBytes(CHARSET));
+            }
+            byte[] hash = digest.digest();
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Both SHA-1 and UTF-8 are required to exist on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The URLs of the images and stylesheets {@code html} references, which are what
+     * rendering resolves
+     */
+    @NonNull
+    static List<String> collectResources(@NonNull String html) {
+        List<String> urls = new ArrayList<>();
+        Matcher image = IMG_SRC.matcher(html);
+        while (image.find()) {
+            urls.add(image.group(3));
+        }
+        Matcher link = LINK_TAG.matcher(html);
+        while (link.find()) {
+            String tag = link.group();
+            Matcher href = HREF.matcher(tag);
+            if (STYLESHEET_REL.matcher(tag).find() && href.find()) {
+                urls.add(href.group(2));
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Normalize campaign HTML for local display.
+     */
+    @NonNull
+    static String render(@NonNull String body, @NonNull ResourceResolver resolver) {
+        String html = CHARSET_META.matcher(body).replaceAll("");
+        html = declareCharset(html);
+        html = resolveImages(html, resolver);
+        return inlineStylesheets(html, resolver);
+    }
+
+    private static String declareCharset(String html) {
+        String meta = "<meta charset=\"" + CHARSET.toLowerCase(Locale.US) + "\">";
+        Matcher head = HEAD_TAG.matcher(html);
+        if (head.find()) {
+            return html.substring(0, head.end()) + meta + html.substring(head.end());
+        }
+        Matcher root = HTML_TAG.matcher(html);
+        if (root.find()) {
+            return html.substring(0, root.end()) + "<head>" + meta + "</head>" +
+                    html.substring(root.end());
+        }
+        return "<!DOCTYPE html><html><head>" + meta + "</head><body>" + html + "</body></html>";
+    }
+
+    private static String resolveImages(String html, ResourceResolver resolver) {
+        Matcher matcher = IMG_SRC.matcher(html);
+        StringBuffer out = new StringBuffer(html.length());
+        while (matcher.find()) {
+            String local = resolver.resolveUrl(matcher.group(3));
+            String src = (local != null) ? local : matcher.group(3);
+            matcher.appendReplacement(out, Matcher.quoteReplacement(
+                    matcher.group(1) + matcher.group(2) + src + matcher.group(2)));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    private static String inlineStylesheets(String html, ResourceResolver resolver) {
+        Matcher matcher = LINK_TAG.matcher(html);
+        StringBuffer out = new StringBuffer(html.length());
+        while (matcher.find()) {
+            String tag = matcher.group();
+            String replacement = tag;
+            Matcher href = HREF.matcher(tag);
+            if (STYLESHEET_REL.matcher(tag).find() && href.find()) {
+                String css = resolver.readStylesheet(href.group(2));
+                if (css != null) {
+                    replacement = "<style>" + css + "</style>";
+                }
+            }
+            matcher.appendReplacement(out, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    /**
+     * Background thread. Returns the rendered file, or {@code null} if it could not be written.
+     */
+    @Nullable
+    private File getOrRender(String body) {
+        // Rendered with what the resolver has now, even if it is replaced meanwhile
+        ResourceResolver resolver = this.resolver;
+        String key = keyFor(body, resolver);
+        File file = fileFor(key);
+        synchronized (this) {
+            if (entries.get(key) != null) {
+                if (file.exists()) {
+                    file.setLastModified(System.currentTimeMillis());
+                    return file;
+                }
+                // Deleted behind our back, e.g. by the system clearing the cache
+                totalBytes -= entries.remove(key);
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + directory);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        String html = render(body, resolver);
+        File temp = new File(directory, key + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), CHARSET);
+            writer.write(html);
+            writer.close();
+            writer = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache campaign content " + key, e);
+            temp.delete();
+            return null;
+        } finally {
+            closeQuietly(writer);
+        }
+        Log.d(TAG, "Rendered " + key + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+        synchronized (this) {
+            entries.put(key, file.length());
+            totalBytes += file.length();
+            trim();
+        }
+        return file;
+    }
+
+    /**
+     * Background thread. Rebuild the index from the files left by earlier runs, oldest first.
+     */
+    private void loadIndex() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return (l < r) ? -1 : ((l == r) ? 0 : 1);
+            }
+        });
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(SUFFIX)) {
+                    // Left over from an interrupted write
+                    file.delete();
+                    continue;
+                }
+                String key = name.substring(0, name.length() - SUFFIX.length());
+                entries.put(key, file.length());
+                totalBytes += file.length();
+            }
+            trim();
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the total size is within the limit.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            fileFor(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private static void closeQuietly(Writer writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.support.annotation.NonNull;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkit.CampaignKitManager;
+import com.radiusnetworks.campaignkitreference.core.CampaignCore;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+
+/**
+ * The Campaign Kit manager as the {@link CampaignCore}'s backend.
+ * <p/>
+ * Also the backend executor: tasks run on the {@link CampaignKitHandle}'s thread once the
+ * manager has started, which is the only place the backend methods are called.
+ */
+class CampaignKitBackend implements CampaignCore.Backend<Campaign>, Executor {
+    private final CampaignKitHandle handle;
+
+    CampaignKitBackend(@NonNull CampaignKitHandle handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public void execute(@NonNull final Runnable task) {
+        handle.execute(new CampaignKitHandle.ManagerTask() {
+            @Override
+            public void run(@NonNull CampaignKitManager manager) {
+                task.run();
+            }
+        });
+    }
+
+    @Override
+    public void removeCampaign(Campaign campaign) {
+        handle.getManager().removeCampaign(campaign);
+    }
+
+    @Override
+    public Collection<? extends Campaign> getFoundCampaigns() {
+        return handle.getManager().getFoundCampaigns();
+    }
+
+    @Override
+    public void setCampaignViewed(Campaign campaign) {
+        handle.getManager().setCampaignViewed(campaign);
+    }
+}
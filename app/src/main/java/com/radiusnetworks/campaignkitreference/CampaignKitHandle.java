@@ -0,0 +1,131 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.radiusnetworks.campaignkit.CampaignKitManager;
+import com.radiusnetworks.campaignkit.CampaignKitNotifier;
+import com.radiusnetworks.campaignkit.Configuration;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stands in for the {@link CampaignKitManager} while it is being created in the background.
+ * <p/>
+ * Building the configuration, creating the manager and starting it takes long enough to delay the
+ * first frame of the app noticeably. The handle itself costs nothing to create;
+ * {@link #initialize(Context, Map, CampaignKitNotifier, ManagerTask)} does the expensive work on
+ * the handle's own thread. Work for the manager is passed to {@link #execute(ManagerTask)}, which
+ * runs it on that same thread, in order, once the manager has started. Nothing is lost by asking
+ * early.
+ */
+public class CampaignKitHandle {
+    /**
+     * Work that needs the manager.
+     */
+    public interface ManagerTask {
+        /**
+         * Called on the handle's thread with the started manager.
+         */
+        void run(@NonNull CampaignKitManager manager);
+    }
+
+    private final StartupTrace trace;
+    private final Handler handler;
+    private final AtomicBoolean initialized = new AtomicBoolean();
+    private volatile CampaignKitManager manager;
+
+    /**
+     * @param trace
+     *         Receives the timing of each initialization phase
+     */
+    public CampaignKitHandle(@NonNull StartupTrace trace) {
+        this.trace = trace;
+
+        // Default priority: the app waits for Campaign Kit to start
+        HandlerThread thread = new HandlerThread("CampaignKit");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Create and start the manager in the background. Only the first call has any effect, so
+     * there is never more than one manager.
+     *
+     * @param context
+     *         Context for the manager
+     * @param settings
+     *         Campaign Kit configuration settings
+     * @param notifier
+     *         Receives Campaign Kit events; it is registered before the manager starts
+     * @param beforeStart
+     *         Called with the manager after the notifier is set but before the manager starts,
+     *         for setup which must be in place before the first event
+     */
+    public void initialize(@NonNull final Context context,
+                           @NonNull final Map<String, String> settings,
+                           @NonNull final CampaignKitNotifier notifier,
+                           @Nullable final ManagerTask beforeStart) {
+        if (!initialized.compareAndSet(false, true)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                trace.begin("Campaign Kit configuration");
+                Configuration config = new Configuration(settings);
+                trace.end("Campaign Kit configuration");
+
+                trace.begin("Campaign Kit manager");
+                CampaignKitManager created = CampaignKitManager.getInstance(appContext, config);
+                created.setNotifier(notifier);
+                if (beforeStart != null) {
+                    beforeStart.run(created);
+                }
+                trace.end("Campaign Kit manager");
+
+                trace.begin("Campaign Kit start");
+                created.start();
+                trace.end("Campaign Kit start");
+
+                manager = created;
+            }
+        });
+    }
+
+    /**
+     * Run {@code task} on the handle's thread once the manager has started. Tasks run in the
+     * order they were passed in. {@link #initialize(Context, Map, CampaignKitNotifier,
+     * ManagerTask)} must have been called first.
+     */
+    public void execute(@NonNull final ManagerTask task) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                task.run(manager);
+            }
+        });
+    }
+
+    /**
+     * @return {@code true} once the manager has started
+     */
+    public boolean isReady() {
+        return manager != null;
+    }
+
+    /**
+     * The manager, for code which can only run after it started, such as Campaign Kit callbacks.
+     *
+     * @return The started manager, or {@code null} if it is still starting
+     */
+    @Nullable
+    public CampaignKitManager getManager() {
+        return manager;
+    }
+}
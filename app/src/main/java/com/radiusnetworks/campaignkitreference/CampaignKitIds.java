@@ -0,0 +1,59 @@
+package com.radiusnetworks.campaignkitreference;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkit.Place;
+import com.radiusnetworks.campaignkitreference.core.CampaignExpiry;
+import com.radiusnetworks.campaignkitreference.core.IdExtractor;
+import com.radiusnetworks.campaignkitreference.core.ProximityIndex;
+import com.radiusnetworks.campaignkitreference.core.TimerWheel;
+
+import java.util.Date;
+
+/**
+ * How the campaign core identifies the Campaign Kit types.
+ */
+public final class CampaignKitIds {
+    public static final IdExtractor<Campaign> CAMPAIGN = new IdExtractor<Campaign>() {
+        @Override
+        public String getId(Campaign campaign) {
+            return campaign.getId();
+        }
+    };
+
+    public static final IdExtractor<Place> PLACE = new IdExtractor<Place>() {
+        @Override
+        public String getId(Place place) {
+            return place.getId();
+        }
+    };
+
+    /**
+     * A campaign belongs to the place it was found at.
+     */
+    public static final ProximityIndex.CampaignPlaces<Campaign> CAMPAIGN_PLACE =
+            new ProximityIndex.CampaignPlaces<Campaign>() {
+                @Override
+                public int getPlaceKey(Campaign campaign) {
+                    Place place = campaign.foundAt();
+                    return (place != null) ? place.getIdAsInt() : ProximityIndex.NO_PLACE;
+                }
+            };
+
+    /**
+     * A campaign ends at its end date, or as soon as it is no longer active.
+     */
+    public static final CampaignExpiry.Deadlines<Campaign> CAMPAIGN_END =
+            new CampaignExpiry.Deadlines<Campaign>() {
+                @Override
+                public long getDeadline(Campaign campaign) {
+                    if (!campaign.isActive()) {
+                        return 0;
+                    }
+                    Date endAt = campaign.getEndAt();
+                    return (endAt != null) ? endAt.getTime() : TimerWheel.NO_DEADLINE;
+                }
+            };
+
+    private CampaignKitIds() {
+    }
+}
@@ -0,0 +1,51 @@
+package com.radiusnetworks.campaignkitreference;
+
+import com.radiusnetworks.campaignkit.CampaignKitNotifier.CKEventType;
+import com.radiusnetworks.campaignkit.Place;
+import com.radiusnetworks.campaignkitreference.core.PlaceFlapFilter;
+
+/**
+ * How the {@link PlaceFlapFilter} and the
+ * {@link com.radiusnetworks.campaignkitreference.core.ProximityIndex} read Campaign Kit places
+ * and events.
+ * <p/>
+ * Places from region events have no distance, Campaign Kit reports {@code -1}, so only the places
+ * from ranged beacons are subject to the distance hysteresis, and ranked by distance.
+ */
+final class CampaignKitPlaceClassifier implements PlaceFlapFilter.Classifier<Place, CKEventType> {
+    static final CampaignKitPlaceClassifier INSTANCE = new CampaignKitPlaceClassifier();
+
+    private CampaignKitPlaceClassifier() {
+    }
+
+    @Override
+    public int getKey(Place place) {
+        return place.getIdAsInt();
+    }
+
+    @Override
+    public double getDistance(Place place) {
+        return place.getDistance();
+    }
+
+    @Override
+    public PlaceFlapFilter.Transition getTransition(CKEventType event) {
+        switch (event) {
+            case CKEventDidEnterRegion:
+            case CKEventDidDetectStateInside:
+                return PlaceFlapFilter.Transition.ENTER;
+            case CKEventDidExitRegion:
+            case CKEventDidDetectStateOutside:
+                return PlaceFlapFilter.Transition.EXIT;
+            default:
+                return PlaceFlapFilter.Transition.NONE;
+        }
+    }
+
+    @Override
+    public CKEventType getEvent(PlaceFlapFilter.Transition transition) {
+        return (transition == PlaceFlapFilter.Transition.ENTER)
+                ? CKEventType.CKEventDidEnterRegion
+                : CKEventType.CKEventDidExitRegion;
+    }
+}
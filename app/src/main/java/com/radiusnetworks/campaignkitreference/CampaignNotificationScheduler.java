@@ -0,0 +1,279 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkit.CampaignNotificationBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Posts the background notifications for found {@link Campaign}s, grouped and rate limited.
+ * <p/>
+ * Creating a {@link CampaignNotificationBuilder} per found campaign means one NotificationManager
+ * post, one wakeup and one inflated notification per campaign. Instead, campaigns scheduled here
+ * are collected for {@link #GROUP_WINDOW_MILLIS}. A lone campaign is posted as the same
+ * notification {@code CampaignNotificationBuilder} would build; several campaigns are posted as
+ * one inbox style summary.
+ * <p/>
+ * At most {@link #MAX_POSTS_PER_MINUTE} notifications are posted in any minute. Campaigns found
+ * while the budget is used up wait, and are merged into the next post once the budget allows it.
+ * The large icon bitmap and the click {@link PendingIntent}s are created once and reused.
+ * <p/>
+ * All work happens on a dedicated background thread; {@link #schedule(Campaign)} may be called
+ * from any thread.
+ */
+public class CampaignNotificationScheduler {
+    private static final String TAG = "NotificationScheduler";
+
+    /**
+     * How long to collect campaigns before posting them together.
+     */
+    public static final long GROUP_WINDOW_MILLIS = 3000;
+
+    /**
+     * Maximum number of notifications posted in any 60 second period.
+     */
+    public static final int MAX_POSTS_PER_MINUTE = 4;
+
+    /**
+     * Notification id of the summary. Single campaign notifications use the campaign id, matching
+     * {@link CampaignNotificationBuilder}.
+     */
+    static final int SUMMARY_NOTIFICATION_ID = -1;
+
+    /**
+     * Intent extra {@link CampaignNotificationBuilder} sets for notifications it builds.
+     */
+    private static final String KEY_FROM_NOTIFICATION = "isStartingFromPushNotification";
+
+    private static final long BUDGET_PERIOD_MILLIS = 60 * 1000;
+    private static final int MAX_SUMMARY_LINES = 5;
+
+    private final Context context;
+    private final Class<?> onClickActivity;
+    private final int smallIcon;
+    private final NotificationManager notificationManager;
+    private final Handler handler;
+
+    // The fields below are only accessed on the handler thread
+
+    /**
+     * Campaigns waiting to be posted, by id, in the order they were found.
+     */
+    private final Map<String, Campaign> pending = new LinkedHashMap<>();
+
+    /**
+     * Uptime of the most recent posts, used as a ring of {@link #MAX_POSTS_PER_MINUTE} entries.
+     */
+    private final long[] postTimes = new long[MAX_POSTS_PER_MINUTE];
+    private int nextPostSlot = 0;
+
+    private final SparseArray<PendingIntent> campaignIntents = new SparseArray<>();
+    private PendingIntent summaryIntent;
+    private Bitmap largeIcon;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param context
+     *         Context used to build and post the notifications
+     * @param onClickActivity
+     *         Activity opened when a notification is tapped
+     * @param smallIcon
+     *         Resource id of the notification icon; also decoded once for the large icon
+     */
+    public CampaignNotificationScheduler(@NonNull Context context,
+                                         @NonNull Class<?> onClickActivity,
+                                         int smallIcon) {
+        this.context = context.getApplicationContext();
+        this.onClickActivity = onClickActivity;
+        this.smallIcon = smallIcon;
+        this.notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        for (int i = 0; i < postTimes.length; i++) {
+            postTimes[i] = Long.MIN_VALUE;
+        }
+
+        HandlerThread thread =
+                new HandlerThread("CampaignNotifications", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Queue a notification for {@code campaign}. A campaign already waiting is not queued twice.
+     */
+    public void schedule(@NonNull final Campaign campaign) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                boolean startWindow = pending.isEmpty();
+                pending.put(campaign.getId(), campaign);
+                if (startWindow) {
+                    handler.postDelayed(flushRunnable, GROUP_WINDOW_MILLIS);
+                }
+            }
+        });
+    }
+
+    /**
+     * Post whatever is pending, if the budget allows it.
+     */
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long oldestPost = postTimes[nextPostSlot];
+        if (oldestPost != Long.MIN_VALUE && now - oldestPost < BUDGET_PERIOD_MILLIS) {
+            long wait = BUDGET_PERIOD_MILLIS - (now - oldestPost);
+            Log.d(TAG, "Notification budget used up, holding " + pending.size() +
+                    " campaign(s) for " + wait + "ms");
+            handler.postDelayed(flushRunnable, wait);
+            return;
+        }
+
+        List<Campaign> campaigns = new ArrayList<>(pending.values());
+        pending.clear();
+
+        if (campaigns.size() == 1) {
+            Campaign campaign = campaigns.get(0);
+            notificationManager.notify(campaign.getIdAsInt(), buildCampaignNotification(campaign));
+        } else {
+            notificationManager.notify(SUMMARY_NOTIFICATION_ID, buildSummaryNotification(campaigns));
+        }
+
+        postTimes[nextPostSlot] = now;
+        nextPostSlot = (nextPostSlot + 1) % postTimes.length;
+    }
+
+    /**
+     * Same notification as {@link CampaignNotificationBuilder} posts for a single campaign.
+     */
+    private Notification buildCampaignNotification(Campaign campaign) {
+        NotificationCompat.Builder builder = newBuilder()
+                .setTicker(campaign.getMessage())
+                .setContentTitle(campaign.getTitle())
+                .setContentText(campaign.getMessage())
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(campaign.getMessage()))
+                .setContentIntent(getCampaignIntent(campaign));
+        return decorate(builder.build());
+    }
+
+    private Notification buildSummaryNotification(List<Campaign> campaigns) {
+        String title = campaigns.size() + " new campaigns";
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                .setBigContentTitle(title);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < campaigns.size(); i++) {
+            String campaignTitle = campaigns.get(i).getTitle();
+            if (i < MAX_SUMMARY_LINES) {
+                style.addLine(campaignTitle);
+            }
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(campaignTitle);
+        }
+        if (campaigns.size() > MAX_SUMMARY_LINES) {
+            style.setSummaryText("+" + (campaigns.size() - MAX_SUMMARY_LINES) + " more");
+        }
+
+        NotificationCompat.Builder builder = newBuilder()
+                .setTicker(title)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setNumber(campaigns.size())
+                .setStyle(style)
+                .setContentIntent(getSummaryIntent());
+        return decorate(builder.build());
+    }
+
+    private NotificationCompat.Builder newBuilder() {
+        return new NotificationCompat.Builder(context)
+                .setSmallIcon(smallIcon)
+                .setLargeIcon(getLargeIcon())
+                .setAutoCancel(true);
+    }
+
+    /**
+     * Sound and lights, as set by {@link CampaignNotificationBuilder}.
+     */
+    private static Notification decorate(Notification notification) {
+        notification.defaults |= Notification.DEFAULT_SOUND;
+        notification.defaults |= Notification.DEFAULT_LIGHTS;
+        notification.flags |= Notification.FLAG_SHOW_LIGHTS;
+        notification.ledARGB = 0xff00ff00;
+        notification.ledOnMS = 300;
+        notification.ledOffMS = 1000;
+        return notification;
+    }
+
+    private Bitmap getLargeIcon() {
+        if (largeIcon == null) {
+            largeIcon = BitmapFactory.decodeResource(context.getResources(), smallIcon);
+        }
+        return largeIcon;
+    }
+
+    /**
+     * Opens {@code onClickActivity} on {@code campaign}. Each campaign gets its own request code
+     * so the intents do not overwrite each other's extras.
+     */
+    private PendingIntent getCampaignIntent(Campaign campaign) {
+        int requestCode = campaign.getIdAsInt();
+        PendingIntent intent = campaignIntents.get(requestCode);
+        if (intent == null) {
+            Intent click = new Intent(context, onClickActivity)
+                    .putExtra(DetailActivity.KEY_CAMPAIGN_ID, campaign.getId())
+                    .putExtra(KEY_FROM_NOTIFICATION, true)
+                    .setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            intent = createPendingIntent(click, requestCode);
+            campaignIntents.put(requestCode, intent);
+        }
+        return intent;
+    }
+
+    private PendingIntent getSummaryIntent() {
+        if (summaryIntent == null) {
+            Intent click = new Intent(context, onClickActivity)
+                    .putExtra(KEY_FROM_NOTIFICATION, true)
+                    .setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            summaryIntent = createPendingIntent(click, SUMMARY_NOTIFICATION_ID);
+        }
+        return summaryIntent;
+    }
+
+    private PendingIntent createPendingIntent(Intent click, int requestCode) {
+        return TaskStackBuilder.create(context)
+                .addParentStack(onClickActivity)
+                .addNextIntent(click)
+                .getPendingIntent(requestCode, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
@@ -0,0 +1,396 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkitreference.core.CampaignCore;
+import com.radiusnetworks.campaignkitreference.core.RecordLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out which campaigns were actually viewed, and reports each once per session to Campaign
+ * Kit, in batches.
+ * <p/>
+ * The pager creates pages ahead of the one shown and again whenever its data changes, so a page
+ * being created says little about it being seen. Instead the pager reports the page it shows
+ * with {@link #onPageShown(Campaign)} and {@link #onPagesHidden()} when the screen goes away. A
+ * page shown for {@link #MIN_VIEW_MILLIS} or longer was viewed; how long it was shown goes to the
+ * {@code ui.campaign.dwell} histogram. A campaign viewed again within the same session, which
+ * ends after {@link #SESSION_TIMEOUT_MILLIS} without a view, is not reported again. The views are
+ * passed to {@link CampaignCore#setCampaignsViewed(java.util.Collection, Runnable)} every
+ * {@link #FLUSH_INTERVAL_MILLIS}.
+ * <p/>
+ * Views survive the process in a {@link RecordLog} with magic "CKVW" and records, all
+ * big-endian:
+ * <pre>
+ *     record  0  operation, viewed or reported
+ *             4  campaign id
+ *             8  time of the view, wall clock
+ *            16  milliseconds shown
+ *            20  CRC32 of the above
+ * </pre>
+ * A view is appended as soon as it counts and a batch is marked reported in one write once
+ * Campaign Kit has it, so views are reported at least once. Replaying the log restores the
+ * session and the views not reported yet; it is rewritten to just those when a session ends or
+ * it has grown well past them.
+ * <p/>
+ * All work happens on a dedicated background thread; the methods may be called from any thread.
+ */
+public class CampaignViewRecorder {
+    private static final String TAG = "CampaignViewRecorder";
+
+    /**
+     * How long a page must be shown to count as viewed
+     */
+    public static final long MIN_VIEW_MILLIS = 1000;
+
+    /**
+     * Time without views after which a session ends
+     */
+    public static final long SESSION_TIMEOUT_MILLIS = 30 * 60 * 1000;
+
+    /**
+     * How often views are reported to Campaign Kit
+     */
+    public static final long FLUSH_INTERVAL_MILLIS = 60 * 1000;
+
+    private static final String FILE_NAME = "campaign-views.log";
+    private static final int MAGIC = 0x434b5657; // "CKVW"
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = 24;
+
+    private static final int OP_VIEWED = 1;
+    private static final int OP_REPORTED = 2;
+
+    /**
+     * Records beyond twice the number of views kept tolerated before rewriting
+     */
+    private static final int COMPACT_SLACK = 64;
+
+    private final CampaignCore<Campaign, ?, ?> core;
+    private final Handler handler;
+
+    // Only used on the handler's thread
+    private final RecordLog log;
+    private final Map<Integer, Long> sessionViews = new LinkedHashMap<>();
+    private final Map<Integer, Long> unreported = new LinkedHashMap<>();
+    private long lastViewMillis = 0;
+    private Campaign shown;
+    private long shownSince;
+    private boolean flushScheduled = false;
+    private boolean reporting = false;
+
+    // Single writer, the handler's thread
+    private volatile long views;
+    private volatile long repeatViews;
+    private volatile long reported;
+    private volatile int pending;
+
+    private final MetricsRegistry.Histogram dwellTime =
+            MyApplication.getMetrics().histogram("ui.campaign.dwell");
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            report();
+        }
+    };
+
+    /**
+     * @param context
+     *         Context for the app's files directory
+     * @param core
+     *         Reports the views to Campaign Kit
+     */
+    public CampaignViewRecorder(@NonNull Context context,
+                                @NonNull CampaignCore<Campaign, ?, ?> core) {
+        this.core = core;
+        this.log = new RecordLog(new File(context.getFilesDir(), FILE_NAME), MAGIC, VERSION,
+                RECORD_SIZE);
+
+        HandlerThread thread =
+                new HandlerThread("CampaignViews", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Restore the session and the views not reported before the process last stopped, and
+     * report those with the next batch. Call once, before anything else.
+     */
+    public void start() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                restore();
+                if (!unreported.isEmpty()) {
+                    scheduleFlush();
+                }
+            }
+        });
+    }
+
+    /**
+     * {@code campaign}'s page is now the one shown. Call only when the page shown changes.
+     */
+    public void onPageShown(@NonNull final Campaign campaign) {
+        final long now = SystemClock.elapsedRealtime();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                endShown(now);
+                shown = campaign;
+                shownSince = now;
+            }
+        });
+    }
+
+    /**
+     * No page is shown anymore, e.g. because the screen stopped.
+     */
+    public void onPagesHidden() {
+        final long now = SystemClock.elapsedRealtime();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                endShown(now);
+            }
+        });
+    }
+
+    /**
+     * Count a view of {@code campaign} which was not shown in the pager, e.g. in an alert.
+     */
+    public void recordView(@NonNull final Campaign campaign) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                countView(campaign.getIdAsInt(), 0);
+            }
+        });
+    }
+
+    /**
+     * @return Number of views reported or waiting to be, one per campaign and session
+     */
+    public long getViews() {
+        return views;
+    }
+
+    /**
+     * @return Number of views not reported as they repeated one of the same session
+     */
+    public long getRepeatViews() {
+        return repeatViews;
+    }
+
+    /**
+     * @return Number of views Campaign Kit has recorded
+     */
+    public long getReported() {
+        return reported;
+    }
+
+    /**
+     * @return Number of views waiting to be reported
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    private void endShown(long now) {
+        if (shown == null) {
+            return;
+        }
+        long dwell = now - shownSince;
+        // Histograms are in nanoseconds
+        dwellTime.record(TimeUnit.MILLISECONDS.toNanos(dwell));
+        if (dwell >= MIN_VIEW_MILLIS) {
+            countView(shown.getIdAsInt(), dwell);
+        }
+        shown = null;
+    }
+
+    private void countView(int campaignId, long dwell) {
+        long now = System.currentTimeMillis();
+        if (now - lastViewMillis > SESSION_TIMEOUT_MILLIS) {
+            sessionViews.clear();
+            if (log.getRecordCount() > unreported.size()) {
+                // Only the views not reported yet are left to keep
+                rewrite();
+            }
+        }
+        lastViewMillis = now;
+        if (sessionViews.containsKey(campaignId)) {
+            repeatViews++;
+            return;
+        }
+        sessionViews.put(campaignId, now);
+        unreported.put(campaignId, now);
+        pending = unreported.size();
+        views++;
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        putRecord(record, OP_VIEWED, campaignId, now, (int) Math.min(dwell, Integer.MAX_VALUE));
+        append(record);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, FLUSH_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Pass the views not reported yet to Campaign Kit in one batch, then mark them reported.
+     */
+    private void report() {
+        if (reporting || unreported.isEmpty()) {
+            return;
+        }
+        reporting = true;
+        final List<Integer> batch = new ArrayList<>(unreported.keySet());
+        List<String> campaignIds = new ArrayList<>(batch.size());
+        for (Integer campaignId : batch) {
+            campaignIds.add(String.valueOf(campaignId));
+        }
+        core.setCampaignsViewed(campaignIds, new Runnable() {
+            @Override
+            public void run() {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onReported(batch);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onReported(List<Integer> batch) {
+        reporting = false;
+        long now = System.currentTimeMillis();
+        ByteBuffer appended = ByteBuffer.allocate(batch.size() * RECORD_SIZE);
+        for (Integer campaignId : batch) {
+            unreported.remove(campaignId);
+            putRecord(appended, OP_REPORTED, campaignId, now, 0);
+        }
+        pending = unreported.size();
+        reported += batch.size();
+
+        int kept = sessionViews.size() + unreported.size();
+        if (log.getRecordCount() + batch.size() > 2 * kept + COMPACT_SLACK) {
+            rewrite();
+        } else {
+            append(appended);
+        }
+        // Views counted while the batch was out
+        if (!unreported.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    private void restore() {
+        RecordLog.Replay replay;
+        try {
+            replay = log.replay(new RecordLog.Reader() {
+                @Override
+                public void onRecord(ByteBuffer record, int offset) {
+                    int campaignId = record.getInt(offset + 4);
+                    long time = record.getLong(offset + 8);
+                    if (record.getInt(offset) == OP_VIEWED) {
+                        // The same session rules as when the view was counted
+                        if (time - lastViewMillis > SESSION_TIMEOUT_MILLIS) {
+                            sessionViews.clear();
+                        }
+                        lastViewMillis = Math.max(lastViewMillis, time);
+                        sessionViews.put(campaignId, time);
+                        unreported.put(campaignId, time);
+                    } else {
+                        unreported.remove(campaignId);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot read " + log.getFile(), e);
+            return;
+        }
+        pending = unreported.size();
+        if (replay == RecordLog.Replay.UNKNOWN_FORMAT) {
+            Log.w(TAG, "Ignoring " + log.getFile() + " with unknown format");
+            rewrite();
+            return;
+        }
+        if (replay == RecordLog.Replay.TRUNCATED) {
+            Log.w(TAG, "Dropped the unreadable end of " + log.getFile());
+            rewrite();
+        }
+        Log.i(TAG, "Restored " + unreported.size() + " views not reported yet");
+    }
+
+    private void append(ByteBuffer appended) {
+        try {
+            log.append(appended);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Replace the file with the views of the session and those not reported yet.
+     */
+    private void rewrite() {
+        if (log.isFailed()) {
+            return;
+        }
+        Map<Integer, Long> older = new LinkedHashMap<>(unreported);
+        older.keySet().removeAll(sessionViews.keySet());
+        int count = older.size() + 2 * sessionViews.size();
+        ByteBuffer content = ByteBuffer.allocate(count * RECORD_SIZE);
+        // Oldest first, so replaying gives the same session
+        for (Map.Entry<Integer, Long> view : older.entrySet()) {
+            putRecord(content, OP_VIEWED, view.getKey(), view.getValue(), 0);
+        }
+        for (Map.Entry<Integer, Long> view : sessionViews.entrySet()) {
+            putRecord(content, OP_VIEWED, view.getKey(), view.getValue(), 0);
+        }
+        long now = System.currentTimeMillis();
+        for (Integer campaignId : sessionViews.keySet()) {
+            if (!unreported.containsKey(campaignId)) {
+                putRecord(content, OP_REPORTED, campaignId, now, 0);
+            }
+        }
+        try {
+            log.rewrite(content);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void putRecord(ByteBuffer buffer, int op, int campaignId, long time, int dwell) {
+        int start = buffer.position();
+        buffer.putInt(op).putInt(campaignId).putLong(time).putInt(dwell);
+        log.putChecksum(buffer, start);
+    }
+
+    private void fail(IOException e) {
+        Log.e(TAG, "View log disabled, cannot write to " + log.getFile(), e);
+    }
+}
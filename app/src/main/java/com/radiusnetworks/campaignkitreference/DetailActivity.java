@@ -1,7 +1,7 @@
 package com.radiusnetworks.campaignkitreference;
 
 
-import java.util.ArrayList;
+import java.util.List;
 
 import com.example.android.slidingtabscolors.SlidingTabsColorsFragment;
 import com.radiusnetworks.campaignkitreference.R;
@@ -13,14 +13,25 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentTransaction;
+import android.text.TextUtils;
 import android.util.Log;
 
 public class DetailActivity extends FragmentActivity {
 	protected static final String TAG = "DetailActivity";
 	public static final String KEY_CAMPAIGN_ID = "campaignId";
+
+	/**
+	 * Tag of the {@link SlidingTabsColorsFragment} showing the found campaigns.
+	 */
+	private static final String TAG_CAMPAIGNS_FRAGMENT = "campaigns";
 	
 	private DetailActivity _instance;
 
+	private final MetricsRegistry.Histogram showCampaignsTime =
+			MyApplication.getMetrics().histogram("ui.detail.showCampaigns");
+	private final MetricsRegistry.Counter notificationOpens =
+			MyApplication.getMetrics().counter("ui.detail.notificationOpens");
+
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -43,45 +54,75 @@ public class DetailActivity extends FragmentActivity {
 	/**
 	 * Called when the activity has been opened when it was already running.
 	 * In this case, this usually occurs when the user tapped on an alert created by CampaignNotificationBuilder.
+	 * The campaigns are already shown, so the pager just jumps to the tapped campaign.
 	 */
 	@Override
-	public void onNewIntent (Intent intent){		
+	public void onNewIntent (Intent intent){
 		Log.i(TAG,"onNewIntent.");
-        if (intent != null && intent.getExtras() != null && intent.getExtras().getString(KEY_CAMPAIGN_ID,"") != "") {
-           	Log.i(TAG,"onNewIntent. campaignId = "+intent.getExtras().getString(KEY_CAMPAIGN_ID,""));
-        	refreshList(intent.getExtras());
-        }
+		setIntent(intent);
+		String campaignId = getCampaignId(intent.getExtras());
+		if (campaignId == null) {
+			return;
+		}
+		notificationOpens.increment();
+		Log.i(TAG,"onNewIntent. campaignId = "+campaignId);
 
+		SlidingTabsColorsFragment fragment = (SlidingTabsColorsFragment)
+				getSupportFragmentManager().findFragmentByTag(TAG_CAMPAIGNS_FRAGMENT);
+		if (fragment != null) {
+			fragment.showCampaign(campaignId);
+		} else {
+			refreshList(intent.getExtras());
+		}
 	}
 	public void refreshList(){
 		refreshList(null);
 	}
 
+	/**
+	 * Make sure the campaigns fragment is shown. It is only created once; afterwards it keeps
+	 * itself up to date from the campaign store's change events, so there is nothing to rebuild
+	 * when the activity resumes or a campaign is removed.
+	 */
 	private void refreshList(Bundle b){
-		ArrayList<Campaign> campaignArray =  getCampaignArray();
+		long start = MetricsRegistry.Histogram.start();
+		List<Campaign> campaignArray =  getCampaignArray();
 
 		if (campaignArray != null){
 
-		
+			if (getSupportFragmentManager().findFragmentByTag(TAG_CAMPAIGNS_FRAGMENT) != null) {
+				return;
+			}
+
 			FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
 	        SlidingTabsColorsFragment fragment = new SlidingTabsColorsFragment();
-	        
-	        //not working yet
-	        if (b != null && b.getString(KEY_CAMPAIGN_ID,"") != ""){
-	        	Log.d(TAG,"refreshing list with campaignId = "+b.getString(KEY_CAMPAIGN_ID,""));
+
+	        // Open on the campaign from the notification, if any
+	        String campaignId = getCampaignId(b);
+	        if (campaignId != null){
+	        	Log.d(TAG,"refreshing list with campaignId = "+campaignId);
 	            Bundle args = new Bundle();
-	            args.putString(KEY_CAMPAIGN_ID, b.getString(KEY_CAMPAIGN_ID,""));
+	            args.putString(KEY_CAMPAIGN_ID, campaignId);
 	        	fragment.setArguments(args);
 	        }
-	        
-	        transaction.replace(R.id.sample_content_fragment, fragment);
+
+	        transaction.replace(R.id.sample_content_fragment, fragment, TAG_CAMPAIGNS_FRAGMENT);
 	        transaction.commit();
-			
+	        showCampaignsTime.recordSince(start);
+
 		} else Log.e(TAG,"CAMPAIGNARRAY == NULL!");
 
 	}
-	
-	public ArrayList<Campaign> getCampaignArray(){
+
+	/**
+	 * @return the campaign id passed by a notification, or {@code null} if there is none
+	 */
+	private static String getCampaignId(Bundle extras) {
+		String campaignId = (extras != null) ? extras.getString(KEY_CAMPAIGN_ID) : null;
+		return TextUtils.isEmpty(campaignId) ? null : campaignId;
+	}
+
+	public List<Campaign> getCampaignArray(){
 		return ((MyApplication) this.getApplication()).getTriggeredCampaignArray();
 	}
 	
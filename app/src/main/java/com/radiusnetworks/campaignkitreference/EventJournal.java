@@ -0,0 +1,484 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkit.CampaignKitNotifier.CKEventType;
+import com.radiusnetworks.campaignkit.Place;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only binary journal of Campaign Kit events, kept on disk for post-mortem analysis.
+ * <p/>
+ * Each event is one fixed-size record of {@value #RECORD_SIZE} bytes:
+ * <pre>
+ *     offset  size  field
+ *          0     8  timestamp, milliseconds since the epoch
+ *          8     4  event type, one of the TYPE_ constants
+ *         12     4  ordinal of the place's CKEventType, or -1
+ *         16     4  place id, or 0
+ *         20     4  campaign id, or 0
+ *         24     8  distance to the place in meters, or NaN
+ * </pre>
+ * Records go to segment files which are memory mapped, so recording an event is a handful of
+ * stores into the page cache under a lock: no allocation and no system call. That is cheap enough
+ * to record every {@code didDetectPlace} callback. The kernel writes the pages out on its own
+ * schedule; a crash of the app loses nothing, a crash of the device may lose the latest events.
+ * <p/>
+ * A segment holds a fixed number of records and is named after the time of its first record.
+ * When it is full the next one is started, and the oldest segments are deleted once together
+ * they exceed the size cap. {@link #read(long, long)} streams the records of a time range, such
+ * as a day, one small buffer at a time.
+ * <p/>
+ * The files are only opened with the first record, so creating a journal costs nothing. An I/O
+ * error disables the journal instead of failing the caller. Safe to use from any thread.
+ */
+public class EventJournal {
+    private static final String TAG = "EventJournal";
+
+    /**
+     * Campaign Kit found a campaign; the record has the campaign id and the place it was found at
+     */
+    public static final int TYPE_FOUND_CAMPAIGN = 1;
+
+    /**
+     * Campaign Kit reported a place event; the record has the place id, event and distance
+     */
+    public static final int TYPE_DETECT_PLACE = 2;
+
+    /**
+     * A sync with the Campaign Kit server failed
+     */
+    public static final int TYPE_FAIL_SYNC = 3;
+
+    /**
+     * Size of each record, and of the segment header
+     */
+    public static final int RECORD_SIZE = 32;
+
+    /**
+     * Default number of records per segment; with the header that makes 1MB segments
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 32767;
+
+    private static final String DIRECTORY_NAME = "event-journal";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAGIC = 0x434b454a; // "CKEJ"
+    private static final int VERSION = 1;
+
+    private static final int OFFSET_TYPE = 8;
+    private static final int OFFSET_PLACE_EVENT = 12;
+    private static final int OFFSET_PLACE_ID = 16;
+    private static final int OFFSET_CAMPAIGN_ID = 20;
+    private static final int OFFSET_DISTANCE = 24;
+
+    private final File directory;
+    private final int segmentRecords;
+    private final long segmentBytes;
+    private final long maxBytes;
+
+    /**
+     * Segment files from oldest to newest; the last one is being written.
+     */
+    private final List<File> segments = new ArrayList<>();
+    private MappedByteBuffer segment;
+    private int nextSlot;
+    private boolean opened = false;
+    private boolean failed = false;
+
+    /**
+     * @param context
+     *         Context for the app's files directory
+     * @param maxBytes
+     *         Disk space the segments may use; the current segment is always kept
+     */
+    public EventJournal(@NonNull Context context, long maxBytes) {
+        this(new File(context.getFilesDir(), DIRECTORY_NAME), DEFAULT_SEGMENT_RECORDS, maxBytes);
+    }
+
+    /**
+     * @param directory
+     *         Directory for the segment files, which the journal owns
+     * @param segmentRecords
+     *         Number of records per segment
+     * @param maxBytes
+     *         Disk space the segments may use; the current segment is always kept
+     */
+    public EventJournal(@NonNull File directory, int segmentRecords, long maxBytes) {
+        if (segmentRecords <= 0) {
+            throw new IllegalArgumentException("segmentRecords must be positive: " + segmentRecords);
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.segmentBytes = (segmentRecords + 1L) * RECORD_SIZE;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Record that {@code campaign} was found.
+     */
+    public void recordFoundCampaign(@NonNull Campaign campaign) {
+        Place place = campaign.foundAt();
+        append(TYPE_FOUND_CAMPAIGN, -1, (place == null) ? 0 : place.getIdAsInt(),
+                campaign.getIdAsInt(), (place == null) ? Double.NaN : place.getDistance());
+    }
+
+    /**
+     * Record an {@code event} for {@code place}.
+     */
+    public void recordPlace(@NonNull Place place, @NonNull CKEventType event) {
+        append(TYPE_DETECT_PLACE, event.ordinal(), place.getIdAsInt(), 0, place.getDistance());
+    }
+
+    /**
+     * Record a failed sync.
+     */
+    public void recordSyncFailure() {
+        append(TYPE_FAIL_SYNC, -1, 0, 0, Double.NaN);
+    }
+
+    private synchronized void append(int type, int placeEvent, int placeId, int campaignId,
+                                     double distance) {
+        if (failed) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        try {
+            if (!opened) {
+                open();
+            }
+            if (segment == null || nextSlot > segmentRecords) {
+                startSegment(timestamp);
+            }
+        } catch (IOException e) {
+            failed = true;
+            Log.e(TAG, "Journal disabled, cannot write to " + directory, e);
+            return;
+        }
+
+        int offset = nextSlot++ * RECORD_SIZE;
+        segment.putInt(offset + OFFSET_TYPE, type);
+        segment.putInt(offset + OFFSET_PLACE_EVENT, placeEvent);
+        segment.putInt(offset + OFFSET_PLACE_ID, placeId);
+        segment.putInt(offset + OFFSET_CAMPAIGN_ID, campaignId);
+        segment.putDouble(offset + OFFSET_DISTANCE, distance);
+        // Written last: a zero timestamp marks the end of the segment
+        segment.putLong(offset, timestamp);
+    }
+
+    /**
+     * Find the existing segments and continue the newest one if it has room.
+     */
+    private void open() throws IOException {
+        opened = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        segments.addAll(Arrays.asList(listSegments(directory)));
+        if (segments.isEmpty()) {
+            return;
+        }
+
+        File newest = segments.get(segments.size() - 1);
+        if (newest.length() != segmentBytes) {
+            return;
+        }
+        MappedByteBuffer mapped = map(newest);
+        if (!hasValidHeader(mapped, segmentRecords)) {
+            return;
+        }
+
+        // Records are written in order, so the used slots are a prefix; find its end
+        int low = 1;
+        int high = segmentRecords + 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mapped.getLong(mid * RECORD_SIZE) != 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        segment = mapped;
+        nextSlot = low;
+    }
+
+    private void startSegment(long timestamp) throws IOException {
+        if (segment != null) {
+            // Hand the full segment to the disk now; rotations are rare
+            segment.force();
+            segment = null;
+        }
+
+        File file = segmentFile(directory, timestamp);
+        while (file.exists()) {
+            file = segmentFile(directory, ++timestamp);
+        }
+        MappedByteBuffer mapped = map(file);
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, VERSION);
+        mapped.putInt(8, RECORD_SIZE);
+        mapped.putInt(12, segmentRecords);
+        segments.add(file);
+        segment = mapped;
+        nextSlot = 1;
+
+        while (segments.size() > 1 && segments.size() * segmentBytes > maxBytes) {
+            File oldest = segments.remove(0);
+            if (!oldest.delete()) {
+                Log.w(TAG, "Cannot delete " + oldest);
+            }
+        }
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(segmentBytes);
+            // The mapping stays valid after the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Stream the records with a timestamp in {@code [fromMillis, toMillis)}, oldest segment
+     * first. Records written while the cursor is open may or may not be returned.
+     * <p/>
+     * Segments are picked by the time in their name, so records written while the device clock
+     * was set back may be missed.
+     *
+     * @return A cursor positioned before the first record; close it when done
+     */
+    @NonNull
+    public Cursor read(long fromMillis, long toMillis) {
+        File[] files;
+        synchronized (this) {
+            files = opened ? segments.toArray(new File[segments.size()]) : listSegments(directory);
+        }
+
+        List<File> selected = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            long first = segmentTime(files[i]);
+            long next = (i + 1 < files.length) ? segmentTime(files[i + 1]) : Long.MAX_VALUE;
+            if (first < toMillis && next > fromMillis) {
+                selected.add(files[i]);
+            }
+        }
+        return new Cursor(selected, fromMillis, toMillis);
+    }
+
+    private static File[] listSegments(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // Fixed width names sort by time
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static File segmentFile(File directory, long timestamp) {
+        return new File(directory, String.format(Locale.US, "%013d%s", timestamp, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentTime(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean hasValidHeader(ByteBuffer header, int segmentRecords) {
+        return header.getInt(0) == MAGIC
+                && header.getInt(4) == VERSION
+                && header.getInt(8) == RECORD_SIZE
+                && (segmentRecords < 0 || header.getInt(12) == segmentRecords);
+    }
+
+    /**
+     * Iterates over journal records without loading more than a small buffer of them.
+     * <p/>
+     * Call {@link #next()} to move to each record and read it with the getters, which are only
+     * valid after {@code next()} returned {@code true}. Not thread safe.
+     */
+    public static final class Cursor implements Closeable {
+        private static final int BUFFER_RECORDS = 128;
+        private static final CKEventType[] PLACE_EVENTS = CKEventType.values();
+
+        private final List<File> files;
+        private final long fromMillis;
+        private final long toMillis;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE);
+
+        private int fileIndex = 0;
+        private FileChannel channel;
+        private boolean segmentEnded = true;
+        private int offset = 0;
+
+        private Cursor(List<File> files, long fromMillis, long toMillis) {
+            this.files = files;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            buffer.limit(0);
+        }
+
+        /**
+         * Move to the next record in the time range.
+         *
+         * @return {@code false} once there are no more records
+         */
+        public boolean next() throws IOException {
+            while (true) {
+                offset += RECORD_SIZE;
+                if (offset >= buffer.limit() && !fill()) {
+                    return false;
+                }
+                long timestamp = buffer.getLong(offset);
+                if (timestamp == 0) {
+                    // The rest of this segment is unused
+                    closeSegment();
+                    buffer.limit(0);
+                    continue;
+                }
+                if (timestamp >= fromMillis && timestamp < toMillis) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Read the next buffer of records, moving on to the next segment as needed.
+         *
+         * @return {@code false} once all segments are read
+         */
+        private boolean fill() throws IOException {
+            while (true) {
+                if (segmentEnded) {
+                    if (fileIndex == files.size()) {
+                        return false;
+                    }
+                    openSegment(files.get(fileIndex++));
+                    continue;
+                }
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // Keep reading until the buffer is full or the file ends
+                }
+                // Only whole records
+                buffer.limit(buffer.position() - buffer.position() % RECORD_SIZE);
+                if (buffer.limit() == 0) {
+                    closeSegment();
+                    continue;
+                }
+                offset = 0;
+                return true;
+            }
+        }
+
+        private void openSegment(File file) throws IOException {
+            FileInputStream in;
+            try {
+                in = new FileInputStream(file);
+            } catch (IOException e) {
+                // Deleted by the size cap since the cursor was created
+                return;
+            }
+            channel = in.getChannel();
+            segmentEnded = false;
+
+            buffer.clear();
+            buffer.limit(RECORD_SIZE);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the whole header
+            }
+            if (buffer.hasRemaining() || !hasValidHeader(buffer, -1)) {
+                Log.w(TAG, "Skipping segment with unknown format: " + file);
+                closeSegment();
+            }
+            buffer.limit(0);
+        }
+
+        private void closeSegment() throws IOException {
+            segmentEnded = true;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        /**
+         * @return Time of the event in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return buffer.getLong(offset);
+        }
+
+        /**
+         * @return One of the TYPE_ constants
+         */
+        public int getType() {
+            return buffer.getInt(offset + OFFSET_TYPE);
+        }
+
+        /**
+         * @return The place event, or {@code null} if the record is not a place event
+         */
+        @Nullable
+        public CKEventType getPlaceEvent() {
+            int ordinal = buffer.getInt(offset + OFFSET_PLACE_EVENT);
+            return (ordinal >= 0 && ordinal < PLACE_EVENTS.length) ? PLACE_EVENTS[ordinal] : null;
+        }
+
+        /**
+         * @return The place id, or {@code 0} if the record has no place
+         */
+        public int getPlaceId() {
+            return buffer.getInt(offset + OFFSET_PLACE_ID);
+        }
+
+        /**
+         * @return The campaign id, or {@code 0} if the record has no campaign
+         */
+        public int getCampaignId() {
+            return buffer.getInt(offset + OFFSET_CAMPAIGN_ID);
+        }
+
+        /**
+         * @return Distance to the place in meters, or {@code NaN} if unknown
+         */
+        public double getDistance() {
+            return buffer.getDouble(offset + OFFSET_DISTANCE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            fileIndex = files.size();
+            closeSegment();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkitreference.core.CampaignChange;
+import com.radiusnetworks.campaignkitreference.core.CampaignStore;
+import com.radiusnetworks.campaignkitreference.core.RecordLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the ids of the found campaigns on disk, so they can be shown again after the process
+ * was killed.
+ * <p/>
+ * The file is a {@link RecordLog} with magic "CKFC" and records of big-endian ints:
+ * <pre>
+ *     record  0  operation, add or remove
+ *             4  campaign id
+ *             8  CRC32 of the above
+ * </pre>
+ * Replaying the records in order gives the found campaigns in the order they were found. Once
+ * {@linkplain #attach(CampaignStore) attached} to the campaign store, the adds and removes of the
+ * store's writes are appended in one write call. Writes which reorder the store, and a file
+ * grown well past the number of campaigns, rewrite the file from the store instead; the new file
+ * is synced before it replaces the old one.
+ * <p/>
+ * The store calls its listeners on the thread which changed it, under its write lock, so the
+ * listener only records the changes. The file is written on a dedicated background thread, which
+ * takes all the changes recorded since it last ran at once.
+ * <p/>
+ * {@link #restore()} replays the records up to the first one with a bad checksum, such as one
+ * torn by a crash, and ignores a file with an unknown header; either way the next rewrite drops
+ * what could not be read. An I/O error disables the journal instead of failing the caller. Safe
+ * to use from any thread.
+ */
+public class FoundCampaignJournal implements CampaignStore.OnChangeListener<Campaign> {
+    private static final String TAG = "FoundCampaignJournal";
+
+    private static final String FILE_NAME = "found-campaigns.journal";
+    private static final int MAGIC = 0x434b4643; // "CKFC"
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = 12;
+
+    private static final int OP_ADD = 1;
+    private static final int OP_REMOVE = 2;
+
+    /**
+     * Records beyond twice the number of campaigns tolerated before rewriting
+     */
+    private static final int COMPACT_SLACK = 64;
+
+    private final RecordLog log;
+    private final Handler handler;
+
+    /**
+     * The campaign ids the file replays to. Like the log, only used on the handler's thread once
+     * restored.
+     */
+    private final List<Integer> ids = new ArrayList<>();
+
+    // Recorded by the listener, guarded by this
+    private boolean attached = false;
+    private final List<CampaignChange<Campaign>> pendingChanges = new ArrayList<>();
+    private List<Campaign> pendingCampaigns;
+    private boolean rewritePending = false;
+    private boolean writeScheduled = false;
+
+    private final Runnable writeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    /**
+     * @param context
+     *         Context for the app's files directory
+     */
+    public FoundCampaignJournal(@NonNull Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * @param file
+     *         The journal file, which the journal owns
+     */
+    public FoundCampaignJournal(@NonNull File file) {
+        this.log = new RecordLog(file, MAGIC, VERSION, RECORD_SIZE);
+
+        HandlerThread thread =
+                new HandlerThread("FoundCampaigns", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Read the campaigns found before the process last stopped. Call once, before
+     * {@link #attach(CampaignStore)}.
+     *
+     * @return The campaign ids, in the order they were found
+     */
+    @NonNull
+    public List<Integer> restore() {
+        ids.clear();
+        // Insertion ordered, so re-adding a campaign keeps its first position
+        final Set<Integer> replayed = new LinkedHashSet<>();
+        RecordLog.Replay replay;
+        try {
+            replay = log.replay(new RecordLog.Reader() {
+                @Override
+                public void onRecord(ByteBuffer record, int offset) {
+                    Integer id = record.getInt(offset + 4);
+                    if (record.getInt(offset) == OP_ADD) {
+                        replayed.add(id);
+                    } else {
+                        replayed.remove(id);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot read " + log.getFile(), e);
+            return Collections.emptyList();
+        }
+        if (replay == RecordLog.Replay.UNKNOWN_FORMAT) {
+            Log.w(TAG, "Ignoring " + log.getFile() + " with unknown format");
+            return Collections.emptyList();
+        }
+        if (replay == RecordLog.Replay.TRUNCATED) {
+            Log.w(TAG, "Dropped the unreadable end of " + log.getFile());
+        }
+        ids.addAll(replayed);
+        return Collections.unmodifiableList(new ArrayList<>(ids));
+    }
+
+    /**
+     * Follow {@code store} from now on. The file is rewritten to match the store first, which
+     * drops restored campaigns which were not added back to it.
+     */
+    public void attach(@NonNull CampaignStore<Campaign> store) {
+        // Not under the journal's lock: the store calls listeners under its own
+        List<Campaign> current = store.addOnChangeListener(this);
+        synchronized (this) {
+            if (pendingCampaigns == null) {
+                pendingCampaigns = current;
+            }
+            attached = true;
+            rewritePending = true;
+            scheduleWrite();
+        }
+    }
+
+    @Override
+    public synchronized void onCampaignsChanged(@NonNull List<CampaignChange<Campaign>> changes,
+                                                @NonNull List<Campaign> campaigns) {
+        // Each change comes with the whole store, so the latest one is enough to rewrite from
+        pendingCampaigns = campaigns;
+        if (!attached || rewritePending) {
+            return;
+        }
+        pendingChanges.addAll(changes);
+        scheduleWrite();
+    }
+
+    private void scheduleWrite() {
+        if (!writeScheduled) {
+            writeScheduled = true;
+            handler.post(writeRunnable);
+        }
+    }
+
+    /**
+     * Write the changes recorded since the last write. Runs on the handler's thread.
+     */
+    private void write() {
+        List<CampaignChange<Campaign>> changes;
+        List<Campaign> campaigns;
+        boolean rewriteAll;
+        synchronized (this) {
+            changes = new ArrayList<>(pendingChanges);
+            pendingChanges.clear();
+            campaigns = pendingCampaigns;
+            rewriteAll = rewritePending;
+            rewritePending = false;
+            writeScheduled = false;
+        }
+        if (log.isFailed()) {
+            return;
+        }
+        if (rewriteAll) {
+            rewrite(campaigns);
+            return;
+        }
+
+        ByteBuffer appended = ByteBuffer.allocate(changes.size() * RECORD_SIZE);
+        boolean appendOnly = true;
+        for (CampaignChange<Campaign> change : changes) {
+            int id = change.getCampaign().getIdAsInt();
+            if (change.getType() == CampaignChange.Type.ADDED
+                    && change.getToPosition() == ids.size()) {
+                ids.add(id);
+                putRecord(appended, OP_ADD, id);
+            } else if (change.getType() == CampaignChange.Type.REMOVED) {
+                ids.remove(change.getFromPosition());
+                putRecord(appended, OP_REMOVE, id);
+            } else {
+                appendOnly = false;
+                break;
+            }
+        }
+
+        if (!appendOnly
+                || log.getRecordCount() + changes.size() > 2 * campaigns.size() + COMPACT_SLACK) {
+            rewrite(campaigns);
+            return;
+        }
+        try {
+            log.append(appended);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Replace the file with one holding just {@code campaigns}.
+     */
+    private void rewrite(List<Campaign> campaigns) {
+        ByteBuffer content = ByteBuffer.allocate(campaigns.size() * RECORD_SIZE);
+        ids.clear();
+        for (Campaign campaign : campaigns) {
+            ids.add(campaign.getIdAsInt());
+            putRecord(content, OP_ADD, campaign.getIdAsInt());
+        }
+        try {
+            log.rewrite(content);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void putRecord(ByteBuffer buffer, int op, int id) {
+        int start = buffer.position();
+        buffer.putInt(op).putInt(id);
+        log.putChecksum(buffer, start);
+    }
+
+    private void fail(IOException e) {
+        Log.e(TAG, "Journal disabled, cannot write to " + log.getFile(), e);
+    }
+}
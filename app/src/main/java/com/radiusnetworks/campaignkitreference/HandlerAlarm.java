@@ -0,0 +1,40 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import com.radiusnetworks.campaignkitreference.core.CampaignExpiry;
+
+/**
+ * Runs the {@link CampaignExpiry} sweeps on a background thread of their own.
+ * <p/>
+ * Delays are counted in uptime, which stops while the device sleeps, so a sweep may run late on
+ * a sleeping phone; an always-on kiosk sweeps on time. Campaigns ended while asleep are removed
+ * by the next sweep or sync.
+ */
+class HandlerAlarm implements CampaignExpiry.Alarm {
+    private final Handler handler;
+
+    /**
+     * @param name
+     *         Name of the thread
+     */
+    HandlerAlarm(@NonNull String name) {
+        HandlerThread thread = new HandlerThread(name, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    @Override
+    public void set(@NonNull Runnable task, long delayMillis) {
+        handler.removeCallbacks(task);
+        handler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    public void cancel(@NonNull Runnable task) {
+        handler.removeCallbacks(task);
+    }
+}
@@ -14,9 +14,11 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.app.FragmentActivity;
+import android.support.v4.view.ViewCompat;
 import android.util.Log;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.Toast;
 
@@ -25,6 +27,8 @@ import com.google.android.gms.common.GoogleApiAvailability;
 
 import com.radiusnetworks.proximity.geofence.GooglePlayServicesException;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * The Main <code>Activity</code> for the CampaignKit's Demo Client.
  * <p/>
@@ -64,8 +68,30 @@ public class MainActivity extends FragmentActivity {
      */
     private boolean resolvingError = false;
 
+    /**
+     * Set while a refresh is waiting for the next frame, so that any number of refresh requests
+     * within one frame result in a single update.
+     */
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+
+    private final MetricsRegistry.Counter refreshRequests =
+            MyApplication.getMetrics().counter("ui.refreshVisibleList.requests");
+    private final MetricsRegistry.Histogram refreshTime =
+            MyApplication.getMetrics().histogram("ui.refreshVisibleList");
+
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long start = MetricsRegistry.Histogram.start();
+            refreshPending.set(false);
+            updateCampaignsVisibility();
+            refreshTime.recordSince(start);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        MyApplication.getStartupTrace().begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
 
         /*
@@ -93,6 +119,26 @@ public class MainActivity extends FragmentActivity {
                 }
         );
         updateCampaignsVisibility();
+        logStartupOnFirstFrame();
+        MyApplication.getStartupTrace().end("MainActivity.onCreate");
+    }
+
+    /**
+     * Log the startup phases once the first frame is about to be drawn. Compare the
+     * "MainActivity first frame" time across builds to measure cold start.
+     */
+    private void logStartupOnFirstFrame() {
+        final ViewTreeObserver observer = getWindow().getDecorView().getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                getWindow().getDecorView().getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTrace trace = MyApplication.getStartupTrace();
+                trace.mark("MainActivity first frame");
+                trace.log();
+                return true;
+            }
+        });
     }
 
     /**
@@ -101,7 +147,10 @@ public class MainActivity extends FragmentActivity {
     @Override
     protected void onStart() {
         super.onStart();
-        ((MyApplication) getApplication()).setMainActivity(this);
+        MyApplication app = (MyApplication) getApplication();
+        app.setMainActivity(this);
+        // Have a WebView ready for when the user opens the campaigns
+        app.getWebViewPool().warmUp();
         verifyBluetooth();
         togglePermissionFeatures();
     }
@@ -199,21 +248,20 @@ public class MainActivity extends FragmentActivity {
 
     /**
      * Refreshes <code>Listview</code> with current campaign titles.
+     * <p/>
+     * Safe to call from any thread. The refresh runs on the UI thread with the next frame; calls
+     * made while a refresh is already pending are folded into it.
      */
     public void refreshVisibleList() {
-        runOnUiThread(
-                new Runnable() {
-                    @Override
-                    public void run() {
-                        updateCampaignsVisibility();
-                    }
-                }
-        );
+        refreshRequests.increment();
+        if (refreshPending.compareAndSet(false, true)) {
+            ViewCompat.postOnAnimation(campaignsButton, refreshRunnable);
+        }
     }
 
     private boolean areCampaignsTriggeredNow() {
         MyApplication app = (MyApplication) getApplication();
-        return !app.getTriggeredCampaignArray().isEmpty();
+        return app.hasFoundCampaigns();
     }
 
     private void disableGeofences() {
@@ -259,13 +307,9 @@ public class MainActivity extends FragmentActivity {
          * error and continue without geofences.
          */
         if (isGooglePlayServicesAvailable() && verifyLocationServices()) {
-            // As a safety mechanism, `enableGeofences()` throws a checked exception in case the
-            // app does not properly handle Google Play support.
-            try {
-                MyApplication.enableGeofences();
-            } catch (GooglePlayServicesException e) {
-                Log.e(TAG, "Expected Google Play to be available but enabling geofences failed", e);
-            }
+            // Geofences are enabled in the background once Campaign Kit has started; should it
+            // still fail the error is logged there.
+            MyApplication.enableGeofences();
         }
     }
 
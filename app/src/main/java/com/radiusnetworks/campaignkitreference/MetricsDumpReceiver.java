@@ -0,0 +1,39 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Writes the app's metrics to the log when it receives {@link #ACTION_DUMP_METRICS}:
+ * <pre>
+ *     adb shell am broadcast -a com.radiusnetworks.campaignkitreference.DUMP_METRICS
+ *     adb logcat -s Metrics
+ * </pre>
+ * The manifest only accepts the broadcast from senders holding
+ * {@link android.Manifest.permission#DUMP}, which the adb shell has but other apps do not.
+ *
+ * @see MetricsRegistry
+ */
+public class MetricsDumpReceiver extends BroadcastReceiver {
+    public static final String ACTION_DUMP_METRICS =
+            "com.radiusnetworks.campaignkitreference.DUMP_METRICS";
+
+    private static final String TAG = "Metrics";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!ACTION_DUMP_METRICS.equals(intent.getAction())) {
+            return;
+        }
+        StringWriter dump = new StringWriter();
+        MyApplication.getMetrics().dump(new PrintWriter(dump));
+        for (String line : dump.toString().split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+}
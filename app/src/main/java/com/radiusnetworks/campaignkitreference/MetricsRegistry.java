@@ -0,0 +1,275 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Named counters, gauges and latency histograms for the app's hot paths.
+ * <p/>
+ * Look a metric up once, keep it in a field and record into it as often as needed: recording
+ * never allocates and never takes a lock. Counters spread their updates over several padded
+ * cells, picked by thread, so threads counting at the same time do not fight over one cache
+ * line. Histograms keep HDR-style log-linear buckets, 16 per power of two, so any recorded value
+ * is known to within about 6% without storing the values themselves.
+ * <p/>
+ * {@link #dump(PrintWriter)} prints every metric; {@link MetricsDumpReceiver} does that on
+ * request:
+ * <pre>
+ *     adb shell am broadcast -a com.radiusnetworks.campaignkitreference.DUMP_METRICS
+ * </pre>
+ * Safe to use from any thread.
+ */
+public class MetricsRegistry {
+    /**
+     * A value read when the metrics are dumped, such as the size of a queue.
+     */
+    public interface Gauge {
+        long getValue();
+    }
+
+    private final long createdAt = SystemClock.elapsedRealtime();
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * @return The counter called {@code name}, created on first use
+     */
+    @NonNull
+    public Counter counter(@NonNull String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * @return The histogram called {@code name}, created on first use
+     */
+    @NonNull
+    public Histogram histogram(@NonNull String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Register {@code gauge} as {@code name}, replacing any gauge of that name.
+     */
+    public void gauge(@NonNull String name, @NonNull Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Print every metric, sorted by name. Counters are shown with their average rate since the
+     * registry was created, histograms in milliseconds.
+     */
+    public void dump(@NonNull PrintWriter out) {
+        long uptimeMillis = Math.max(1, SystemClock.elapsedRealtime() - createdAt);
+        out.println(String.format(Locale.US, "uptime %.1fs", uptimeMillis / 1e3));
+
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            long count = entry.getValue().get();
+            out.println(String.format(Locale.US, "counter %s count=%d rate=%.3f/s",
+                    entry.getKey(), count, count * 1e3 / uptimeMillis));
+        }
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(gauges).entrySet()) {
+            out.println(String.format(Locale.US, "gauge %s value=%d",
+                    entry.getKey(), entry.getValue().getValue()));
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram.Snapshot s = entry.getValue().snapshot();
+            out.println(String.format(Locale.US,
+                    "histogram %s count=%d p50=%.3fms p99=%.3fms max=%.3fms",
+                    entry.getKey(), s.getCount(), s.getPercentile(50) / 1e6,
+                    s.getPercentile(99) / 1e6, s.getMax() / 1e6));
+        }
+        out.flush();
+    }
+
+    /**
+     * Slot of the calling thread among {@code stripes} cells; a power of two.
+     */
+    private static int stripe(int stripes) {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16)) & (stripes - 1);
+    }
+
+    /**
+     * A count which many threads can increment at the same time without contention.
+     */
+    public static final class Counter {
+        private static final int STRIPES =
+                nextPowerOfTwo(Runtime.getRuntime().availableProcessors() * 2);
+
+        /**
+         * Longs per cell, so each cell has a 64 byte cache line to itself
+         */
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+        private Counter() {
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        public void add(long delta) {
+            cells.getAndAdd(stripe(STRIPES) * PADDING, delta);
+        }
+
+        /**
+         * @return The sum of all updates; not an atomic snapshot while updates are in progress
+         */
+        public long get() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * PADDING);
+            }
+            return sum;
+        }
+
+        private static int nextPowerOfTwo(int n) {
+            int power = Integer.highestOneBit(Math.max(1, n));
+            return (power < n) ? power << 1 : power;
+        }
+    }
+
+    /**
+     * Distribution of durations in nanoseconds, with HDR-style log-linear buckets.
+     * <p/>
+     * Values below 16 have a bucket each; above that every power of two is split into 16 equal
+     * buckets. Recording increments one bucket, so it is cheap and never allocates. Negative
+     * values are recorded as 0.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram() {
+        }
+
+        /**
+         * Start timing, for {@link #recordSince(long)}.
+         */
+        public static long start() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Record the time passed since {@code startNanos}, from {@link #start()}.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets.getAndIncrement(bucketOf(value));
+
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * @return A copy of the buckets to compute percentiles from
+         */
+        @NonNull
+        public Snapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            return new Snapshot(counts, total, max.get());
+        }
+
+        static int bucketOf(long value) {
+            int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+            return shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+
+        /**
+         * @return The largest value which falls into {@code bucket}
+         */
+        static long highestValueIn(int bucket) {
+            int shift = Math.max(0, bucket / SUB_BUCKETS - 1);
+            long mantissa = bucket - shift * SUB_BUCKETS;
+            return ((mantissa + 1) << shift) - 1;
+        }
+
+        /**
+         * The state of a histogram at one point in time.
+         */
+        public static final class Snapshot {
+            private final long[] counts;
+            private final long count;
+            private final long max;
+
+            Snapshot(long[] counts, long count, long max) {
+                this.counts = counts;
+                this.count = count;
+                this.max = max;
+            }
+
+            public long getCount() {
+                return count;
+            }
+
+            public long getMax() {
+                return max;
+            }
+
+            /**
+             * @param percentile
+             *         Between 0 and 100
+             * @return The value at or below which {@code percentile} percent of the recorded
+             * values fall, rounded up to the end of its bucket; {@code 0} if nothing was
+             * recorded
+             */
+            public long getPercentile(double percentile) {
+                if (count == 0) {
+                    return 0;
+                }
+                long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+                long seen = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    seen += counts[i];
+                    if (seen >= rank) {
+                        return Math.min(highestValueIn(i), max);
+                    }
+                }
+                return max;
+            }
+        }
+    }
+}
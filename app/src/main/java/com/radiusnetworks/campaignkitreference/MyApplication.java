@@ -6,8 +6,10 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresPermission;
-import android.util.Log;
 
+import com.example.android.common.logger.AsyncLogNode;
+import com.example.android.common.logger.Log;
+import com.example.android.common.logger.LogWrapper;
 import com.radiusnetworks.campaignkit.Campaign;
 import com.radiusnetworks.campaignkit.CampaignKitManager;
 import com.radiusnetworks.campaignkit.CampaignKitNotifier;
@@ -15,11 +17,24 @@ import com.radiusnetworks.campaignkit.CampaignNotificationBuilder;
 import com.radiusnetworks.campaignkit.Configuration;
 import com.radiusnetworks.campaignkit.Content;
 import com.radiusnetworks.campaignkit.Place;
+import com.radiusnetworks.campaignkitreference.core.BoundedCampaignStore;
+import com.radiusnetworks.campaignkitreference.core.CampaignCore;
+import com.radiusnetworks.campaignkitreference.core.CampaignEventDispatcher;
+import com.radiusnetworks.campaignkitreference.core.CampaignExpiry;
+import com.radiusnetworks.campaignkitreference.core.CampaignStore;
+import com.radiusnetworks.campaignkitreference.core.CampaignUiSink;
+import com.radiusnetworks.campaignkitreference.core.EventDispatcher;
+import com.radiusnetworks.campaignkitreference.core.PlaceAttributeCache;
+import com.radiusnetworks.campaignkitreference.core.PlaceAttributes;
+import com.radiusnetworks.campaignkitreference.core.PlaceFlapFilter;
+import com.radiusnetworks.campaignkitreference.core.ProximityIndex;
 import com.radiusnetworks.proximity.geofence.GooglePlayServicesException;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The {@link Application} class for the Campaign Kit Demo Client.
@@ -33,37 +48,235 @@ import java.util.Map;
  * {@link CampaignKitNotifier#didFindCampaign(Campaign)},
  * {@link CampaignKitNotifier#didFailSync(Exception)}, and {@link CampaignKitNotifier#didSync()}.
  * These are the hooks into the campaign event lifecycle.
+ * <p/>
+ * The hooks are called on Campaign Kit's threads, often in bursts when several beacons are in
+ * range. They only record the event in the {@link EventJournal} and hand it to the
+ * {@link CampaignCore}, which keeps the found campaigns and processes the events once per burst.
+ * The app only adapts the core to Android: the Campaign Kit manager is its backend, the
+ * activities and notifications its UI, and the Android-specific work on each burst happens in
+ * {@link #onEventBatch(CampaignEventDispatcher.EventBatch)} on the dispatcher's thread.
  *
  * @see {@link CampaignKitManager}
  * @see {@link CampaignKitNotifier}
  */
-public class MyApplication extends Application implements CampaignKitNotifier {
+public class MyApplication extends Application
+        implements CampaignKitNotifier,
+        CampaignEventDispatcher.BatchListener<Campaign, Place, CampaignKitNotifier.CKEventType> {
     public static final String TAG = "MyApplication";
 
     /**
-     * Storage for an instance of the manager
+     * Timing of each startup phase, from the moment this class is loaded
      */
-    private static volatile CampaignKitManager ckManager = null;
+    private static final StartupTrace startupTrace = new StartupTrace();
 
     /**
-     * Object to use as a thread-safe lock
+     * Handle to the Campaign Kit manager, which is created and started in the background
      */
-    private static final Object SHARED_LOCK = new Object();
+    private static final CampaignKitHandle campaignKit = new CampaignKitHandle(startupTrace);
 
     /**
-     * Campaign Kit Configuration
+     * Counters and latencies of the hot paths, dumped by {@link MetricsDumpReceiver}
      */
-    private static final Configuration KIT_CONFIG = new Configuration(loadConfig());
+    private static final MetricsRegistry metrics = new MetricsRegistry();
 
     /**
      * Current main activity for notifications.
      */
     private static volatile MainActivity mainActivity = null;
 
+    /**
+     * Maximum number of found campaigns to keep in memory
+     */
+    private static final int MAX_FOUND_CAMPAIGNS = 100;
+
     /**
      * All campaigns with their beacon within range, in order of appearance
      */
-    public static ArrayList<Campaign> triggeredCampaigns = new ArrayList<>();
+    private static final CampaignStore<Campaign> triggeredCampaigns =
+            new BoundedCampaignStore<>(MAX_FOUND_CAMPAIGNS, CampaignKitIds.CAMPAIGN);
+
+    /**
+     * The Campaign Kit manager as the campaign core sees it, on the handle's thread
+     */
+    private static final CampaignKitBackend campaignKitBackend =
+            new CampaignKitBackend(campaignKit);
+
+    /**
+     * How long to collect a burst of Campaign Kit events before processing them together
+     */
+    private static final long EVENT_COALESCE_WINDOW_MILLIS = 250;
+
+    /**
+     * Size of the queue between Campaign Kit's callbacks and the event processing
+     */
+    private static final int EVENT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * A ranged beacon this close is inside its place
+     */
+    private static final double PLACE_ENTER_METRES = 10;
+
+    /**
+     * A ranged beacon this far is outside its place; the gap to {@link #PLACE_ENTER_METRES}
+     * keeps readings wavering around one distance from flapping
+     */
+    private static final double PLACE_EXIT_METRES = 15;
+
+    /**
+     * Enters are reported right away, as they come with found campaigns
+     */
+    private static final long PLACE_ENTER_DWELL_MILLIS = 0;
+
+    /**
+     * How long a place must stay exited before the exit is reported
+     */
+    private static final long PLACE_EXIT_DWELL_MILLIS = 10000;
+
+    /**
+     * Weight of a new distance reading in a place's smoothed distance
+     */
+    private static final double PROXIMITY_SMOOTHING = 0.3;
+
+    /**
+     * Places not ranged for this long drop out of the proximity ranking
+     */
+    private static final long PROXIMITY_STALE_MILLIS = 30000;
+
+    /**
+     * Number of nearest places whose campaigns lead the detail pager
+     */
+    private static final int PROXIMITY_RANKED_PLACES = 10;
+
+    /**
+     * Precision of campaign end dates; campaigns are removed up to this long after they end
+     */
+    private static final long EXPIRY_TICK_MILLIS = 1000;
+
+    /**
+     * Groups and rate limits the notifications for campaigns found in the background
+     */
+    private CampaignNotificationScheduler notificationScheduler;
+
+    /**
+     * Disk space the rendered campaign content may use
+     */
+    private static final long CONTENT_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Rendered campaign HTML, by content hash
+     */
+    private CampaignContentCache contentCache;
+
+    /**
+     * Downloads the resources campaign content refers to after each sync
+     */
+    private CampaignAssetPrefetcher assetPrefetcher;
+
+    /**
+     * Adapts the sync interval to the device state and retries failed syncs
+     */
+    private volatile SyncScheduler syncScheduler;
+
+    /**
+     * Disk space the event journal may use
+     */
+    private static final long EVENT_JOURNAL_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Every Campaign Kit callback, on disk, for analysis after the fact
+     */
+    private EventJournal eventJournal;
+
+    /**
+     * The found campaigns' ids on disk, to show them again after the process was killed
+     */
+    private FoundCampaignJournal foundCampaignJournal;
+
+    /**
+     * Campaigns restored from the journal which are not back in the store yet; shown as found
+     * until the manager has started
+     */
+    private volatile List<Integer> restoringCampaignIds = Collections.emptyList();
+
+    /**
+     * Removes found campaigns when they end
+     */
+    private CampaignExpiry<Campaign> campaignExpiry;
+
+    /**
+     * Reports the campaigns viewed to the manager, once per session and in batches
+     */
+    private CampaignViewRecorder viewRecorder;
+
+    /**
+     * Recycles the WebViews showing campaign content
+     */
+    private WebViewPool webViewPool;
+
+    private final MetricsRegistry.Counter detectPlaceCalls =
+            metrics.counter("callback.didDetectPlace");
+    private final MetricsRegistry.Counter findCampaignCalls =
+            metrics.counter("callback.didFindCampaign");
+    private final MetricsRegistry.Counter syncCalls = metrics.counter("callback.didSync");
+    private final MetricsRegistry.Counter failSyncCalls = metrics.counter("callback.didFailSync");
+    private final MetricsRegistry.Histogram callbackTime = metrics.histogram("callback.time");
+    private final MetricsRegistry.Histogram batchTime = metrics.histogram("events.batch");
+    private final MetricsRegistry.Histogram notificationTime =
+            metrics.histogram("notification.post");
+
+    /**
+     * Shows found campaigns as an alert or a notification and refreshes the found list
+     */
+    private final CampaignUiSink<Campaign> uiSink = new CampaignUiSink<Campaign>() {
+        @Override
+        public void showFoundCampaign(Campaign campaign) {
+            showCampaign(campaign);
+        }
+
+        @Override
+        public void refreshFoundList() {
+            refreshMainActivityList();
+        }
+    };
+
+    /**
+     * The found campaigns and the processing of Campaign Kit events, independent of Android
+     */
+    private final CampaignCore<Campaign, Place, CKEventType> campaignCore = new CampaignCore<>(
+            triggeredCampaigns, CampaignKitIds.CAMPAIGN, CampaignKitIds.PLACE,
+            EVENT_COALESCE_WINDOW_MILLIS, EVENT_QUEUE_CAPACITY, campaignKitBackend,
+            campaignKitBackend, uiSink);
+
+    /**
+     * Holds back the enter and exit events of places flapping at the edge of range
+     */
+    private final PlaceFlapFilter<Place, CKEventType> placeFilter = new PlaceFlapFilter<>(
+            CampaignKitPlaceClassifier.INSTANCE, PLACE_ENTER_METRES, PLACE_EXIT_METRES,
+            PLACE_ENTER_DWELL_MILLIS, PLACE_EXIT_DWELL_MILLIS);
+
+    /**
+     * Ranks the places in range by distance, for the order of the detail pager
+     */
+    private final ProximityIndex<Place, CKEventType> proximityIndex = new ProximityIndex<>(
+            CampaignKitPlaceClassifier.INSTANCE, PROXIMITY_SMOOTHING, PROXIMITY_STALE_MILLIS,
+            PROXIMITY_RANKED_PLACES);
+
+    /**
+     * Parsed place attributes, so place events do not copy and format them again
+     */
+    private final PlaceAttributeCache<Place> placeAttributes = new PlaceAttributeCache<>(
+            CampaignKitIds.PLACE, new PlaceAttributeCache.AttributeReader<Place>() {
+                @Override
+                public Map<String, String> getAttributes(Place place) {
+                    return place.getAttributes();
+                }
+            });
+
+    /**
+     * Moves Campaign Kit callbacks off Campaign Kit's threads and batches them
+     */
+    private final EventDispatcher<Campaign, Place, CKEventType> eventDispatcher =
+            campaignCore.getDispatcher();
 
     /**
      * Setup the application including the Campaign Kit manager.
@@ -80,54 +293,223 @@ public class MyApplication extends Application implements CampaignKitNotifier {
      */
     @Override
     public void onCreate() {
+        startupTrace.begin("Application.onCreate");
         super.onCreate();
 
+        // Log through a background thread so Campaign Kit's threads never wait on logcat
+        final AsyncLogNode logNode = new AsyncLogNode(new LogWrapper());
+        Log.setLogNode(logNode);
+
+        // Process Campaign Kit events in the background, before anything can be reported
+        notificationScheduler =
+                new CampaignNotificationScheduler(this, DetailActivity.class, R.drawable.ic_launcher);
+        campaignCore.setBatchListener(this);
+        campaignCore.getEventDispatcher().setPlaceFilter(placeFilter);
+        campaignCore.setProximityIndex(proximityIndex);
+        campaignCore.start();
+        // Sleeps until the next found campaign ends
+        campaignExpiry = new CampaignExpiry<>(campaignCore, CampaignKitIds.CAMPAIGN,
+                CampaignKitIds.CAMPAIGN_END, EXPIRY_TICK_MILLIS,
+                new HandlerAlarm("CampaignExpiry"));
+        campaignExpiry.attach(triggeredCampaigns);
+        // Reads its log on its own thread
+        viewRecorder = new CampaignViewRecorder(this, campaignCore);
+        viewRecorder.start();
+        // A few hundred bytes read at once; the campaigns themselves come from the manager
+        startupTrace.begin("Found campaigns restore");
+        foundCampaignJournal = new FoundCampaignJournal(this);
+        restoringCampaignIds = foundCampaignJournal.restore();
+        startupTrace.end("Found campaigns restore");
+        // Opens its files with the first event, off the main thread
+        eventJournal = new EventJournal(this, EVENT_JOURNAL_BYTES);
+        webViewPool = new WebViewPool(this);
+        contentCache = new CampaignContentCache(this, CONTENT_CACHE_BYTES);
+        assetPrefetcher = new CampaignAssetPrefetcher(this);
+        contentCache.setResourceResolver(assetPrefetcher);
+        webViewPool.setWebViewClient(assetPrefetcher.getWebViewClient());
+        registerGauges(logNode);
+
         /*
          * The app is responsible for handling the singleton instance of the Campaign Kit manager.
-         * To ensure we have a single instance we synchronize our creation process.
+         * The handle only ever creates one, no matter how often it is asked to.
+         *
+         * Creating and starting the manager is slow, so it happens on the handle's thread while
+         * the first activity is drawn. Anything asked of the manager before it is ready waits
+         * for it on that thread.
          *
-         * While this is not necessary inside an `Application` subclass it is necessary if the
-         * single manager instance is created inside an `Activity` or other Android/Java component.
-         * We're including the pattern here to show a method of ensuring a singleton instance.
+         * We register our notifier before the manager starts, otherwise we will miss any
+         * notifications posted in the time between those actions. The sync scheduler is set up
+         * at the same point so it is ready for the first sync.
          */
-        if (null == ckManager) {
-            synchronized (SHARED_LOCK) {
-                if (null == ckManager) {
-                    ckManager = CampaignKitManager.getInstance(this, KIT_CONFIG);
-                }
+        final Context context = this;
+        campaignKit.initialize(this, loadConfig(), this, new CampaignKitHandle.ManagerTask() {
+            @Override
+            public void run(@NonNull CampaignKitManager manager) {
+                // Sync as often as the campaigns change instead of on a fixed schedule
+                syncScheduler = new SyncScheduler(context, manager);
+                syncScheduler.start();
             }
-        }
+        });
+        campaignKit.execute(new CampaignKitHandle.ManagerTask() {
+            @Override
+            public void run(@NonNull CampaignKitManager manager) {
+                restoreFoundCampaigns(manager);
+            }
+        });
+        startupTrace.end("Application.onCreate");
+    }
 
-        /*
-         * Set the desired callback before calling `start()`.
-         *
-         * We can set this after calling `start()`. However, this means we will miss any
-         * notifications posted in the time between those actions.
-         */
-        ckManager.setNotifier(this);
+    /**
+     * Expose the sizes and drop counts of the event pipeline as gauges.
+     */
+    private void registerGauges(final AsyncLogNode logNode) {
+        metrics.gauge("campaigns.found", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return triggeredCampaigns.size();
+            }
+        });
+        metrics.gauge("events.droppedPlaceEvents", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return campaignCore.getEventDispatcher().getDroppedPlaceEvents();
+            }
+        });
+        metrics.gauge("events.coalescedPlaceEvents", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return campaignCore.getEventDispatcher().getCoalescedPlaceEvents();
+            }
+        });
+        metrics.gauge("events.failedBatches", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return campaignCore.getEventDispatcher().getFailedBatches();
+            }
+        });
+        metrics.gauge("events.suppressedPlaceEvents", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return placeFilter.getSuppressedEvents();
+            }
+        });
+        metrics.gauge("events.placeFlaps", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return placeFilter.getFlaps();
+            }
+        });
+        metrics.gauge("places.attributesParsed", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return placeAttributes.getParses();
+            }
+        });
+        metrics.gauge("places.attributeCacheHits", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return placeAttributes.getHits();
+            }
+        });
+        metrics.gauge("places.ranked", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return proximityIndex.getNearest().size();
+            }
+        });
+        metrics.gauge("campaigns.expiring", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return campaignExpiry.size();
+            }
+        });
+        metrics.gauge("campaigns.expired", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return campaignExpiry.getExpired();
+            }
+        });
+        metrics.gauge("views.counted", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return viewRecorder.getViews();
+            }
+        });
+        metrics.gauge("views.repeated", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return viewRecorder.getRepeatViews();
+            }
+        });
+        metrics.gauge("views.reported", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return viewRecorder.getReported();
+            }
+        });
+        metrics.gauge("views.pending", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return viewRecorder.getPending();
+            }
+        });
+        metrics.gauge("log.dropped", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return logNode.getDroppedCount();
+            }
+        });
+    }
 
-        /*
-         * Now that we have our notifier registered we are ready to start Campaign Kit.
-         */
-        ckManager.start();
+    /**
+     * Counters, gauges and latency histograms of the app's hot paths.
+     */
+    public static MetricsRegistry getMetrics() {
+        return metrics;
     }
 
+    /**
+     * Startup timings; {@link MainActivity} logs them once its first frame is drawn.
+     */
+    public static StartupTrace getStartupTrace() {
+        return startupTrace;
+    }
+
+    /**
+     * Enable geofences once the manager is ready.
+     * <p/>
+     * As a safety mechanism, the manager's {@code enableGeofences()} throws a checked exception in
+     * case the app does not properly handle Google Play support. The caller, presumably an
+     * {@code Activity}, must check Google Play services first; as the call happens later, in the
+     * background, a failure despite that check can only be logged.
+     */
     @RequiresPermission(Manifest.permission.ACCESS_FINE_LOCATION)
-    public static void enableGeofences() throws GooglePlayServicesException {
-        /*
-         * As a safety mechanism, `enableGeofences()` throws a checked exception in case the app
-         * does not properly handle Google Play support. We expose this on the method so that the
-         * caller, presumably an `Activity`, can decide how best to handle it.
-         *
-         * We've disable the lint inspection because we've moved the permission requirement to the
-         * method via the annotation.
-         */
-        //noinspection MissingPermission
-        ckManager.enableGeofences();
+    public static void enableGeofences() {
+        campaignKit.execute(new CampaignKitHandle.ManagerTask() {
+            @Override
+            public void run(@NonNull CampaignKitManager manager) {
+                try {
+                    /*
+                     * We've disable the lint inspection because we've moved the permission
+                     * requirement to the method via the annotation.
+                     */
+                    //noinspection MissingPermission
+                    manager.enableGeofences();
+                } catch (GooglePlayServicesException e) {
+                    Log.e(TAG, "Expected Google Play to be available but enabling geofences failed",
+                            e);
+                }
+            }
+        });
     }
 
     public static void disableGeofences() {
-        ckManager.disableGeofences();
+        campaignKit.execute(new CampaignKitHandle.ManagerTask() {
+            @Override
+            public void run(@NonNull CampaignKitManager manager) {
+                manager.disableGeofences();
+            }
+        });
     }
 
     /**
@@ -142,19 +524,11 @@ public class MyApplication extends Application implements CampaignKitNotifier {
      */
     @Override
     public void didFindCampaign(@NonNull Campaign campaign) {
-        Log.i(TAG, "didFindCampaign: " + campaign);
-        // Force campaign to be shown in the found list
-        triggeredCampaigns.add(campaign);
-
-        // Send notification or alert based on if the app is in background or foreground
-        Context notificationTarget = (null == mainActivity) ? this : mainActivity;
-        new CampaignNotificationBuilder(notificationTarget, campaign)
-                .setSmallIcon(R.drawable.ic_launcher)
-                .setOnClickActivity(DetailActivity.class)
-                .show();
-
-        // Make sure the UI is aware of the update
-        refreshMainActivityList();
+        long start = MetricsRegistry.Histogram.start();
+        findCampaignCalls.increment();
+        eventJournal.recordFoundCampaign(campaign);
+        eventDispatcher.didFindCampaign(campaign);
+        callbackTime.recordSince(start);
     }
 
     /**
@@ -165,7 +539,8 @@ public class MyApplication extends Application implements CampaignKitNotifier {
      */
     @Override
     public void didSync() {
-        Log.i(TAG, "didSync.");
+        syncCalls.increment();
+        eventDispatcher.didSync();
     }
 
     /**
@@ -176,7 +551,9 @@ public class MyApplication extends Application implements CampaignKitNotifier {
      */
     @Override
     public void didFailSync(@NonNull Exception e) {
-        Log.e(TAG, "didFailSync.", e);
+        failSyncCalls.increment();
+        eventJournal.recordSyncFailure();
+        eventDispatcher.didFailSync(e);
     }
 
     /**
@@ -195,15 +572,163 @@ public class MyApplication extends Application implements CampaignKitNotifier {
      */
     @Override
     public void didDetectPlace(@NonNull Place place, @NonNull CKEventType event) {
+        long start = MetricsRegistry.Histogram.start();
+        detectPlaceCalls.increment();
+        // Journaled before the dispatcher collapses repeated events, so none are missing
+        eventJournal.recordPlace(place, event);
+        eventDispatcher.didDetectPlace(place, event);
+        callbackTime.recordSince(start);
+    }
+
+    /**
+     * Do the app's part of processing everything Campaign Kit reported during one burst.
+     * <p/>
+     * Called on the dispatcher thread, after the {@link CampaignCore} stored and showed the found
+     * campaigns and before it refreshes the found list. Only stable enters and exits, and ranging
+     * of places which are inside, pass the {@link PlaceFlapFilter}; repeated events for the same
+     * {@link Place} have already been collapsed into the latest one.
+     *
+     * @param batch
+     *         The events reported since the previous batch
+     */
+    @Override
+    public void onEventBatch(
+            @NonNull CampaignEventDispatcher.EventBatch<Campaign, Place, CKEventType> batch) {
+        long start = MetricsRegistry.Histogram.start();
+        if (batch.isSynced()) {
+            // The sync may have changed attributes; the places in this batch are the latest
+            placeAttributes.invalidate();
+        }
+        for (CampaignEventDispatcher.PlaceEvent<Place, CKEventType> placeEvent :
+                batch.getPlaceEvents()) {
+            handlePlaceEvent(placeEvent.getPlace(), placeEvent.getEventType());
+        }
+
+        if (batch.getSyncFailure() != null) {
+            Log.e(TAG, "didFailSync.", batch.getSyncFailure());
+            syncScheduler.onSyncFailed(batch.getSyncFailure());
+        }
+        if (batch.isSynced()) {
+            Log.i(TAG, "didSync.");
+            // A sync can complete while the manager is still starting; wait for it
+            campaignKit.execute(new CampaignKitHandle.ManagerTask() {
+                @Override
+                public void run(@NonNull CampaignKitManager manager) {
+                    List<Campaign> allCampaigns = manager.getAllCampaigns();
+                    syncScheduler.onSyncSucceeded(allCampaigns);
+                    // End dates may have moved, and campaigns may have been disabled
+                    campaignExpiry.reconcile(allCampaigns);
+                    // We now know every campaign; fetch what they show while there is a connection
+                    assetPrefetcher.prefetch(allCampaigns);
+                }
+            });
+        }
+        batchTime.recordSince(start);
+    }
+
+    /**
+     * Tell the user about a found campaign. Called by the core once it stored the campaign.
+     *
+     * @see #didFindCampaign(Campaign)
+     */
+    private void showCampaign(Campaign campaign) {
+        Log.i(TAG, "didFindCampaign: " + campaign);
+
+        // Show an alert if the app is in the foreground, otherwise queue a notification which
+        // is grouped with other campaigns found around the same time
+        long start = MetricsRegistry.Histogram.start();
+        MainActivity activity = mainActivity;
+        if (activity != null) {
+            new CampaignNotificationBuilder(activity, campaign)
+                    .setSmallIcon(R.drawable.ic_launcher)
+                    .setOnClickActivity(DetailActivity.class)
+                    .show();
+        } else {
+            notificationScheduler.schedule(campaign);
+        }
+        notificationTime.recordSince(start);
+    }
+
+    /**
+     * @see #didDetectPlace(Place, CKEventType)
+     */
+    private void handlePlaceEvent(Place place, CKEventType event) {
+        PlaceAttributes attributes = placeAttributes.get(place);
         Log.i(
                 TAG,
                 "didDetectPlace: event=" + event +
                         " place={" + place +
                         " distance=" + place.getDistance() +
-                        " (" + place.getAttributes() + ")}"
+                        " (" + attributes + ")}"
         );
     }
 
+    /**
+     * Add the campaigns found before the process was killed back to the store, in the order they
+     * were found, and start journaling the store. Campaigns the manager no longer has as found,
+     * e.g. because they expired, are dropped from the journal.
+     */
+    private void restoreFoundCampaigns(@NonNull CampaignKitManager manager) {
+        List<Integer> restored = restoringCampaignIds;
+        if (!restored.isEmpty()) {
+            Map<Integer, Campaign> found = new HashMap<>();
+            for (Campaign campaign : manager.getFoundCampaigns()) {
+                found.put(campaign.getIdAsInt(), campaign);
+            }
+            int added = 0;
+            for (Integer id : restored) {
+                Campaign campaign = found.get(id);
+                if (campaign != null && triggeredCampaigns.add(campaign)) {
+                    added++;
+                }
+            }
+            Log.i(TAG, "Restored " + added + " of " + restored.size() + " found campaigns");
+        }
+        foundCampaignJournal.attach(triggeredCampaigns);
+        restoringCampaignIds = Collections.emptyList();
+        if (!restored.isEmpty()) {
+            // Also hides the campaigns button if none of them were still found
+            refreshMainActivityList();
+        }
+    }
+
+    /**
+     * Drop the pooled WebViews when the UI goes away or memory runs low.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        webViewPool.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        webViewPool.clear();
+    }
+
+    /**
+     * Pool of WebViews for the campaign pages. Only usable on the main thread.
+     */
+    public WebViewPool getWebViewPool() {
+        return webViewPool;
+    }
+
+    /**
+     * Journal of all Campaign Kit events; use {@link EventJournal#read(long, long)} to go
+     * through them.
+     */
+    public EventJournal getEventJournal() {
+        return eventJournal;
+    }
+
+    /**
+     * Cache of rendered campaign content; use it to show a campaign body in a WebView.
+     */
+    public CampaignContentCache getContentCache() {
+        return contentCache;
+    }
+
     @Nullable
     public MainActivity getMainActivity() {
         return mainActivity;
@@ -224,12 +749,40 @@ public class MyApplication extends Application implements CampaignKitNotifier {
     /**
      * List of found {@link Campaign}s.
      *
-     * @return The modifiable list of found campaigns.
+     * @return An unmodifiable snapshot of the found campaigns. It is safe to iterate on any thread
+     * but does not reflect campaigns found or removed after this call.
+     */
+    public List<Campaign> getTriggeredCampaignArray() {
+        return triggeredCampaigns.getCampaigns();
+    }
+
+    /**
+     * @return {@code true} if campaigns have been found, including those restored from before
+     * the process was killed which the manager has not confirmed yet
      */
-    public ArrayList<Campaign> getTriggeredCampaignArray() {
+    public boolean hasFoundCampaigns() {
+        return !triggeredCampaigns.isEmpty() || !restoringCampaignIds.isEmpty();
+    }
+
+    /**
+     * The store behind {@link #getTriggeredCampaignArray()}.
+     * <p/>
+     * Register an {@link CampaignStore.OnChangeListener} with it to be told exactly which
+     * campaigns were added, removed or moved instead of re-reading the whole list.
+     */
+    public CampaignStore<Campaign> getCampaignStore() {
         return triggeredCampaigns;
     }
 
+    /**
+     * The places in range, nearest first. The found campaigns stay in the order they were found
+     * in the {@linkplain #getCampaignStore() store}; screens which want the nearest first order
+     * them with {@link ProximityIndex#orderByProximity}.
+     */
+    public ProximityIndex<Place, CKEventType> getProximityIndex() {
+        return proximityIndex;
+    }
+
     /**
      * Helper for accessing a {@link Campaign} base on when it was found.
      * <p/>
@@ -243,10 +796,7 @@ public class MyApplication extends Application implements CampaignKitNotifier {
      * position exceeded the bounds.
      */
     public Campaign getCampaignFromList(int positionOnList) {
-        if (positionOnList < triggeredCampaigns.size()) {
-            return triggeredCampaigns.get(positionOnList);
-        }
-        return null;
+        return campaignCore.getCampaign(positionOnList);
     }
 
     /**
@@ -261,30 +811,47 @@ public class MyApplication extends Application implements CampaignKitNotifier {
     }
 
     /**
-     * Removes the nth found campaign.
+     * Removes a found campaign. It is gone from the {@linkplain #getCampaignStore() store} when
+     * this returns; the Campaign Kit manager forgets it in the background.
      *
-     * @param position
-     *         The nth found {@link Campaign}. This is zero indexed, so the 0th found campaign was
-     *         found first.
+     * @param campaignId
+     *         Id of the found {@link Campaign}
+     * @return {@code true} if the campaign had been found
      */
-    public void removeCampaign(int position) {
-        ckManager.removeCampaign(getCampaignFromList(position));
-        triggeredCampaigns.clear();
-        triggeredCampaigns = ckManager.getFoundCampaigns();
-        Log.d(TAG, "after removing. triggeredCampaignArray size = " + triggeredCampaigns.size());
+    public boolean removeCampaign(@NonNull String campaignId) {
+        return campaignCore.removeCampaign(campaignId);
+    }
 
-        refreshMainActivityList();
+    /**
+     * Removes several found campaigns at once: the {@linkplain #getCampaignStore() store} changes
+     * once, the found list is refreshed once and the Campaign Kit manager forgets them all in the
+     * same background run.
+     *
+     * @param campaignIds
+     *         Ids of found {@link Campaign}s; ids which were not found are ignored
+     * @return Number of campaigns removed
+     */
+    public int removeCampaigns(@NonNull Set<String> campaignIds) {
+        return campaignCore.removeCampaigns(campaignIds);
     }
 
     /**
      * Mark a {@link Campaign} as having been viewed by the device.
      * <p/>
-     * Asks the Campaign Kit manager to record an viewed analytic event for the {@code Campaign}.
-     * The analytics are aggregated by the manager and reported to the Campaign Kit servers. After
-     * upload the analytics will appear on the kit dashboard.
+     * The view is counted by the {@linkplain #getViewRecorder() view recorder}, which asks the
+     * Campaign Kit manager to record a viewed analytic event for the {@code Campaign} once per
+     * session, in batches. The analytics are aggregated by the manager and reported to the
+     * Campaign Kit servers. After upload the analytics will appear on the kit dashboard.
      */
     public void setCampaignViewed(Campaign c) {
-        ckManager.setCampaignViewed(c);
+        viewRecorder.recordView(c);
+    }
+
+    /**
+     * Counts the campaigns viewed in the detail pager; tell it which page is shown.
+     */
+    public CampaignViewRecorder getViewRecorder() {
+        return viewRecorder;
     }
 
     /**
@@ -315,7 +882,7 @@ public class MyApplication extends Application implements CampaignKitNotifier {
         );
         settings.put(Configuration.CONFIG_CELLULAR_DATA, "true");
         settings.put(Configuration.CONFIG_SEGMENT_TAGS, "android,refapp");
-        settings.put(Configuration.CONFIG_SYNC_INTERVAL, "43200000");       // once every 12 hours
+        // The sync interval is left to the SyncScheduler
 
         return settings;
     }
@@ -0,0 +1,96 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records when each phase of app startup begins and ends, on whichever thread runs it.
+ * <p/>
+ * Times are relative to the creation of the trace, which {@link MyApplication} does as early as
+ * possible. Call {@link #log()} once startup is over, e.g. when the first activity draws its
+ * first frame, to write the phases to the log:
+ * <pre>
+ *     StartupTrace:   +0.0ms   Application.onCreate 41.2ms [main]
+ *     StartupTrace:  +12.6ms   Campaign Kit start 95.1ms [CampaignKit]
+ * </pre>
+ * Safe to use from any thread.
+ */
+public class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    private final long originNanos = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, Phase> open = new HashMap<>();
+    private boolean logged = false;
+
+    /**
+     * Start timing {@code phase}.
+     */
+    public synchronized void begin(@NonNull String phase) {
+        Phase p = new Phase(phase, elapsed(), Thread.currentThread().getName());
+        phases.add(p);
+        open.put(phase, p);
+    }
+
+    /**
+     * Stop timing {@code phase}. Does nothing if it was not begun.
+     */
+    public synchronized void end(@NonNull String phase) {
+        Phase p = open.remove(phase);
+        if (p != null) {
+            p.durationNanos = elapsed() - p.startNanos;
+        }
+    }
+
+    /**
+     * Record an instant, such as the first frame being drawn.
+     */
+    public synchronized void mark(@NonNull String event) {
+        Phase p = new Phase(event, elapsed(), Thread.currentThread().getName());
+        p.durationNanos = 0;
+        phases.add(p);
+    }
+
+    /**
+     * Write the phases recorded so far to the log. Only the first call logs anything; phases
+     * still running are shown as such.
+     */
+    public synchronized void log() {
+        if (logged) {
+            return;
+        }
+        logged = true;
+        for (Phase p : phases) {
+            String duration = (p.durationNanos < 0) ? "running" : millis(p.durationNanos);
+            Log.i(TAG, String.format(Locale.US, "%10s %s %s [%s]",
+                    "+" + millis(p.startNanos), p.name, duration, p.thread));
+        }
+    }
+
+    private long elapsed() {
+        return System.nanoTime() - originNanos;
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.1fms", nanos / 1e6);
+    }
+
+    private static final class Phase {
+        final String name;
+        final long startNanos;
+        final String thread;
+        long durationNanos = -1;
+
+        Phase(String name, long startNanos, String thread) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.thread = thread;
+        }
+    }
+}
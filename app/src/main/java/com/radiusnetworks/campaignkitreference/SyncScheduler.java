@@ -0,0 +1,317 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkit.CampaignKitManager;
+import com.radiusnetworks.campaignkit.Configuration;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Chooses how often Campaign Kit syncs, instead of a fixed interval.
+ * <p/>
+ * The interval follows how recently the campaigns last changed: shortly after a change more are
+ * likely to follow, while a campaign set which has not changed for days rarely needs checking.
+ * It is stretched further on battery and on metered connections, and re-evaluated whenever the
+ * charging state or connectivity changes and after every sync.
+ * <p/>
+ * Campaign Kit does not expose the HTTP exchange of a sync, so a "change" is detected by hashing
+ * the synced campaign set; a sync returning the same hash counts as no change and lets the
+ * interval keep growing. The hash and the time of the last change are kept across restarts.
+ * <p/>
+ * Failed syncs are retried with exponential backoff and jitter, on top of Campaign Kit's own
+ * schedule. A retry due while offline waits for connectivity to return.
+ */
+public class SyncScheduler {
+    private static final String TAG = "SyncScheduler";
+
+    public static final int NETWORK_NONE = 0;
+    public static final int NETWORK_METERED = 1;
+    public static final int NETWORK_UNMETERED = 2;
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    /**
+     * Shortest interval chosen; Campaign Kit does not accept anything shorter.
+     */
+    public static final long MIN_INTERVAL_MILLIS = Math.max(15 * MINUTE,
+            Configuration.MIN_SYNC_INTERVAL);
+
+    /**
+     * Longest interval chosen.
+     */
+    public static final long MAX_INTERVAL_MILLIS = 12 * HOUR;
+
+    private static final long FIRST_RETRY_MILLIS = 30 * 1000;
+    private static final long MAX_RETRY_MILLIS = HOUR;
+
+    private static final String PREFERENCES_NAME = "sync_scheduler";
+    private static final String KEY_CONTENT_HASH = "content_hash";
+    private static final String KEY_LAST_CHANGE = "last_change";
+
+    private final Context context;
+    private final CampaignKitManager manager;
+    private final SharedPreferences preferences;
+    private final Handler handler;
+    private final Random random = new Random();
+
+    // The fields below are only accessed on the handler thread
+
+    private long lastChangeMillis;
+    private String contentHash;
+    private long currentInterval = -1;
+    private int failures = 0;
+    private boolean retryWhenOnline = false;
+
+    private final Runnable retryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (getNetworkType() == NETWORK_NONE) {
+                Log.d(TAG, "Offline, retrying sync once connected");
+                retryWhenOnline = true;
+                return;
+            }
+            Log.d(TAG, "Retrying sync after " + failures + " failure(s)");
+            manager.sync();
+        }
+    };
+
+    private final BroadcastReceiver conditionsReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (retryWhenOnline && getNetworkType() != NETWORK_NONE) {
+                retryWhenOnline = false;
+                handler.post(retryRunnable);
+            }
+            updateInterval();
+        }
+    };
+
+    /**
+     * @param context
+     *         Context used to read the device state and store the sync history
+     * @param manager
+     *         Manager whose sync interval is controlled
+     */
+    public SyncScheduler(@NonNull Context context, @NonNull CampaignKitManager manager) {
+        this.context = context.getApplicationContext();
+        this.manager = manager;
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Apply the first interval and start following the charging state and connectivity.
+     */
+    public void start() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                contentHash = preferences.getString(KEY_CONTENT_HASH, null);
+                lastChangeMillis = preferences.getLong(KEY_LAST_CHANGE, System.currentTimeMillis());
+                updateInterval();
+            }
+        });
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+        context.registerReceiver(conditionsReceiver, filter, null, handler);
+    }
+
+    /**
+     * Report a successful sync.
+     *
+     * @param campaigns
+     *         Every campaign known after the sync
+     */
+    public void onSyncSucceeded(@NonNull Collection<Campaign> campaigns) {
+        final String hash = hashCampaigns(campaigns);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                failures = 0;
+                retryWhenOnline = false;
+                handler.removeCallbacks(retryRunnable);
+
+                if (!hash.equals(contentHash)) {
+                    Log.d(TAG, "Campaigns changed");
+                    contentHash = hash;
+                    lastChangeMillis = System.currentTimeMillis();
+                    preferences.edit()
+                            .putString(KEY_CONTENT_HASH, contentHash)
+                            .putLong(KEY_LAST_CHANGE, lastChangeMillis)
+                            .commit();
+                }
+                updateInterval();
+            }
+        });
+    }
+
+    /**
+     * Report a failed sync; schedules a retry.
+     */
+    public void onSyncFailed(@NonNull Exception e) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                long delay = backoffDelay(failures, random);
+                failures++;
+                handler.removeCallbacks(retryRunnable);
+                handler.postDelayed(retryRunnable, delay);
+                Log.d(TAG, "Sync failed " + failures + " time(s), retrying in " + delay + "ms");
+            }
+        });
+    }
+
+    /**
+     * The sync interval for the given conditions.
+     *
+     * @param charging
+     *         {@code true} if the device is plugged in
+     * @param networkType
+     *         One of {@link #NETWORK_NONE}, {@link #NETWORK_METERED} or {@link #NETWORK_UNMETERED}
+     * @param millisSinceChange
+     *         Time since the synced campaigns last changed
+     */
+    static long chooseInterval(boolean charging, int networkType, long millisSinceChange) {
+        if (networkType == NETWORK_NONE) {
+            // Nothing can sync; retries are driven by connectivity instead
+            return MAX_INTERVAL_MILLIS;
+        }
+
+        long interval;
+        if (millisSinceChange < HOUR) {
+            interval = MIN_INTERVAL_MILLIS;
+        } else if (millisSinceChange < DAY) {
+            interval = HOUR;
+        } else if (millisSinceChange < 7 * DAY) {
+            interval = 4 * HOUR;
+        } else {
+            interval = MAX_INTERVAL_MILLIS;
+        }
+
+        if (!charging) {
+            interval *= 2;
+        }
+        if (networkType == NETWORK_METERED) {
+            interval *= 2;
+        }
+        return Math.max(MIN_INTERVAL_MILLIS, Math.min(interval, MAX_INTERVAL_MILLIS));
+    }
+
+    /**
+     * Delay before retrying after {@code failures} consecutive failures: doubling from
+     * {@link #FIRST_RETRY_MILLIS} up to {@link #MAX_RETRY_MILLIS}, then randomized to between half
+     * and all of that so devices which failed together do not retry together.
+     */
+    static long backoffDelay(int failures, @NonNull Random random) {
+        long delay = FIRST_RETRY_MILLIS << Math.min(failures, 16);
+        delay = Math.min(delay, MAX_RETRY_MILLIS);
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+
+    /**
+     * Hash of everything about {@code campaigns} a sync can change, independent of their order.
+     */
+    @NonNull
+    static String hashCampaigns(@NonNull Collection<Campaign> campaigns) {
+        List<Campaign> sorted = new ArrayList<>(campaigns);
+        Collections.sort(sorted, new Comparator<Campaign>() {
+            @Override
+            public int compare(Campaign lhs, Campaign rhs) {
+                return lhs.getId().compareTo(rhs.getId());
+            }
+        });
+
+        StringBuilder text = new StringBuilder();
+        for (Campaign campaign : sorted) {
+            text.append(campaign.getId()).append('\0')
+                    .append(millis(campaign.getStartAt())).append('\0')
+                    .append(millis(campaign.getEndAt())).append('\0')
+                    .append(campaign.getTitle()).append('\0')
+                    .append(campaign.getMessage()).append('\0')
+                    .append(campaign.getBody()).append('\0')
+                    .append(campaign.getAttributes()).append('\n');
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+                    text.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Both SHA-1 and UTF-8 are required to exist on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long millis(Date date) {
+        return (date != null) ? date.getTime() : 0;
+    }
+
+    private void updateInterval() {
+        long sinceChange = System.currentTimeMillis() - lastChangeMillis;
+        long interval = chooseInterval(isCharging(), getNetworkType(), sinceChange);
+        if (interval != currentInterval) {
+            Log.d(TAG, "Sync interval " + currentInterval + "ms -> " + interval + "ms");
+            currentInterval = interval;
+            manager.setSyncInterval(interval);
+        }
+    }
+
+    private boolean isCharging() {
+        // Sticky broadcast; no receiver is registered
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private int getNetworkType() {
+        ConnectivityManager connectivity =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivity.getActiveNetworkInfo();
+        if (network == null || !network.isConnected()) {
+            return NETWORK_NONE;
+        }
+        switch (network.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+            case ConnectivityManager.TYPE_ETHERNET:
+                return NETWORK_UNMETERED;
+            default:
+                return NETWORK_METERED;
+        }
+    }
+}
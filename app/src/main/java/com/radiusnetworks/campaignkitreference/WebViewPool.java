@@ -0,0 +1,176 @@
+package com.radiusnetworks.campaignkitreference;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of {@link WebView}s shared by the campaign pages.
+ * <p/>
+ * Creating a WebView is the most expensive part of showing a campaign page. Pages borrow a view
+ * with {@link #acquire(Context)} and hand it back with {@link #release(WebView)} when their view
+ * is destroyed. Returned views are blanked and their history is cleared before they are reused.
+ * <p/>
+ * Pooled views are created on a {@link MutableContextWrapper} around the application context and
+ * are only pointed at an {@code Activity} while borrowed, so an idle view never leaks an activity.
+ * The pool is emptied when the system asks the app to trim its memory; see
+ * {@link #onTrimMemory(int)}.
+ * <p/>
+ * WebViews may only be touched on the main thread, and so may the pool.
+ */
+public class WebViewPool {
+    private static final String TAG = "WebViewPool";
+
+    /**
+     * Number of idle views kept when no maximum is provided.
+     */
+    public static final int DEFAULT_MAX_IDLE = 3;
+
+    private static final String BLANK_URL = "about:blank";
+
+    private final Context appContext;
+    private final int maxIdle;
+    private final ArrayDeque<WebView> idle = new ArrayDeque<>();
+    private boolean warmUpQueued = false;
+    private WebViewClient webViewClient;
+
+    public WebViewPool(@NonNull Context context) {
+        this(context, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param context
+     *         Any context; only its application context is retained
+     * @param maxIdle
+     *         Maximum number of returned views kept for reuse
+     */
+    public WebViewPool(@NonNull Context context, int maxIdle) {
+        this.appContext = context.getApplicationContext();
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Client installed on every view the pool creates from now on.
+     */
+    public void setWebViewClient(WebViewClient client) {
+        checkMainThread();
+        webViewClient = client;
+        for (WebView view : idle) {
+            view.setWebViewClient(client);
+        }
+    }
+
+    /**
+     * Borrow a view, creating one if the pool is empty.
+     *
+     * @param context
+     *         The context, usually the {@code Activity}, the view will be shown in
+     * @return A blank view without a parent
+     */
+    @NonNull
+    public WebView acquire(@NonNull Context context) {
+        checkMainThread();
+        WebView view = idle.poll();
+        if (view == null) {
+            view = create();
+        } else {
+            view.clearHistory();
+        }
+        ((MutableContextWrapper) view.getContext()).setBaseContext(context);
+        return view;
+    }
+
+    /**
+     * Return a borrowed view. It is removed from its parent, blanked and kept for reuse, or
+     * destroyed if the pool is already full.
+     */
+    public void release(@NonNull WebView view) {
+        checkMainThread();
+        if (view.getParent() instanceof ViewGroup) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+        ((MutableContextWrapper) view.getContext()).setBaseContext(appContext);
+        view.setTag(null);
+
+        if (idle.size() >= maxIdle) {
+            view.destroy();
+            return;
+        }
+
+        view.stopLoading();
+        view.loadUrl(BLANK_URL);
+        view.clearHistory();
+        idle.push(view);
+    }
+
+    /**
+     * Create a view once the main thread is idle, so the first campaign page does not pay for
+     * starting the WebView implementation. Does nothing if a view is already pooled.
+     */
+    public void warmUp() {
+        checkMainThread();
+        if (warmUpQueued || !idle.isEmpty()) {
+            return;
+        }
+        warmUpQueued = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                warmUpQueued = false;
+                if (idle.isEmpty()) {
+                    long start = System.nanoTime();
+                    idle.push(create());
+                    Log.d(TAG, "warmed up in " + (System.nanoTime() - start) / 1000000 + "ms");
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Destroy every idle view.
+     */
+    public void clear() {
+        checkMainThread();
+        WebView view;
+        while ((view = idle.poll()) != null) {
+            view.destroy();
+        }
+    }
+
+    /**
+     * Release the idle views once the UI is hidden or memory runs low.
+     *
+     * @see ComponentCallbacks2#onTrimMemory(int)
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        }
+    }
+
+    private WebView create() {
+        WebView view = new WebView(new MutableContextWrapper(appContext));
+        if (webViewClient != null) {
+            view.setWebViewClient(webViewClient);
+        }
+        return view;
+    }
+
+    private static void checkMainThread() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("WebViewPool must be used on the main thread");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.radiusnetworks.campaignkitreference.benchmark;
+
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkitreference.CampaignKitIds;
+import com.radiusnetworks.campaignkitreference.core.BoundedCampaignStore;
+import com.radiusnetworks.campaignkitreference.core.CampaignStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The found-campaign list operations the app performs on its {@link CampaignStore}: adding found
+ * campaigns, removing them by id, one as a delete does or several at once as the multi-select
+ * delete and the expiry do, and looking campaigns up by position and id.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CampaignStoreBenchmark {
+    /**
+     * Number of found campaigns; the store is full at this size.
+     */
+    @Param({"10", "100"})
+    public int size;
+
+    private CampaignStore<Campaign> store;
+    private Campaign[] campaigns;
+    private List<List<String>> removals;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Twice as many campaigns as fit, so adding both re-finds and evicts
+        campaigns = new Campaign[size * 2];
+        for (int i = 0; i < campaigns.length; i++) {
+            campaigns[i] = new Campaign(String.valueOf(i + 1));
+        }
+
+        store = new BoundedCampaignStore<>(size, CampaignKitIds.CAMPAIGN);
+        for (int i = 0; i < size; i++) {
+            store.add(campaigns[i]);
+        }
+
+        // A tenth of the store per removal, spread over it
+        int batch = Math.max(1, size / 10);
+        removals = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<String> ids = new ArrayList<>(batch);
+            for (int j = 0; j < batch; j++) {
+                ids.add(campaigns[(i + j * (size / batch)) % size].getId());
+            }
+            removals.add(ids);
+        }
+    }
+
+    private int nextIndex(int bound) {
+        next = (next + 1) % bound;
+        return next;
+    }
+
+    @Benchmark
+    public boolean add() {
+        return store.add(campaigns[nextIndex(campaigns.length)]);
+    }
+
+    /**
+     * Removing one campaign by id. The campaign is added back, so the store stays full; subtract
+     * {@link #add()} for the removal alone.
+     */
+    @Benchmark
+    public int removeAndAddBack() {
+        Campaign campaign = store.get(nextIndex(size));
+        store.remove(campaign.getId());
+        store.add(campaign);
+        return store.size();
+    }
+
+    /**
+     * Removing a tenth of the store in one write, then adding those campaigns back.
+     */
+    @Benchmark
+    public int removeAllAndAddBack() {
+        List<Campaign> removed = store.removeAll(removals.get(nextIndex(size)));
+        for (int i = 0; i < removed.size(); i++) {
+            store.add(removed.get(i));
+        }
+        return store.size();
+    }
+
+    @Benchmark
+    public Campaign getByPosition() {
+        return store.get(nextIndex(size));
+    }
+
+    @Benchmark
+    public int indexOfId() {
+        return store.indexOf(campaigns[nextIndex(size)].getId());
+    }
+}
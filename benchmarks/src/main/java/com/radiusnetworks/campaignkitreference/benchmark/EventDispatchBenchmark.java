@@ -0,0 +1,117 @@
+package com.radiusnetworks.campaignkitreference.benchmark;
+
+import com.radiusnetworks.campaignkit.CampaignKitNotifier.CKEventType;
+import com.radiusnetworks.campaignkit.Campaign;
+import com.radiusnetworks.campaignkit.Place;
+import com.radiusnetworks.campaignkitreference.CampaignKitIds;
+import com.radiusnetworks.campaignkitreference.core.CampaignEventDispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulated bursts of {@code didDetectPlace} callbacks, as when walking past a cluster of
+ * beacons, through the {@link CampaignEventDispatcher}.
+ * <p>
+ * {@link #detectPlaceBurst()} measures what one callback costs Campaign Kit's thread.
+ * {@link #burstToBatch()} measures how long it takes until a whole burst has been delivered to
+ * the listener. Both run without a coalescing window, so the consumer drains as fast as it can.
+ */
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventDispatchBenchmark {
+    /**
+     * Callbacks per burst; well below the ring capacity, so none are dropped
+     */
+    private static final int BURST = 64;
+
+    /**
+     * Distinct places in range, so the dispatcher has repeats to collapse
+     */
+    private static final int PLACES = 8;
+
+    private static final int CAPACITY = 1024;
+
+    private final Place[] places = new Place[PLACES];
+    private final AtomicLong delivered = new AtomicLong();
+    private CampaignEventDispatcher<Campaign, Place, CKEventType> dispatcher;
+    private long sent;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PLACES; i++) {
+            places[i] = new Place(i + 1, i * 1.5);
+        }
+        CampaignEventDispatcher.BatchListener<Campaign, Place, CKEventType> listener =
+                new CampaignEventDispatcher.BatchListener<Campaign, Place, CKEventType>() {
+                    @Override
+                    public void onEventBatch(CampaignEventDispatcher.EventBatch<Campaign, Place,
+                            CKEventType> batch) {
+                        long events = 0;
+                        for (CampaignEventDispatcher.PlaceEvent<Place, CKEventType> event :
+                                batch.getPlaceEvents()) {
+                            events += event.getRepeatCount();
+                        }
+                        delivered.addAndGet(events);
+                    }
+                };
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignKitIds.PLACE, 0, CAPACITY);
+        dispatcher.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    /**
+     * Start every invocation with an empty queue, as a burst after a quiet period would.
+     */
+    @Setup(Level.Invocation)
+    public void awaitDelivery() {
+        while (delivered.get() < sent) {
+            Thread.yield();
+        }
+    }
+
+    private void fireBurst() {
+        for (int i = 0; i < BURST; i++) {
+            dispatcher.didDetectPlace(places[i % PLACES], CKEventType.CKEventDidRangeBeacons);
+        }
+        sent += BURST;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(BURST)
+    public void detectPlaceBurst() {
+        fireBurst();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void burstToBatch() {
+        fireBurst();
+        while (delivered.get() < sent) {
+            Thread.yield();
+        }
+    }
+}
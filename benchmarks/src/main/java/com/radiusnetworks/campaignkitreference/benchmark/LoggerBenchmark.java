@@ -0,0 +1,73 @@
+package com.radiusnetworks.campaignkitreference.benchmark;
+
+import com.example.android.common.logger.Log;
+import com.example.android.common.logger.LogNode;
+import com.example.android.common.logger.LogWrapper;
+import com.example.android.common.logger.MessageOnlyLogFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a log call through the app's logger chain: {@link Log} to {@link LogWrapper}, which
+ * writes to the stand-in {@code android.util.Log}, then through a {@link MessageOnlyLogFilter} to
+ * a node which only counts, standing in for the on-screen log.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggerBenchmark {
+    private static final String TAG = "MyApplication";
+    private static final Throwable FAILURE = new IllegalStateException("sync failed");
+
+    private final CountingNode sink = new CountingNode();
+    private String message = "didDetectPlace: event=CKEventDidRangeBeacons place={Place{42}}";
+
+    @Setup
+    public void setUp() {
+        LogWrapper wrapper = new LogWrapper();
+        wrapper.setNext(new MessageOnlyLogFilter(sink));
+        Log.setLogNode(wrapper);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Log.setLogNode(null);
+    }
+
+    @Benchmark
+    public void logMessage() {
+        Log.i(TAG, message);
+    }
+
+    @Benchmark
+    public void logWithThrowable() {
+        Log.e(TAG, message, FAILURE);
+    }
+
+    /**
+     * Last node of the chain. Keeps a running total so the calls cannot be optimized away.
+     */
+    private static final class CountingNode implements LogNode {
+        long characters;
+
+        @Override
+        public void println(int priority, String tag, String msg, Throwable tr) {
+            characters += msg.length();
+        }
+    }
+}
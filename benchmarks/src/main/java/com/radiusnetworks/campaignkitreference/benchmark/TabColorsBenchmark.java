@@ -0,0 +1,36 @@
+package com.radiusnetworks.campaignkitreference.benchmark;
+
+import com.example.android.common.view.TabColors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of blending the indicator colors, which the tab strip does for every frame of a swipe.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TabColorsBenchmark {
+    // Not final, so the JIT cannot fold the blend into a constant
+    private int color1 = 0xFF33B5E5;
+    private int color2 = 0xFFAA66CC;
+    private float ratio = 0.37f;
+
+    @Benchmark
+    public int blendColors() {
+        return TabColors.blendColors(color1, color2, ratio);
+    }
+}
@@ -0,0 +1,46 @@
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Stand-in for Android's log which formats like the real one but writes nowhere, so the cost
+ * measured is the app's own.
+ */
+public final class Log {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    /**
+     * Characters "written", so the JIT cannot drop the call.
+     */
+    public static volatile long written;
+
+    private Log() {
+    }
+
+    public static int println(int priority, String tag, String msg) {
+        int length = ((tag == null) ? 0 : tag.length()) + ((msg == null) ? 0 : msg.length());
+        written += length;
+        return length;
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return println(WARN, tag, msg + '\n' + getStackTraceString(tr));
+    }
+
+    public static String getStackTraceString(Throwable tr) {
+        if (tr == null) {
+            return "";
+        }
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        tr.printStackTrace(pw);
+        pw.flush();
+        return sw.toString();
+    }
+}
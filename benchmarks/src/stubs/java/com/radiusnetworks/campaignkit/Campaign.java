@@ -0,0 +1,65 @@
+package com.radiusnetworks.campaignkit;
+
+import java.util.Date;
+
+/**
+ * Stand-in for the Campaign Kit campaign with just what the benchmarked code uses. Campaigns are
+ * equal when their ids are, as in the SDK.
+ */
+public class Campaign {
+    private final String id;
+    private final Place foundAt;
+
+    public Campaign(String id) {
+        this(id, null);
+    }
+
+    public Campaign(String id, Place foundAt) {
+        this.id = id;
+        this.foundAt = foundAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getIdAsInt() {
+        return Integer.parseInt(id);
+    }
+
+    /**
+     * @return {@code true}; stand-in campaigns never end
+     */
+    public boolean isActive() {
+        return true;
+    }
+
+    /**
+     * @return {@code null}, the campaign has no end date
+     */
+    public Date getEndAt() {
+        return null;
+    }
+
+    /**
+     * @return The place the campaign was found at, or {@code null}
+     */
+    public Place foundAt() {
+        return foundAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof Campaign) && id.equals(((Campaign) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Campaign{" + id + "}";
+    }
+}
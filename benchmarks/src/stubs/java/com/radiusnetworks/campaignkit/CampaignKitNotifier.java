@@ -0,0 +1,22 @@
+package com.radiusnetworks.campaignkit;
+
+/**
+ * Stand-in for the Campaign Kit callback interface.
+ */
+public interface CampaignKitNotifier {
+    enum CKEventType {
+        CKEventDidRangeBeacons,
+        CKEventDidEnterRegion,
+        CKEventDidExitRegion,
+        CKEventDidDetectStateInside,
+        CKEventDidDetectStateOutside
+    }
+
+    void didFindCampaign(Campaign campaign);
+
+    void didSync();
+
+    void didFailSync(Exception e);
+
+    void didDetectPlace(Place place, CKEventType event);
+}
@@ -0,0 +1,31 @@
+package com.radiusnetworks.campaignkit;
+
+/**
+ * Stand-in for the Campaign Kit place with just what the benchmarked code uses.
+ */
+public class Place {
+    private final int id;
+    private final double distance;
+
+    public Place(int id, double distance) {
+        this.id = id;
+        this.distance = distance;
+    }
+
+    public String getId() {
+        return String.valueOf(id);
+    }
+
+    public int getIdAsInt() {
+        return id;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return "Place{" + id + "}";
+    }
+}
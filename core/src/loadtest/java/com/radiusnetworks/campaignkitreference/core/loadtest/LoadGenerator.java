@@ -0,0 +1,146 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import com.radiusnetworks.campaignkitreference.core.CampaignCore;
+import com.radiusnetworks.campaignkitreference.core.CampaignEventDispatcher;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a synthetic stream of Campaign Kit events through a {@link CampaignCore} and reports
+ * how it keeps up.
+ * <p/>
+ * Several producer threads stand in for Campaign Kit's callback threads. Each reports place
+ * events for random places at a fixed combined rate, with a share of them also finding a
+ * campaign, and the main thread removes a found campaign now and then like a user would. The
+ * core is set up by a {@link SimHarness}. For realistic traces of places coming into and going
+ * out of range, see {@link Simulator}.
+ * <p/>
+ * At the end it prints the events sent and delivered, the events dropped and coalesced by the
+ * dispatcher, the batches and list refreshes, and the latency from callback to processing:
+ * <pre>
+ *     ./gradlew :core:loadTest -PloadTestArgs='--rate 20000 --producers 8 --seconds 30'
+ * </pre>
+ * Options: {@code --rate} events per second over all producers, {@code --producers},
+ * {@code --seconds}, {@code --places}, {@code --campaigns} distinct ids, {@code --find-ratio}
+ * share of events which find a campaign, {@code --window} coalescing window in milliseconds,
+ * {@code --capacity} of the event queue and {@code --removals} per second.
+ */
+public class LoadGenerator {
+    private int rate = 5000;
+    private int producers = 4;
+    private int seconds = 10;
+    private int places = 200;
+    private int campaigns = 500;
+    private double findRatio = 0.05;
+    private long windowMillis = CampaignEventDispatcher.DEFAULT_COALESCE_WINDOW_MILLIS;
+    private int capacity = 1024;
+    private int removalsPerSecond = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadGenerator generator = new LoadGenerator();
+        generator.parse(args);
+        generator.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String name = args[i];
+            String value = args[i + 1];
+            switch (name) {
+                case "--rate":
+                    rate = Integer.parseInt(value);
+                    break;
+                case "--producers":
+                    producers = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(value);
+                    break;
+                case "--places":
+                    places = Integer.parseInt(value);
+                    break;
+                case "--campaigns":
+                    campaigns = Integer.parseInt(value);
+                    break;
+                case "--find-ratio":
+                    findRatio = Double.parseDouble(value);
+                    break;
+                case "--window":
+                    windowMillis = Long.parseLong(value);
+                    break;
+                case "--capacity":
+                    capacity = Integer.parseInt(value);
+                    break;
+                case "--removals":
+                    removalsPerSecond = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + name);
+            }
+        }
+        if (args.length % 2 != 0) {
+            throw new IllegalArgumentException("missing value for " + args[args.length - 1]);
+        }
+    }
+
+    private void run() throws InterruptedException {
+        final SimHarness harness = new SimHarness(windowMillis, capacity, null);
+        harness.start();
+
+        System.out.println(String.format(Locale.US,
+                "%d events/s from %d producers for %ds; %d places, %d campaigns, %.0f%% finds, "
+                        + "%dms window, queue of %d",
+                rate, producers, seconds, places, campaigns, findRatio * 100, windowMillis,
+                capacity));
+
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) * producers / rate;
+        final long eventsPerProducer = (long) rate * seconds / producers;
+        final CountDownLatch done = new CountDownLatch(producers);
+
+        long startNanos = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            final Random random = new Random(p);
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long next = System.nanoTime();
+                    SimEvent[] types = SimEvent.values();
+                    for (long i = 0; i < eventsPerProducer; i++) {
+                        long wait = next - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        next += intervalNanos;
+
+                        harness.detectPlace(random.nextInt(places), random.nextDouble() * 30,
+                                types[random.nextInt(types.length)]);
+                        if (random.nextDouble() < findRatio) {
+                            harness.findCampaign(random.nextInt(campaigns));
+                        }
+                    }
+                    done.countDown();
+                }
+            }, "producer-" + p);
+            producer.start();
+        }
+
+        // Remove campaigns the way a user would, while the events keep coming
+        CampaignCore<SimCampaign, SimPlace, SimEvent> core = harness.getCore();
+        Random random = new Random();
+        long removalIntervalMillis = (removalsPerSecond > 0) ? 1000 / removalsPerSecond : 0;
+        while (!done.await(Math.max(1, removalIntervalMillis), TimeUnit.MILLISECONDS)) {
+            int size = core.getStore().size();
+            if (removalIntervalMillis > 0 && size > 0) {
+                SimCampaign campaign = core.getCampaign(random.nextInt(size));
+                if (campaign != null) {
+                    core.removeCampaign(campaign.id);
+                }
+            }
+        }
+        harness.finish(System.nanoTime() - startNanos);
+    }
+}
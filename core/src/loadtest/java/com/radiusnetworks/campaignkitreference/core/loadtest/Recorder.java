@@ -0,0 +1,91 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import com.radiusnetworks.campaignkitreference.core.CampaignEventDispatcher;
+import com.radiusnetworks.campaignkitreference.core.CampaignUiSink;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records when the core processes each event. Batches arrive on the dispatcher thread only.
+ */
+final class Recorder implements CampaignUiSink<SimCampaign>,
+        CampaignEventDispatcher.BatchListener<SimCampaign, SimPlace, SimEvent> {
+    final AtomicLong refreshes = new AtomicLong();
+    private final LatencyLog placeLatency = new LatencyLog();
+    private final LatencyLog campaignLatency = new LatencyLog();
+    private volatile long deliveredPlaces;
+    private volatile long deliveredCampaigns;
+
+    @Override
+    public void showFoundCampaign(SimCampaign campaign) {
+        campaignLatency.add(System.nanoTime() - campaign.reportedAt);
+        deliveredCampaigns++;
+    }
+
+    @Override
+    public void refreshFoundList() {
+        refreshes.incrementAndGet();
+    }
+
+    @Override
+    public void onEventBatch(
+            CampaignEventDispatcher.EventBatch<SimCampaign, SimPlace, SimEvent> batch) {
+        long now = System.nanoTime();
+        long count = 0;
+        for (CampaignEventDispatcher.PlaceEvent<SimPlace, SimEvent> event :
+                batch.getPlaceEvents()) {
+            // The latest event for each place; the ones folded into it were reported earlier
+            placeLatency.add(now - event.getPlace().reportedAt);
+            count += event.getRepeatCount();
+        }
+        deliveredPlaces += count;
+    }
+
+    long deliveredPlaces() {
+        return deliveredPlaces;
+    }
+
+    long deliveredCampaigns() {
+        return deliveredCampaigns;
+    }
+
+    void printLatency() {
+        placeLatency.print("place event latency");
+        campaignLatency.print("found campaign latency");
+    }
+
+    /**
+     * Latencies in nanoseconds, written by one thread and read once it is done.
+     */
+    static final class LatencyLog {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        void print(String name) {
+            if (size == 0) {
+                System.out.println(name + ": none");
+                return;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            System.out.println(String.format(Locale.US,
+                    "%s: n=%d p50=%.1fms p99=%.1fms max=%.1fms", name, size,
+                    percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6,
+                    sorted[size - 1] / 1e6));
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            int rank = (int) Math.ceil(sorted.length * percentile / 100);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import com.radiusnetworks.campaignkitreference.core.CampaignCore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The found campaigns, kept like Campaign Kit's manager keeps them.
+ */
+final class SimBackend implements CampaignCore.Backend<SimCampaign> {
+    private final Map<String, SimCampaign> found = new LinkedHashMap<>();
+    final AtomicLong removed = new AtomicLong();
+
+    synchronized void found(SimCampaign campaign) {
+        if (!found.containsKey(campaign.id)) {
+            found.put(campaign.id, campaign);
+        }
+    }
+
+    @Override
+    public synchronized void removeCampaign(SimCampaign campaign) {
+        if (found.remove(campaign.id) != null) {
+            removed.incrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized Collection<? extends SimCampaign> getFoundCampaigns() {
+        return new ArrayList<>(found.values());
+    }
+
+    @Override
+    public void setCampaignViewed(SimCampaign campaign) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import com.radiusnetworks.campaignkitreference.core.IdExtractor;
+
+/**
+ * A campaign reported at {@code reportedAt}, in {@link System#nanoTime()}; stands in for the
+ * SDK's campaign.
+ */
+final class SimCampaign {
+    static final IdExtractor<SimCampaign> IDS = new IdExtractor<SimCampaign>() {
+        @Override
+        public String getId(SimCampaign campaign) {
+            return campaign.id;
+        }
+    };
+
+    final String id;
+    final long reportedAt;
+
+    SimCampaign(int id, long reportedAt) {
+        this.id = Integer.toString(id);
+        this.reportedAt = reportedAt;
+    }
+}
@@ -0,0 +1,8 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+/**
+ * Place event types, standing in for the SDK's.
+ */
+enum SimEvent {
+    RANGE_BEACONS, ENTER_REGION, EXIT_REGION
+}
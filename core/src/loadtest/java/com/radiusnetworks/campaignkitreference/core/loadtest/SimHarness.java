@@ -0,0 +1,156 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import com.radiusnetworks.campaignkitreference.core.BoundedCampaignStore;
+import com.radiusnetworks.campaignkitreference.core.CampaignCore;
+import com.radiusnetworks.campaignkitreference.core.CampaignEventDispatcher;
+import com.radiusnetworks.campaignkitreference.core.EventDispatcher;
+import com.radiusnetworks.campaignkitreference.core.PlaceFlapFilter;
+import com.radiusnetworks.campaignkitreference.core.ProximityIndex;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link CampaignCore} wired up the way {@code MyApplication} wires it, with stand-ins for
+ * Campaign Kit and the UI.
+ * <p/>
+ * {@link #appPlaceFilter()} makes a place filter with the app's settings. The places are ranked
+ * by a proximity index set up like the app's.
+ * <p/>
+ * Feed it through {@link #detectPlace(int, double, SimEvent)} and {@link #findCampaign(int)}
+ * from any number of threads, as Campaign Kit would call the notifier, then
+ * {@link #finish(long)} to wait for the core to catch up and print what it did.
+ */
+final class SimHarness {
+    /**
+     * Same as the app's
+     */
+    static final int MAX_FOUND_CAMPAIGNS = 100;
+
+    private final SimBackend backend = new SimBackend();
+    private final ExecutorService backendThread = Executors.newSingleThreadExecutor();
+    private final Recorder recorder = new Recorder();
+    private final CampaignCore<SimCampaign, SimPlace, SimEvent> core;
+    private final EventDispatcher<SimCampaign, SimPlace, SimEvent> callbacks;
+    private final PlaceFlapFilter<SimPlace, SimEvent> placeFilter;
+    private final ProximityIndex<SimPlace, SimEvent> proximityIndex =
+            new ProximityIndex<>(SimPlace.CLASSIFIER, 0.3, 30000, 10);
+    private final AtomicLong rankingChanges = new AtomicLong();
+    private final long windowMillis;
+
+    private final AtomicLong sentPlaces = new AtomicLong();
+    private final AtomicLong sentCampaigns = new AtomicLong();
+
+    /**
+     * @param placeFilter
+     *         Filter for flapping places, or {@code null} to process every place event
+     */
+    SimHarness(long windowMillis, int capacity, PlaceFlapFilter<SimPlace, SimEvent> placeFilter) {
+        this.windowMillis = windowMillis;
+        this.placeFilter = placeFilter;
+        core = new CampaignCore<>(
+                new BoundedCampaignStore<>(MAX_FOUND_CAMPAIGNS, SimCampaign.IDS), SimCampaign.IDS,
+                SimPlace.IDS, windowMillis, capacity, backend, backendThread, recorder);
+        core.setBatchListener(recorder);
+        core.getEventDispatcher().setPlaceFilter(placeFilter);
+        core.setProximityIndex(proximityIndex);
+        proximityIndex.addOnRankingChangeListener(
+                new ProximityIndex.OnRankingChangeListener<SimPlace>() {
+                    @Override
+                    public void onRankingChanged(List<ProximityIndex.Ranked<SimPlace>> nearest) {
+                        rankingChanges.incrementAndGet();
+                    }
+                });
+        callbacks = core.getDispatcher();
+    }
+
+    void start() {
+        core.start();
+    }
+
+    CampaignCore<SimCampaign, SimPlace, SimEvent> getCore() {
+        return core;
+    }
+
+    /**
+     * @return A filter for flapping places, set up like the app's
+     */
+    static PlaceFlapFilter<SimPlace, SimEvent> appPlaceFilter() {
+        return new PlaceFlapFilter<>(SimPlace.CLASSIFIER, 10, 15, 0, 10000);
+    }
+
+    /**
+     * Report {@code event} for place {@code placeId} at {@code distance} metres, as
+     * {@code didDetectPlace} would.
+     */
+    void detectPlace(int placeId, double distance, SimEvent event) {
+        callbacks.didDetectPlace(new SimPlace(placeId, distance, System.nanoTime()), event);
+        sentPlaces.incrementAndGet();
+    }
+
+    /**
+     * Report campaign {@code campaignId} as found, as {@code didFindCampaign} would.
+     */
+    void findCampaign(int campaignId) {
+        SimCampaign campaign = new SimCampaign(campaignId, System.nanoTime());
+        backend.found(campaign);
+        callbacks.didFindCampaign(campaign);
+        sentCampaigns.incrementAndGet();
+    }
+
+    /**
+     * Stop the core once it processed everything sent and print the results.
+     *
+     * @param sendNanos
+     *         How long sending the events took
+     */
+    void finish(long sendNanos) throws InterruptedException {
+        core.stop();
+        backendThread.shutdown();
+        backendThread.awaitTermination(10, TimeUnit.SECONDS);
+        // Let the dispatcher deliver what is still queued
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        CampaignEventDispatcher<SimCampaign, SimPlace, SimEvent> dispatcher =
+                core.getEventDispatcher();
+        while (System.nanoTime() < deadline && recorder.deliveredPlaces() + suppressed()
+                + dispatcher.getDroppedPlaceEvents() < sentPlaces.get()) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(windowMillis + 50);
+
+        long sent = sentPlaces.get() + sentCampaigns.get();
+        System.out.println(String.format(Locale.US,
+                "sent %d events (%d place, %d campaign) in %.2fs: %.0f events/s",
+                sent, sentPlaces.get(), sentCampaigns.get(), sendNanos / 1e9,
+                sent * 1e9 / Math.max(1, sendNanos)));
+        System.out.println(String.format(Locale.US,
+                "delivered %d place events (%d coalesced), %d campaigns; dropped %d",
+                recorder.deliveredPlaces(), dispatcher.getCoalescedPlaceEvents(),
+                recorder.deliveredCampaigns(), dispatcher.getDroppedPlaceEvents()));
+        System.out.println(String.format(Locale.US,
+                "%d batches, %d list refreshes, %d campaigns stored, %d removed",
+                dispatcher.getDeliveredBatches(), recorder.refreshes.get(),
+                core.getStore().size(), backend.removed.get()));
+        if (placeFilter != null) {
+            System.out.println(String.format(Locale.US,
+                    "filter: %d place events suppressed, %d flaps, %d stable transitions over "
+                            + "%d places", placeFilter.getSuppressedEvents(),
+                    placeFilter.getFlaps(), placeFilter.getTransitions(), placeFilter.size()));
+        }
+        List<ProximityIndex.Ranked<SimPlace>> nearest = proximityIndex.getNearest();
+        System.out.println(String.format(Locale.US,
+                "proximity: %d ranking changes, %d places in range, nearest %s",
+                rankingChanges.get(), proximityIndex.size(), nearest.isEmpty() ? "none"
+                        : String.format(Locale.US, "%s at %.1fm", nearest.get(0).getPlace().id,
+                        nearest.get(0).getDistance())));
+        recorder.printLatency();
+    }
+
+    private long suppressed() {
+        return (placeFilter != null) ? placeFilter.getSuppressedEvents() : 0;
+    }
+}
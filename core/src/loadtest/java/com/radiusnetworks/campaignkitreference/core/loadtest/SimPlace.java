@@ -0,0 +1,60 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import com.radiusnetworks.campaignkitreference.core.IdExtractor;
+import com.radiusnetworks.campaignkitreference.core.PlaceFlapFilter;
+
+/**
+ * A place event reported at {@code reportedAt}, in {@link System#nanoTime()}; stands in for the
+ * SDK's place.
+ */
+final class SimPlace {
+    static final IdExtractor<SimPlace> IDS = new IdExtractor<SimPlace>() {
+        @Override
+        public String getId(SimPlace place) {
+            return place.id;
+        }
+    };
+
+    static final PlaceFlapFilter.Classifier<SimPlace, SimEvent> CLASSIFIER =
+            new PlaceFlapFilter.Classifier<SimPlace, SimEvent>() {
+                @Override
+                public int getKey(SimPlace place) {
+                    return place.key;
+                }
+
+                @Override
+                public double getDistance(SimPlace place) {
+                    return place.distance;
+                }
+
+                @Override
+                public PlaceFlapFilter.Transition getTransition(SimEvent event) {
+                    switch (event) {
+                        case ENTER_REGION:
+                            return PlaceFlapFilter.Transition.ENTER;
+                        case EXIT_REGION:
+                            return PlaceFlapFilter.Transition.EXIT;
+                        default:
+                            return PlaceFlapFilter.Transition.NONE;
+                    }
+                }
+
+                @Override
+                public SimEvent getEvent(PlaceFlapFilter.Transition transition) {
+                    return (transition == PlaceFlapFilter.Transition.ENTER)
+                            ? SimEvent.ENTER_REGION : SimEvent.EXIT_REGION;
+                }
+            };
+
+    final int key;
+    final String id;
+    final double distance;
+    final long reportedAt;
+
+    SimPlace(int id, double distance, long reportedAt) {
+        this.key = id;
+        this.id = Integer.toString(id);
+        this.distance = distance;
+        this.reportedAt = reportedAt;
+    }
+}
@@ -0,0 +1,214 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import com.radiusnetworks.campaignkitreference.core.CampaignEventDispatcher;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a {@link Trace} through the campaign core at accelerated time and reports how it
+ * keeps up.
+ * <p/>
+ * The trace comes from a file, or is generated by a {@link TraceGenerator}: hundreds of
+ * overlapping places, flapping at the edges of their regions from RSSI noise. It is played by
+ * several producer threads, like Campaign Kit's callback threads, each taking the events of a
+ * share of the places in order. {@code --speed} compresses the trace's time: 60 plays a minute
+ * of walking in a second, 0 plays it as fast as the threads can.
+ * <p/>
+ * Besides the core's results it prints the playback lag, how late events were sent compared to
+ * the accelerated schedule. A growing lag means the simulator itself could not keep up and the
+ * speed is not the one measured.
+ * <pre>
+ *     ./gradlew :core:simulate
+ *     ./gradlew :core:simulate -PsimulatorArgs='--places 800 --minutes 10 --speed 600'
+ *     ./gradlew :core:simulate -PsimulatorArgs='--trace src/loadtest/traces/doorway.trace'
+ * </pre>
+ * Options: {@code --trace} file to play, {@code --write} file to save the played trace to,
+ * {@code --speed}, {@code --producers}, {@code --window} coalescing window in milliseconds,
+ * {@code --capacity} of the event queue, {@code --filter off} to process flapping places
+ * without the app's {@code PlaceFlapFilter}; and for generated traces {@code --places},
+ * {@code --area} and {@code --range} in metres, {@code --minutes}, {@code --noise} RSSI standard
+ * deviation in dB and {@code --seed}.
+ */
+public class Simulator {
+    private String traceFile;
+    private String writeFile;
+    private double speed = 60;
+    private int producers = 4;
+    private long windowMillis = CampaignEventDispatcher.DEFAULT_COALESCE_WINDOW_MILLIS;
+    private int capacity = 1024;
+    private boolean filterPlaces = true;
+    private final TraceGenerator generator = new TraceGenerator();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Simulator simulator = new Simulator();
+        simulator.parse(args);
+        simulator.run();
+    }
+
+    private void parse(String[] args) {
+        if (args.length % 2 != 0) {
+            throw new IllegalArgumentException("missing value for " + args[args.length - 1]);
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i];
+            String value = args[i + 1];
+            switch (name) {
+                case "--trace":
+                    traceFile = value;
+                    break;
+                case "--write":
+                    writeFile = value;
+                    break;
+                case "--speed":
+                    speed = Double.parseDouble(value);
+                    break;
+                case "--producers":
+                    producers = Integer.parseInt(value);
+                    break;
+                case "--window":
+                    windowMillis = Long.parseLong(value);
+                    break;
+                case "--capacity":
+                    capacity = Integer.parseInt(value);
+                    break;
+                case "--filter":
+                    filterPlaces = !"off".equals(value);
+                    break;
+                case "--places":
+                    generator.places = Integer.parseInt(value);
+                    break;
+                case "--area":
+                    generator.areaMetres = Double.parseDouble(value);
+                    break;
+                case "--range":
+                    generator.rangeMetres = Double.parseDouble(value);
+                    break;
+                case "--minutes":
+                    generator.durationMillis =
+                            (long) (Double.parseDouble(value) * TimeUnit.MINUTES.toMillis(1));
+                    break;
+                case "--noise":
+                    generator.rssiSigma = Double.parseDouble(value);
+                    break;
+                case "--seed":
+                    generator.seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + name);
+            }
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        Trace trace;
+        if (traceFile != null) {
+            Reader in = new FileReader(traceFile);
+            try {
+                trace = Trace.read(in);
+            } finally {
+                in.close();
+            }
+        } else {
+            trace = generator.generate();
+        }
+        if (writeFile != null) {
+            Writer out = new FileWriter(writeFile);
+            try {
+                trace.write(out);
+            } finally {
+                out.close();
+            }
+        }
+
+        PrintWriter out = new PrintWriter(System.out);
+        trace.printSummary(out);
+        System.out.println(String.format(Locale.US,
+                "playing %d events at %sx from %d producers; %dms window, queue of %d",
+                trace.getEvents().size(), (speed > 0) ? String.format(Locale.US, "%.0f", speed)
+                        : "max", producers, windowMillis, capacity));
+
+        SimHarness harness = new SimHarness(windowMillis, capacity,
+                filterPlaces ? SimHarness.appPlaceFilter() : null);
+        harness.start();
+        long sendNanos = play(trace, harness);
+        harness.finish(sendNanos);
+    }
+
+    /**
+     * Play {@code trace} into {@code harness}, keeping the events of each place in order.
+     *
+     * @return How long playing took, in nanoseconds
+     */
+    private long play(Trace trace, final SimHarness harness) throws InterruptedException {
+        List<List<Trace.Event>> shares = new ArrayList<>(producers);
+        for (int p = 0; p < producers; p++) {
+            shares.add(new ArrayList<Trace.Event>());
+        }
+        for (Trace.Event event : trace.getEvents()) {
+            shares.get(event.id % producers).add(event);
+        }
+
+        final double nanosPerTraceMilli = (speed > 0) ? TimeUnit.MILLISECONDS.toNanos(1) / speed
+                : 0;
+        final AtomicLong maxLagNanos = new AtomicLong();
+        final AtomicLong totalLagNanos = new AtomicLong();
+        final long startNanos = System.nanoTime();
+        List<Thread> threads = new ArrayList<>(producers);
+        for (int p = 0; p < producers; p++) {
+            final List<Trace.Event> share = shares.get(p);
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long maxLag = 0;
+                    long totalLag = 0;
+                    for (Trace.Event event : share) {
+                        long due = startNanos + (long) (event.atMillis * nanosPerTraceMilli);
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        } else {
+                            maxLag = Math.max(maxLag, -wait);
+                            totalLag -= wait;
+                        }
+
+                        if (event.campaign) {
+                            harness.findCampaign(event.id);
+                        } else {
+                            harness.detectPlace(event.id, event.distance, event.type);
+                        }
+                    }
+                    totalLagNanos.addAndGet(totalLag);
+                    long current = maxLagNanos.get();
+                    while (maxLag > current && !maxLagNanos.compareAndSet(current, maxLag)) {
+                        current = maxLagNanos.get();
+                    }
+                }
+            }, "producer-" + p);
+            threads.add(producer);
+            producer.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long sendNanos = System.nanoTime() - startNanos;
+
+        if (speed > 0) {
+            System.out.println(String.format(Locale.US,
+                    "playback lag: mean %.2fms, max %.2fms",
+                    totalLagNanos.get() / 1e6 / Math.max(1, trace.getEvents().size()),
+                    maxLagNanos.get() / 1e6));
+        }
+        return sendNanos;
+    }
+}
@@ -0,0 +1,194 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A timed sequence of Campaign Kit callbacks for the {@link Simulator} to replay.
+ * <p/>
+ * Traces are written by hand or by {@link TraceGenerator}, one callback per line; blank lines
+ * and lines starting with {@code #} are ignored:
+ * <pre>
+ *     # at_ms  kind      id  event          distance_m
+ *     0        place     12  ENTER_REGION   14.20
+ *     0        campaign  3
+ *     1000     place     12  RANGE_BEACONS  12.85
+ *     2000     place     12  EXIT_REGION    21.04
+ * </pre>
+ */
+final class Trace {
+    /**
+     * Re-entering a place sooner than this after leaving it counts as a flap in
+     * {@link #printSummary(PrintWriter)}.
+     */
+    private static final long FLAP_MILLIS = 10000;
+
+    /**
+     * One callback.
+     */
+    static final class Event implements Comparable<Event> {
+        /**
+         * Time since the start of the trace
+         */
+        final long atMillis;
+
+        /**
+         * {@code true} for {@code didFindCampaign}, {@code false} for {@code didDetectPlace}
+         */
+        final boolean campaign;
+
+        /**
+         * Id of the campaign or place
+         */
+        final int id;
+
+        /**
+         * Place event type; {@code null} for campaigns
+         */
+        final SimEvent type;
+
+        /**
+         * Place distance in metres; {@code 0} for campaigns
+         */
+        final double distance;
+
+        private Event(long atMillis, boolean campaign, int id, SimEvent type, double distance) {
+            this.atMillis = atMillis;
+            this.campaign = campaign;
+            this.id = id;
+            this.type = type;
+            this.distance = distance;
+        }
+
+        static Event place(long atMillis, int placeId, SimEvent type, double distance) {
+            return new Event(atMillis, false, placeId, type, distance);
+        }
+
+        static Event campaign(long atMillis, int campaignId) {
+            return new Event(atMillis, true, campaignId, null, 0);
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return (atMillis < other.atMillis) ? -1 : ((atMillis == other.atMillis) ? 0 : 1);
+        }
+    }
+
+    private final List<Event> events;
+
+    /**
+     * @param events
+     *         The callbacks in any order; sorted by time, keeping the order of simultaneous ones
+     */
+    Trace(List<Event> events) {
+        List<Event> sorted = new ArrayList<>(events);
+        // A stable sort, so a campaign stays after the place event which found it
+        Collections.sort(sorted);
+        this.events = Collections.unmodifiableList(sorted);
+    }
+
+    List<Event> getEvents() {
+        return events;
+    }
+
+    long getDurationMillis() {
+        return events.isEmpty() ? 0 : events.get(events.size() - 1).atMillis;
+    }
+
+    static Trace read(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        List<Event> events = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            try {
+                long at = Long.parseLong(fields[0]);
+                int id = Integer.parseInt(fields[2]);
+                if ("campaign".equals(fields[1]) && fields.length == 3) {
+                    events.add(Event.campaign(at, id));
+                } else if ("place".equals(fields[1]) && fields.length == 5) {
+                    events.add(Event.place(at, id, SimEvent.valueOf(fields[3]),
+                            Double.parseDouble(fields[4])));
+                } else {
+                    throw new IOException("line " + lineNumber + ": not a trace event: " + line);
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return new Trace(events);
+    }
+
+    void write(Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        writer.println("# at_ms  kind      id  event          distance_m");
+        for (Event event : events) {
+            if (event.campaign) {
+                writer.println(String.format(Locale.US, "%d campaign %d", event.atMillis,
+                        event.id));
+            } else {
+                writer.println(String.format(Locale.US, "%d place %d %s %.2f", event.atMillis,
+                        event.id, event.type, event.distance));
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Print the size of the trace: places, callbacks by type, the most places in range at once
+     * and how often places flapped out and back in.
+     */
+    void printSummary(PrintWriter out) {
+        int[] counts = new int[SimEvent.values().length];
+        int campaigns = 0;
+        int flaps = 0;
+        int inRange = 0;
+        int maxInRange = 0;
+        Map<Integer, Long> exitedAt = new HashMap<>();
+        Map<Integer, Boolean> inside = new HashMap<>();
+        for (Event event : events) {
+            if (event.campaign) {
+                campaigns++;
+                continue;
+            }
+            counts[event.type.ordinal()]++;
+            boolean wasInside = Boolean.TRUE.equals(inside.get(event.id));
+            if (event.type == SimEvent.ENTER_REGION && !wasInside) {
+                inside.put(event.id, true);
+                maxInRange = Math.max(maxInRange, ++inRange);
+                Long exited = exitedAt.get(event.id);
+                if (exited != null && event.atMillis - exited < FLAP_MILLIS) {
+                    flaps++;
+                }
+            } else if (event.type == SimEvent.EXIT_REGION && wasInside) {
+                inside.put(event.id, false);
+                inRange--;
+                exitedAt.put(event.id, event.atMillis);
+            }
+        }
+        out.println(String.format(Locale.US,
+                "trace: %.1fs, %d places, %d enter, %d exit, %d ranging, %d campaigns found",
+                getDurationMillis() / 1e3, inside.size(),
+                counts[SimEvent.ENTER_REGION.ordinal()], counts[SimEvent.EXIT_REGION.ordinal()],
+                counts[SimEvent.RANGE_BEACONS.ordinal()], campaigns));
+        out.println(String.format(Locale.US,
+                "trace: up to %d places in range at once, %d re-entries within %ds", maxInRange,
+                flaps, FLAP_MILLIS / 1000));
+        out.flush();
+    }
+}
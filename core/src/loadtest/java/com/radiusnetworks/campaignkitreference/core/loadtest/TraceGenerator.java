@@ -0,0 +1,117 @@
+package com.radiusnetworks.campaignkitreference.core.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a {@link Trace} of someone walking through a dense deployment of beacons.
+ * <p/>
+ * Places are scattered over a square area, each with a beacon and a region of
+ * {@link #rangeMetres}. The visitor walks between random points. Every ranging interval the
+ * distance to each nearby beacon is estimated from a simulated RSSI, with log-distance path loss
+ * and Gaussian noise, the way the SDK estimates it. A place is entered when its estimated
+ * distance drops into its region and exited when it leaves it again, so the noise alone makes
+ * places at the edge of the region flap in and out. While inside, each interval reports the
+ * place as ranged. Entering a place which has a campaign finds the campaign.
+ * <p/>
+ * The same seed always generates the same trace.
+ */
+final class TraceGenerator {
+    /**
+     * Beacons further away than this many region radii are out of earshot
+     */
+    private static final double AUDIBLE_RANGES = 3;
+
+    int places = 300;
+    double areaMetres = 120;
+    double rangeMetres = 20;
+    long durationMillis = 60000;
+    long rangingIntervalMillis = 1100;
+    double walkingSpeed = 1.4;
+
+    /**
+     * RSSI at one metre, in dBm
+     */
+    double txPower = -59;
+    double pathLossExponent = 2.0;
+
+    /**
+     * Standard deviation of the RSSI noise, in dB
+     */
+    double rssiSigma = 4;
+
+    /**
+     * Share of places which have a campaign
+     */
+    double campaignShare = 0.3;
+    long seed = 1;
+
+    Trace generate() {
+        Random random = new Random(seed);
+        double[] x = new double[places];
+        double[] y = new double[places];
+        int[] campaignIds = new int[places];
+        int campaigns = 0;
+        for (int i = 0; i < places; i++) {
+            x[i] = random.nextDouble() * areaMetres;
+            y[i] = random.nextDouble() * areaMetres;
+            campaignIds[i] = (random.nextDouble() < campaignShare) ? campaigns++ : -1;
+        }
+
+        List<Trace.Event> events = new ArrayList<>();
+        boolean[] inside = new boolean[places];
+        double visitorX = random.nextDouble() * areaMetres;
+        double visitorY = random.nextDouble() * areaMetres;
+        double targetX = visitorX;
+        double targetY = visitorY;
+        double step = walkingSpeed * rangingIntervalMillis / 1000;
+
+        for (long at = 0; at <= durationMillis; at += rangingIntervalMillis) {
+            // Walk towards the next point, picking a new one on arrival
+            double dx = targetX - visitorX;
+            double dy = targetY - visitorY;
+            double toTarget = Math.hypot(dx, dy);
+            if (toTarget <= step) {
+                visitorX = targetX;
+                visitorY = targetY;
+                targetX = random.nextDouble() * areaMetres;
+                targetY = random.nextDouble() * areaMetres;
+            } else {
+                visitorX += dx * step / toTarget;
+                visitorY += dy * step / toTarget;
+            }
+
+            for (int i = 0; i < places; i++) {
+                double distance = Math.hypot(x[i] - visitorX, y[i] - visitorY);
+                double estimate = (distance > rangeMetres * AUDIBLE_RANGES)
+                        ? Double.POSITIVE_INFINITY
+                        : estimateDistance(distance, random);
+                boolean nowInside = estimate <= rangeMetres;
+
+                if (nowInside && !inside[i]) {
+                    events.add(Trace.Event.place(at, i, SimEvent.ENTER_REGION, estimate));
+                    if (campaignIds[i] >= 0) {
+                        events.add(Trace.Event.campaign(at, campaignIds[i]));
+                    }
+                } else if (!nowInside && inside[i]) {
+                    double reported = Double.isInfinite(estimate) ? distance : estimate;
+                    events.add(Trace.Event.place(at, i, SimEvent.EXIT_REGION, reported));
+                } else if (nowInside) {
+                    events.add(Trace.Event.place(at, i, SimEvent.RANGE_BEACONS, estimate));
+                }
+                inside[i] = nowInside;
+            }
+        }
+        return new Trace(events);
+    }
+
+    /**
+     * @return The distance the SDK would estimate from a noisy RSSI reading at {@code distance}
+     */
+    private double estimateDistance(double distance, Random random) {
+        double rssi = txPower - 10 * pathLossExponent * Math.log10(Math.max(0.1, distance))
+                + random.nextGaussian() * rssiSigma;
+        return Math.pow(10, (txPower - rssi) / (10 * pathLossExponent));
+    }
+}
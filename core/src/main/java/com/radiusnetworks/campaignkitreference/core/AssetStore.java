@@ -0,0 +1,470 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads the images, stylesheets and scripts referenced by campaign content and keeps them on
+ * disk, so campaigns render without a network connection.
+ * <p/>
+ * {@link #prefetch(Collection)} scans campaign bodies for the absolute {@code http(s)} URLs of
+ * {@code <img src>}, {@code <script src>}, {@code <link rel="stylesheet" href>} and CSS
+ * {@code url(...)}, and downloads those not stored yet on the given executor. Links to other
+ * pages are left alone. Downloads are stored content addressed: each blob is named after the
+ * SHA-1 of its bytes, so resources shared between campaigns, or served from several URLs, are
+ * stored once. A small index file per URL maps it to its blob and content type. Resources no
+ * longer referenced by any campaign are deleted by the next prefetch.
+ * <p/>
+ * A download is added to the store, blob and index together, under the same lock the cleanup
+ * holds, so the cleanup never deletes a blob which a download just put in place. Safe to use
+ * from any thread.
+ */
+public class AssetStore {
+    private static final Logger LOG = Logger.getLogger(AssetStore.class.getName());
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final String CSS_MIME_TYPE = "text/css";
+    private static final String CHARSET = "UTF-8";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Pattern SRC_URL = Pattern.compile(
+            "<(?:img|script)\\b[^>]*?\\bsrc\\s*=\\s*([\"'])(https?://.*?)\\1",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern LINK_TAG = Pattern.compile(
+            "<link\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern STYLESHEET_REL = Pattern.compile(
+            "\\brel\\s*=\\s*([\"']?)stylesheet\\1", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HREF_URL = Pattern.compile(
+            "\\bhref\\s*=\\s*([\"'])(https?://.*?)\\1", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CSS_URL = Pattern.compile(
+            "url\\(\\s*([\"']?)(https?://[^\"')]+)\\1\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File blobDirectory;
+    private final File indexDirectory;
+    private final Executor executor;
+
+    /**
+     * Stored resources by URL. Filled from disk on first use.
+     */
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+    private volatile boolean indexLoaded = false;
+
+    /**
+     * URLs currently being downloaded, so a second sync does not fetch them twice.
+     */
+    private final Set<String> inFlight =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Held while blobs are added to or deleted from the store
+     */
+    private final Object storeLock = new Object();
+
+    /**
+     * @param directory
+     *         Directory holding the downloads, e.g. in the app's cache directory
+     * @param executor
+     *         Runs the downloads; its thread count bounds how many run at once
+     */
+    public AssetStore(File directory, Executor executor) {
+        this.blobDirectory = new File(directory, "blobs");
+        this.indexDirectory = new File(directory, "index");
+        this.executor = executor;
+    }
+
+    /**
+     * Download every resource referenced by {@code bodies} which is not stored yet, and delete
+     * those no longer referenced. Returns once the downloads are queued.
+     *
+     * @param bodies
+     *         The HTML of the complete campaign set, e.g. after a sync
+     * @return Number of downloads queued
+     */
+    public int prefetch(Collection<String> bodies) {
+        loadIndex();
+
+        Set<String> urls = new LinkedHashSet<>();
+        for (String body : bodies) {
+            if (body != null) {
+                collectUrls(body, urls);
+            }
+        }
+
+        removeUnreferenced(urls);
+
+        int queued = 0;
+        for (final String url : urls) {
+            if (assets.containsKey(url) || !inFlight.add(url)) {
+                continue;
+            }
+            queued++;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        download(url);
+                    } catch (IOException e) {
+                        LOG.warning("Unable to prefetch " + url + ": " + e);
+                    } finally {
+                        inFlight.remove(url);
+                    }
+                }
+            });
+        }
+        LOG.fine(bodies.size() + " campaigns reference " + urls.size() + " resources, "
+                + queued + " to download");
+        return queued;
+    }
+
+    /**
+     * @return The stored copy of {@code url}, or {@code null} if there is none
+     */
+    public Asset get(String url) {
+        loadIndex();
+        return assets.get(url);
+    }
+
+    /**
+     * Forget {@code url}, e.g. because its blob could not be read. The next prefetch downloads it
+     * again.
+     */
+    public void forget(String url) {
+        assets.remove(url);
+    }
+
+    /**
+     * @return The text of the stylesheet stored for {@code url}, or {@code null} if there is none
+     */
+    public String readStylesheet(String url) {
+        Asset asset = get(url);
+        if (asset == null || !CSS_MIME_TYPE.equals(asset.mimeType)) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(asset.blob);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) asset.blob.length());
+            copy(in, out, null);
+            return out.toString(asset.encoding != null ? asset.encoding : CHARSET);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return Number of URLs stored
+     */
+    public int size() {
+        return assets.size();
+    }
+
+    /**
+     * @return Number of downloads queued or running
+     */
+    public int getDownloading() {
+        return inFlight.size();
+    }
+
+    /**
+     * Add the absolute {@code http(s)} URLs of the resources {@code html} loads to {@code urls}:
+     * images, scripts, stylesheets and what CSS refers to with {@code url(...)}.
+     */
+    public static void collectUrls(String html, Set<String> urls) {
+        Matcher src = SRC_URL.matcher(html);
+        while (src.find()) {
+            urls.add(src.group(2));
+        }
+        Matcher link = LINK_TAG.matcher(html);
+        while (link.find()) {
+            String tag = link.group();
+            Matcher href = HREF_URL.matcher(tag);
+            if (STYLESHEET_REL.matcher(tag).find() && href.find()) {
+                urls.add(href.group(2));
+            }
+        }
+        Matcher css = CSS_URL.matcher(html);
+        while (css.find()) {
+            urls.add(css.group(2));
+        }
+    }
+
+    /**
+     * Download thread. Fetch {@code url} into a blob named after its content and index it.
+     */
+    private void download(String url) throws IOException {
+        if (!blobDirectory.isDirectory() && !blobDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + blobDirectory);
+        }
+        if (!indexDirectory.isDirectory() && !indexDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + indexDirectory);
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        File temp = File.createTempFile("download", TEMP_SUFFIX, blobDirectory);
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status);
+            }
+            MessageDigest digest = newDigest();
+            in = connection.getInputStream();
+            out = new FileOutputStream(temp);
+            copy(in, out, digest);
+            out.close();
+            out = null;
+
+            File blob = new File(blobDirectory, toHex(digest.digest()));
+            Asset asset = Asset.fromContentType(blob, connection.getContentType());
+            synchronized (storeLock) {
+                if (blob.exists()) {
+                    // Same content as another URL; keep the existing copy
+                    temp.delete();
+                } else if (!temp.renameTo(blob)) {
+                    throw new IOException("Unable to rename " + temp + " to " + blob);
+                }
+                writeIndex(url, asset);
+                assets.put(url, asset);
+            }
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+            temp.delete();
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Drop the index entries for URLs not in {@code urls} and delete blobs nothing refers to.
+     */
+    private void removeUnreferenced(Set<String> urls) {
+        synchronized (storeLock) {
+            Set<String> referencedBlobs = new HashSet<>();
+            Iterator<Map.Entry<String, Asset>> iterator = assets.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Asset> entry = iterator.next();
+                if (urls.contains(entry.getKey())) {
+                    referencedBlobs.add(entry.getValue().blob.getName());
+                } else {
+                    indexFileFor(entry.getKey()).delete();
+                    iterator.remove();
+                }
+            }
+
+            File[] blobs = blobDirectory.listFiles();
+            if (blobs == null) {
+                return;
+            }
+            for (File blob : blobs) {
+                // Temporary files belong to downloads in progress
+                if (!referencedBlobs.contains(blob.getName())
+                        && !blob.getName().endsWith(TEMP_SUFFIX)) {
+                    blob.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the index files left by earlier runs, once.
+     */
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        synchronized (storeLock) {
+            if (indexLoaded) {
+                return;
+            }
+            File[] files = indexDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    readIndex(file);
+                }
+            }
+            indexLoaded = true;
+        }
+    }
+
+    /**
+     * Index files hold three lines: the URL, the blob name and the content type.
+     */
+    private void writeIndex(String url, Asset asset) throws IOException {
+        File file = indexFileFor(url);
+        File temp = new File(indexDirectory, file.getName() + TEMP_SUFFIX);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), CHARSET);
+            writer.write(url + "\n" + asset.blob.getName() + "\n" + asset.contentType + "\n");
+            writer.close();
+            writer = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp + " to " + file);
+            }
+        } finally {
+            closeQuietly(writer);
+            temp.delete();
+        }
+    }
+
+    private void readIndex(File file) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), CHARSET));
+            String url = reader.readLine();
+            String blobName = reader.readLine();
+            String contentType = reader.readLine();
+            File blob = (blobName != null) ? new File(blobDirectory, blobName) : null;
+            if (url == null || blob == null || !blob.exists()) {
+                file.delete();
+                return;
+            }
+            assets.put(url, Asset.fromContentType(blob, contentType));
+        } catch (IOException e) {
+            file.delete();
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private File indexFileFor(String url) {
+        MessageDigest digest = newDigest();
+        try {
+            return new File(indexDirectory, toHex(digest.digest(url.getBytes(CHARSET))));
+        } catch (IOException e) {
+            // UTF-8 is required to exist on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, MessageDigest digest)
+            throws IOException {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+            if (digest != null) {
+                digest.update(buffer, 0, count);
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is required to exist on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * A stored resource: its blob and what the server said it was.
+     */
+    public static final class Asset {
+        private final File blob;
+        private final String contentType;
+        private final String mimeType;
+        private final String encoding;
+
+        private Asset(File blob, String contentType, String mimeType, String encoding) {
+            this.blob = blob;
+            this.contentType = contentType;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+        }
+
+        /**
+         * @param contentType
+         *         Value of the {@code Content-Type} header, e.g. {@code text/css; charset=utf-8}
+         */
+        static Asset fromContentType(File blob, String contentType) {
+            if (contentType == null || contentType.trim().isEmpty()) {
+                contentType = DEFAULT_MIME_TYPE;
+            }
+            String[] parts = contentType.split(";");
+            String mimeType = parts[0].trim().toLowerCase(Locale.US);
+            String encoding = null;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.toLowerCase(Locale.US).startsWith("charset=")) {
+                    encoding = parameter.substring("charset=".length()).replace("\"", "");
+                }
+            }
+            return new Asset(blob, contentType, mimeType, encoding);
+        }
+
+        /**
+         * @return The file holding the resource; may be deleted by the next prefetch
+         */
+        public File getBlob() {
+            return blob;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * @return The charset the server named, or {@code null}
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Thread-safe {@link CampaignStore} holding up to a fixed number of campaigns.
+ * <p/>
+ * Campaign Kit reports found campaigns on its own callback threads while the activities read the
+ * list on the UI thread. Readers are handed an immutable snapshot which is swapped out on every
+ * write (copy-on-write), so reads never lock and never observe a list in the middle of an update.
+ * <p/>
+ * Writes are keyed by the campaign id. A campaign which is found again after its recurrence
+ * threshold keeps its original position instead of being appended a second time. The store is
+ * bounded: once {@link #getCapacity()} campaigns have been found the oldest one is dropped to make
+ * room for the newest. Otherwise campaigns are kept in the order they were found.
+ * <p/>
+ * Every write is published to the registered {@link OnChangeListener}s as a list of
+ * {@link CampaignChange}s, so views can update only what actually changed instead of rebuilding
+ * from the whole list.
+ *
+ * @param <C>
+ *         Type of the campaigns
+ */
+public class BoundedCampaignStore<C> implements CampaignStore<C> {
+    /**
+     * Number of campaigns kept when no capacity is provided.
+     */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * Serializes writers. Readers never take this lock.
+     */
+    private final Object writeLock = new Object();
+
+    private final int capacity;
+    private final IdExtractor<C> ids;
+    private final Snapshot<C> empty;
+
+    /**
+     * Current immutable view of the store. Replaced, never modified, by writers.
+     */
+    private volatile Snapshot<C> snapshot;
+
+    private final CopyOnWriteArrayList<OnChangeListener<C>> listeners =
+            new CopyOnWriteArrayList<>();
+
+    public BoundedCampaignStore(IdExtractor<C> ids) {
+        this(DEFAULT_CAPACITY, ids);
+    }
+
+    /**
+     * @param capacity
+     *         Maximum number of campaigns to keep. Must be positive.
+     * @param ids
+     *         Identifies the campaigns
+     */
+    public BoundedCampaignStore(int capacity, IdExtractor<C> ids) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.ids = ids;
+        this.empty = new Snapshot<>(new ArrayList<C>(0), ids);
+        this.snapshot = empty;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public boolean add(C campaign) {
+        synchronized (writeLock) {
+            Snapshot<C> current = snapshot;
+            if (current.positions.containsKey(ids.getId(campaign))) {
+                return false;
+            }
+
+            List<CampaignChange<C>> changes = new ArrayList<>(2);
+            int start = 0;
+            if (current.campaigns.size() >= capacity) {
+                changes.add(CampaignChange.removed(current.campaigns.get(0), 0));
+                start = 1;
+            }
+            ArrayList<C> next = new ArrayList<>(current.campaigns.size() + 1 - start);
+            next.addAll(current.campaigns.subList(start, current.campaigns.size()));
+            next.add(campaign);
+            changes.add(CampaignChange.added(campaign, next.size() - 1));
+            publish(new Snapshot<>(next, ids), changes);
+            return true;
+        }
+    }
+
+    /**
+     * Removes a campaign by id. The position comes from the id index, so there is no search and
+     * no diff; only the snapshot is copied, as for every write.
+     */
+    @Override
+    public C remove(String campaignId) {
+        synchronized (writeLock) {
+            Snapshot<C> current = snapshot;
+            Integer position = current.positions.get(campaignId);
+            if (position == null) {
+                return null;
+            }
+            ArrayList<C> next = new ArrayList<>(current.campaigns);
+            C removed = next.remove((int) position);
+            List<CampaignChange<C>> changes = new ArrayList<>(1);
+            changes.add(CampaignChange.removed(removed, position));
+            publish(new Snapshot<>(next, ids), changes);
+            return removed;
+        }
+    }
+
+    /**
+     * Removes several campaigns with one copy of the snapshot and one publish. The changes are
+     * ordered from the last position to the first, so each position still holds when its change
+     * is applied after the ones before it.
+     */
+    @Override
+    public List<C> removeAll(Collection<String> campaignIds) {
+        synchronized (writeLock) {
+            Snapshot<C> current = snapshot;
+            Set<String> wanted = new HashSet<>(campaignIds);
+            ArrayList<C> next = new ArrayList<>(current.campaigns.size());
+            List<C> removed = new ArrayList<>();
+            List<CampaignChange<C>> changes = new ArrayList<>();
+            for (int i = 0; i < current.campaigns.size(); i++) {
+                C campaign = current.campaigns.get(i);
+                if (wanted.contains(ids.getId(campaign))) {
+                    removed.add(campaign);
+                    changes.add(CampaignChange.removed(campaign, i));
+                } else {
+                    next.add(campaign);
+                }
+            }
+            if (removed.isEmpty()) {
+                return Collections.emptyList();
+            }
+            Collections.reverse(changes);
+            publish(new Snapshot<>(next, ids), changes);
+            return removed;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (writeLock) {
+            List<CampaignChange<C>> changes =
+                    CampaignChange.diff(snapshot.campaigns, empty.campaigns, ids);
+            publish(empty, changes);
+        }
+    }
+
+    /**
+     * Registers {@code listener} for all future writes.
+     * <p/>
+     * The snapshot returned is taken atomically with the registration: the first changes the
+     * listener receives apply to exactly this list, so no write can be missed in between.
+     *
+     * @return The snapshot the listener's changes start from
+     */
+    @Override
+    public List<C> addOnChangeListener(OnChangeListener<C> listener) {
+        synchronized (writeLock) {
+            listeners.addIfAbsent(listener);
+            return snapshot.campaigns;
+        }
+    }
+
+    @Override
+    public void removeOnChangeListener(OnChangeListener<C> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * The found campaigns in the order they were found.
+     *
+     * @return An unmodifiable snapshot of the store. Later writes are not reflected in it.
+     */
+    @Override
+    public List<C> getCampaigns() {
+        return snapshot.campaigns;
+    }
+
+    @Override
+    public C get(int position) {
+        List<C> campaigns = snapshot.campaigns;
+        if (position >= 0 && position < campaigns.size()) {
+            return campaigns.get(position);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean contains(String campaignId) {
+        return snapshot.positions.containsKey(campaignId);
+    }
+
+    /**
+     * Position of a campaign, looked up in the id index kept with each snapshot.
+     *
+     * @return The position of the campaign with {@code campaignId}, or
+     * {@link CampaignChange#NO_POSITION} if it has not been found
+     */
+    @Override
+    public int indexOf(String campaignId) {
+        Integer position = snapshot.positions.get(campaignId);
+        return (position != null) ? position : CampaignChange.NO_POSITION;
+    }
+
+    @Override
+    public int size() {
+        return snapshot.campaigns.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return snapshot.campaigns.isEmpty();
+    }
+
+    /**
+     * Swaps in {@code next} and notifies the listeners. Must be called holding the write lock.
+     */
+    private void publish(Snapshot<C> next, List<CampaignChange<C>> changes) {
+        snapshot = next;
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<CampaignChange<C>> published = Collections.unmodifiableList(changes);
+        for (OnChangeListener<C> listener : listeners) {
+            listener.onCampaignsChanged(published, next.campaigns);
+        }
+    }
+
+    /**
+     * Immutable state of the store: the ordered campaigns and the position of each campaign id.
+     */
+    private static final class Snapshot<C> {
+        final List<C> campaigns;
+        final Map<String, Integer> positions;
+
+        Snapshot(ArrayList<C> campaigns, IdExtractor<C> ids) {
+            this.campaigns = Collections.unmodifiableList(campaigns);
+            this.positions = new HashMap<>(Math.max(4, campaigns.size() * 2));
+            for (int i = 0; i < campaigns.size(); i++) {
+                positions.put(ids.getId(campaigns.get(i)), i);
+            }
+        }
+    }
+}
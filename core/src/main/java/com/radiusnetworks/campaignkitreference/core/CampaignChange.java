@@ -0,0 +1,163 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A single step which turns one {@link CampaignStore} snapshot into the next.
+ * <p/>
+ * Changes are delivered as an ordered list. Positions are relative to the list as it is
+ * <em>before</em> the change is applied, so a consumer holding a copy of the previous snapshot
+ * stays in sync by applying each change in turn:
+ * <ul>
+ *     <li>{@link Type#ADDED}: insert {@link #getCampaign()} at {@link #getToPosition()}</li>
+ *     <li>{@link Type#REMOVED}: remove the campaign at {@link #getFromPosition()}</li>
+ *     <li>{@link Type#MOVED}: remove the campaign at {@link #getFromPosition()} and insert it at
+ *     {@link #getToPosition()}</li>
+ * </ul>
+ *
+ * @param <C>
+ *         Type of the campaigns
+ */
+public final class CampaignChange<C> {
+    public enum Type {
+        ADDED,
+        REMOVED,
+        MOVED
+    }
+
+    /**
+     * Position used for the side of a change which has no position, e.g. the "from" side of an
+     * {@link Type#ADDED} change.
+     */
+    public static final int NO_POSITION = -1;
+
+    private final Type type;
+    private final C campaign;
+    private final int fromPosition;
+    private final int toPosition;
+
+    private CampaignChange(Type type, C campaign, int fromPosition, int toPosition) {
+        this.type = type;
+        this.campaign = campaign;
+        this.fromPosition = fromPosition;
+        this.toPosition = toPosition;
+    }
+
+    static <C> CampaignChange<C> added(C campaign, int position) {
+        return new CampaignChange<>(Type.ADDED, campaign, NO_POSITION, position);
+    }
+
+    static <C> CampaignChange<C> removed(C campaign, int position) {
+        return new CampaignChange<>(Type.REMOVED, campaign, position, NO_POSITION);
+    }
+
+    static <C> CampaignChange<C> moved(C campaign, int fromPosition, int toPosition) {
+        return new CampaignChange<>(Type.MOVED, campaign, fromPosition, toPosition);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public C getCampaign() {
+        return campaign;
+    }
+
+    public int getFromPosition() {
+        return fromPosition;
+    }
+
+    public int getToPosition() {
+        return toPosition;
+    }
+
+    /**
+     * Applies this change to a list which mirrors the store, such as a list of pager items.
+     *
+     * @param items
+     *         List matching the snapshot this change was computed against
+     * @param item
+     *         The value to insert for an {@link Type#ADDED} change; ignored otherwise
+     */
+    public <T> void applyTo(List<T> items, T item) {
+        switch (type) {
+            case ADDED:
+                items.add(toPosition, item);
+                break;
+            case REMOVED:
+                items.remove(fromPosition);
+                break;
+            case MOVED:
+                items.add(toPosition, items.remove(fromPosition));
+                break;
+        }
+    }
+
+    /**
+     * Computes the changes which turn {@code from} into {@code to}.
+     * <p/>
+     * Campaigns are matched by id. Removals are emitted first, from the back of the list, followed
+     * by the additions and moves needed to reach the order of {@code to}. Campaigns which keep
+     * their relative order produce no change at all.
+     */
+    public static <C> List<CampaignChange<C>> diff(List<C> from, List<C> to, IdExtractor<C> ids) {
+        List<CampaignChange<C>> changes = new ArrayList<>();
+
+        Set<String> targetIds = new HashSet<>(to.size() * 2);
+        for (C campaign : to) {
+            targetIds.add(ids.getId(campaign));
+        }
+
+        ArrayList<C> working = new ArrayList<>(from);
+        for (int i = working.size() - 1; i >= 0; i--) {
+            C campaign = working.get(i);
+            if (!targetIds.contains(ids.getId(campaign))) {
+                changes.add(removed(campaign, i));
+                working.remove(i);
+            }
+        }
+
+        Set<String> remainingIds = new HashSet<>(working.size() * 2);
+        for (C campaign : working) {
+            remainingIds.add(ids.getId(campaign));
+        }
+
+        for (int i = 0; i < to.size(); i++) {
+            C campaign = to.get(i);
+            String id = ids.getId(campaign);
+            if (i < working.size() && ids.getId(working.get(i)).equals(id)) {
+                continue;
+            }
+            if (remainingIds.contains(id)) {
+                int source = indexOf(working, id, i + 1, ids);
+                changes.add(moved(campaign, source, i));
+                working.add(i, working.remove(source));
+            } else {
+                changes.add(added(campaign, i));
+                working.add(i, campaign);
+            }
+        }
+
+        return changes;
+    }
+
+    private static <C> int indexOf(List<C> campaigns, String id, int start, IdExtractor<C> ids) {
+        for (int i = start; i < campaigns.size(); i++) {
+            if (ids.getId(campaigns.get(i)).equals(id)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Campaign " + id + " is not in the list");
+    }
+
+    @Override
+    public String toString() {
+        return "CampaignChange{" + type +
+                " campaign=" + campaign +
+                " from=" + fromPosition +
+                " to=" + toPosition + "}";
+    }
+}
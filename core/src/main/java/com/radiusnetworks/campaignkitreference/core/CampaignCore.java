@@ -0,0 +1,310 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The app's campaign logic, free of Android and of the Campaign Kit SDK.
+ * <p/>
+ * Campaign Kit callbacks go into the {@link EventDispatcher} returned by
+ * {@link #getDispatcher()}; the core processes them in batches on the dispatcher's thread. Found
+ * campaigns are added to the {@link CampaignStore} and shown through the {@link CampaignUiSink},
+ * which is asked to refresh the found list at most once per batch. Place events update the
+ * {@linkplain #setProximityIndex(ProximityIndex) proximity index}, if there is one, which is
+ * published once per batch. Removing a campaign and marking it viewed go to the {@link Backend}
+ * on the backend executor.
+ * <p/>
+ * The app only adapts: it implements the backend and the UI sink over the SDK and its
+ * activities, and does its Android-specific work for each batch in a
+ * {@linkplain #setBatchListener(CampaignEventDispatcher.BatchListener) batch listener}. On a
+ * plain JVM the same core runs with stand-in types, e.g. under a load generator.
+ *
+ * @param <C>
+ *         Type of the campaigns
+ * @param <P>
+ *         Type of the places
+ * @param <E>
+ *         Type of the place events
+ */
+public class CampaignCore<C, P, E> implements CampaignEventDispatcher.BatchListener<C, P, E> {
+    /**
+     * The source of truth for found campaigns, i.e. the Campaign Kit manager.
+     * <p/>
+     * Only called on the backend executor.
+     */
+    public interface Backend<C> {
+        void removeCampaign(C campaign);
+
+        /**
+         * @return Every campaign found and not removed, in the order they were found
+         */
+        Collection<? extends C> getFoundCampaigns();
+
+        void setCampaignViewed(C campaign);
+    }
+
+    private final CampaignStore<C> store;
+    private final IdExtractor<C> campaignIds;
+    private final CampaignEventDispatcher<C, P, E> dispatcher;
+    private final Backend<C> backend;
+    private final Executor backendExecutor;
+    private final CampaignUiSink<C> uiSink;
+    private volatile CampaignEventDispatcher.BatchListener<C, P, E> batchListener;
+    private volatile ProximityIndex<P, E> proximityIndex;
+
+    /**
+     * Campaigns removed from the store which the backend may still have
+     */
+    private final ConcurrentLinkedQueue<C> pendingRemovals = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean();
+    private final Runnable reconcileTask = new Runnable() {
+        @Override
+        public void run() {
+            reconcile();
+        }
+    };
+
+    /**
+     * @param store
+     *         Holds the found campaigns
+     * @param campaignIds
+     *         Identifies campaigns, as the store does
+     * @param placeIds
+     *         Identifies places, to collapse repeated events for the same place
+     * @param coalesceWindowMillis
+     *         How long to collect a burst of events before processing them together
+     * @param queueCapacity
+     *         Size of the queue between the callbacks and the processing
+     * @param backend
+     *         The Campaign Kit manager, or a stand-in
+     * @param backendExecutor
+     *         Runs the calls to {@code backend}, in order
+     * @param uiSink
+     *         Shows found campaigns and refreshes the found list
+     */
+    public CampaignCore(CampaignStore<C> store,
+                        IdExtractor<C> campaignIds,
+                        IdExtractor<P> placeIds,
+                        long coalesceWindowMillis,
+                        int queueCapacity,
+                        Backend<C> backend,
+                        Executor backendExecutor,
+                        CampaignUiSink<C> uiSink) {
+        this.store = store;
+        this.campaignIds = campaignIds;
+        this.backend = backend;
+        this.backendExecutor = backendExecutor;
+        this.uiSink = uiSink;
+        this.dispatcher = new CampaignEventDispatcher<>(this, placeIds, coalesceWindowMillis,
+                queueCapacity);
+    }
+
+    /**
+     * Start processing events. Events may be passed to the dispatcher before this is called.
+     */
+    public void start() {
+        dispatcher.start();
+    }
+
+    /**
+     * Stop processing events once the events already queued are processed.
+     */
+    public void stop() {
+        dispatcher.stop();
+    }
+
+    /**
+     * Receives the Campaign Kit callbacks.
+     */
+    public EventDispatcher<C, P, E> getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * The dispatcher, for its counters.
+     */
+    public CampaignEventDispatcher<C, P, E> getEventDispatcher() {
+        return dispatcher;
+    }
+
+    public CampaignStore<C> getStore() {
+        return store;
+    }
+
+    /**
+     * Set a listener for the work on each batch which the core does not do itself, such as
+     * logging place events or scheduling syncs. It is called on the dispatcher thread after the
+     * found campaigns are stored and shown, and before the found list is refreshed.
+     *
+     * @param listener
+     *         The listener, or {@code null} for none
+     */
+    public void setBatchListener(CampaignEventDispatcher.BatchListener<C, P, E> listener) {
+        batchListener = listener;
+    }
+
+    /**
+     * Set the index to rank the places in range with. It is updated and published on the
+     * dispatcher thread; set it before {@link #start()}.
+     *
+     * @param index
+     *         The index, or {@code null} for none
+     */
+    public void setProximityIndex(ProximityIndex<P, E> index) {
+        proximityIndex = index;
+    }
+
+    public ProximityIndex<P, E> getProximityIndex() {
+        return proximityIndex;
+    }
+
+    /**
+     * Process everything reported during one burst. Called on the dispatcher thread.
+     */
+    @Override
+    public void onEventBatch(CampaignEventDispatcher.EventBatch<C, P, E> batch) {
+        boolean campaignsAdded = false;
+        for (C campaign : batch.getFoundCampaigns()) {
+            // Re-found campaigns keep their position but are shown again
+            campaignsAdded |= store.add(campaign);
+            uiSink.showFoundCampaign(campaign);
+        }
+
+        ProximityIndex<P, E> index = proximityIndex;
+        if (index != null) {
+            for (CampaignEventDispatcher.PlaceEvent<P, E> event : batch.getPlaceEvents()) {
+                index.onPlaceEvent(event.getPlace(), event.getEventType(), event.getTimestamp());
+            }
+            index.publish(System.currentTimeMillis());
+        }
+
+        CampaignEventDispatcher.BatchListener<C, P, E> listener = batchListener;
+        if (listener != null) {
+            listener.onEventBatch(batch);
+        }
+
+        if (campaignsAdded) {
+            uiSink.refreshFoundList();
+        }
+    }
+
+    /**
+     * @return The nth found campaign, or {@code null} if there is none
+     */
+    public C getCampaign(int position) {
+        return store.get(position);
+    }
+
+    /**
+     * @return An unmodifiable snapshot of the found campaigns
+     */
+    public List<C> getCampaigns() {
+        return store.getCampaigns();
+    }
+
+    /**
+     * Removes the campaign with {@code campaignId} from the store at once, which publishes a
+     * single removal to the store's listeners, and asks the UI to refresh the found list.
+     * <p/>
+     * The backend catches up in the background: removals are passed to it in order, a burst of
+     * removals in a single run. The store is left as it is, so campaigns it does not hold, e.g.
+     * evicted ones, are not brought back.
+     *
+     * @return {@code true} if the campaign was found
+     */
+    public boolean removeCampaign(String campaignId) {
+        return removeCampaigns(Collections.singleton(campaignId)) > 0;
+    }
+
+    /**
+     * Removes every campaign with one of {@code campaignIds} as a single write to the store,
+     * followed by a single refresh of the found list. The backend removes them all in the same
+     * background run, as for {@link #removeCampaign(String)}.
+     *
+     * @return Number of campaigns which were found and removed
+     */
+    public int removeCampaigns(Collection<String> campaignIds) {
+        // Only what this call took out of the store, so a campaign removed by two racing calls,
+        // e.g. an expiry and a delete, is counted and passed to the backend once
+        List<C> removed = store.removeAll(campaignIds);
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        pendingRemovals.addAll(removed);
+        uiSink.refreshFoundList();
+        if (reconcileScheduled.compareAndSet(false, true)) {
+            backendExecutor.execute(reconcileTask);
+        }
+        return removed.size();
+    }
+
+    /**
+     * Pass the pending removals to the backend, in order. The store already left them out when
+     * they were queued, so it is not touched. Runs on the backend executor.
+     */
+    private void reconcile() {
+        // Cleared first: removals queued from now on schedule another run
+        reconcileScheduled.set(false);
+        C campaign;
+        while ((campaign = pendingRemovals.peek()) != null) {
+            backend.removeCampaign(campaign);
+            pendingRemovals.poll();
+        }
+    }
+
+    /**
+     * Records in the backend that the campaigns with {@code viewedIds} were viewed, all in one
+     * run on the backend executor. Campaigns are looked up in the store, then among those the
+     * backend has found; campaigns in neither are skipped.
+     *
+     * @param onDone
+     *         Run on the backend executor once the backend has recorded the views; may be
+     *         {@code null}
+     */
+    public void setCampaignsViewed(Collection<String> viewedIds, final Runnable onDone) {
+        final List<String> viewed = new ArrayList<>(viewedIds);
+        backendExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Map<String, C> found = null;
+                for (String campaignId : viewed) {
+                    C campaign = store.get(store.indexOf(campaignId));
+                    if (campaign == null) {
+                        if (found == null) {
+                            found = new HashMap<>();
+                            for (C candidate : backend.getFoundCampaigns()) {
+                                found.put(campaignIds.getId(candidate), candidate);
+                            }
+                        }
+                        campaign = found.get(campaignId);
+                    }
+                    if (campaign != null) {
+                        backend.setCampaignViewed(campaign);
+                    }
+                }
+                if (onDone != null) {
+                    onDone.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Records in the backend that {@code campaign} was viewed.
+     */
+    public void setCampaignViewed(final C campaign) {
+        backendExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                backend.setCampaignViewed(campaign);
+            }
+        });
+    }
+}
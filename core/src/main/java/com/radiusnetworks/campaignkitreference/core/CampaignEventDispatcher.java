@@ -0,0 +1,487 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link EventDispatcher} which queues Campaign Kit callbacks and hands them to a
+ * {@link BatchListener} in batches on a single background thread.
+ * <p/>
+ * Walking past a cluster of beacons produces bursts of dozens of callbacks per second. Instead of
+ * doing work for each one on the Campaign Kit callback thread, the callbacks are only enqueued on
+ * a {@link SpscRingBuffer}. The consumer thread wakes on the first queued event and keeps taking
+ * events off the ring while the coalescing window collects the rest of the burst, then delivers
+ * everything as one {@link EventBatch}. Repeated events for the same place, by id, within the
+ * window are collapsed into the most recent one, so a batch holds at most one event per place
+ * however long the burst.
+ * <p/>
+ * Campaign Kit may call the notifier from more than one thread. Producers are therefore
+ * serialized with a lock which is only ever contended by other producers, never by the consumer.
+ * When the ring is full place events are dropped (and counted) while campaign and sync events,
+ * which must not be lost, spill over into an unbounded queue. Until that queue is drained, all
+ * campaign and sync events go to it and place events are dropped, so nothing overtakes an event
+ * which spilled over. A listener which throws is logged and counted, and keeps receiving the
+ * batches after.
+ * <p/>
+ * With a {@link PlaceFlapFilter} set, place events go through it in the order reported, before
+ * they are collapsed, so places flapping at the edge of range only show up once they settle. The
+ * dispatcher thread also wakes when a pending transition is due, to deliver it on its own.
+ *
+ * @param <C>
+ *         Type of the campaigns
+ * @param <P>
+ *         Type of the places
+ * @param <E>
+ *         Type of the place events
+ */
+public class CampaignEventDispatcher<C, P, E> implements EventDispatcher<C, P, E> {
+    /**
+     * Receives the batched events.
+     */
+    public interface BatchListener<C, P, E> {
+        /**
+         * Called on the dispatcher thread with a non-empty batch.
+         */
+        void onEventBatch(EventBatch<C, P, E> batch);
+    }
+
+    /**
+     * Default time to collect a burst of events before delivering them.
+     */
+    public static final long DEFAULT_COALESCE_WINDOW_MILLIS = 250;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Logger LOG = Logger.getLogger(CampaignEventDispatcher.class.getName());
+
+    private final BatchListener<C, P, E> listener;
+    private final IdExtractor<P> placeIds;
+    private final long coalesceWindowNanos;
+    private final SpscRingBuffer<Object> ring;
+    private final ConcurrentLinkedQueue<Object> overflow = new ConcurrentLinkedQueue<>();
+    private final Object producerLock = new Object();
+
+    private final AtomicLong droppedPlaceEvents = new AtomicLong();
+    private final AtomicLong coalescedPlaceEvents = new AtomicLong();
+    private final AtomicLong deliveredBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private volatile PlaceFlapFilter<P, E> placeFilter;
+    private volatile Thread consumer;
+    private volatile boolean running;
+
+    public CampaignEventDispatcher(BatchListener<C, P, E> listener, IdExtractor<P> placeIds) {
+        this(listener, placeIds, DEFAULT_COALESCE_WINDOW_MILLIS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param listener
+     *         Receiver of the batches
+     * @param placeIds
+     *         Identifies the places, to collapse repeated events for the same place
+     * @param coalesceWindowMillis
+     *         How long to collect events after the first one of a burst arrives. {@code 0}
+     *         delivers whatever is queued as soon as the dispatcher thread wakes.
+     * @param capacity
+     *         Size of the event ring
+     */
+    public CampaignEventDispatcher(BatchListener<C, P, E> listener,
+                                   IdExtractor<P> placeIds,
+                                   long coalesceWindowMillis,
+                                   int capacity) {
+        if (coalesceWindowMillis < 0) {
+            throw new IllegalArgumentException("negative window: " + coalesceWindowMillis);
+        }
+        this.listener = listener;
+        this.placeIds = placeIds;
+        this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis);
+        this.ring = new SpscRingBuffer<>(capacity);
+    }
+
+    /**
+     * Run place events through {@code filter} before collapsing and delivering them. Must be
+     * called before {@link #start()}.
+     *
+     * @param filter
+     *         The filter, or {@code null} to deliver all place events
+     */
+    public void setPlaceFilter(PlaceFlapFilter<P, E> filter) {
+        if (consumer != null) {
+            throw new IllegalStateException("dispatcher already started");
+        }
+        placeFilter = filter;
+    }
+
+    /**
+     * Start the dispatcher thread. Events may be queued before this is called.
+     */
+    public synchronized void start() {
+        if (consumer != null) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "CampaignEventDispatcher");
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the dispatcher thread after it delivers the events already queued.
+     */
+    public synchronized void stop() {
+        running = false;
+        Thread thread = consumer;
+        consumer = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void didDetectPlace(P place, E event) {
+        if (!enqueue(new PlaceEvent<>(place, event, System.currentTimeMillis()), false)) {
+            droppedPlaceEvents.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void didFindCampaign(C campaign) {
+        enqueue(campaign, true);
+    }
+
+    @Override
+    public void didSync() {
+        enqueue(SyncEvent.SUCCESS, true);
+    }
+
+    @Override
+    public void didFailSync(Exception e) {
+        enqueue(new SyncFailure(e), true);
+    }
+
+    /**
+     * @return Number of place events dropped because the ring was full
+     */
+    public long getDroppedPlaceEvents() {
+        return droppedPlaceEvents.get();
+    }
+
+    /**
+     * @return Number of place events folded into a later event for the same place
+     */
+    public long getCoalescedPlaceEvents() {
+        return coalescedPlaceEvents.get();
+    }
+
+    public long getDeliveredBatches() {
+        return deliveredBatches.get();
+    }
+
+    /**
+     * @return Number of batches the listener threw on
+     */
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    private boolean enqueue(Object event, boolean mustDeliver) {
+        boolean queued;
+        synchronized (producerLock) {
+            // The consumer takes the ring before the overflow, so an event may only go on the
+            // ring while nothing is waiting in the overflow
+            queued = overflow.isEmpty() && ring.offer(event);
+            if (!queued && mustDeliver) {
+                overflow.add(event);
+                queued = true;
+            }
+        }
+        if (queued) {
+            Thread thread = consumer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        return queued;
+    }
+
+    private boolean hasPending() {
+        return !ring.isEmpty() || !overflow.isEmpty();
+    }
+
+    private void consume() {
+        PlaceFlapFilter<P, E> filter = placeFilter;
+        Pending pending = new Pending();
+        while (running || hasPending()) {
+            if (!hasPending()) {
+                long due = (filter != null) ? filter.getNextDeadline()
+                        : PlaceFlapFilter.NO_DEADLINE;
+                if (due == PlaceFlapFilter.NO_DEADLINE) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                long wait = due - System.currentTimeMillis();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(wait));
+                    continue;
+                }
+                // A pending transition is due with nothing else queued; deliver it alone
+            } else {
+                // Keep the ring drained while the rest of the burst arrives, so producers do
+                // not find it full; the window only decides when the batch is delivered
+                long deadline = System.nanoTime() + coalesceWindowNanos;
+                long remaining;
+                drain(pending);
+                while (running && (remaining = deadline - System.nanoTime()) > 0) {
+                    if (!hasPending()) {
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                    drain(pending);
+                }
+            }
+
+            drain(pending);
+            if (filter != null) {
+                filter.takeDue(System.currentTimeMillis(), pending.passed);
+                pending.collapsePassed();
+            }
+            EventBatch<C, P, E> batch = pending.take();
+            if (batch != null) {
+                deliveredBatches.incrementAndGet();
+                deliver(batch);
+            }
+        }
+    }
+
+    /**
+     * Hand {@code batch} to the listener. A listener which throws loses that batch but not the
+     * dispatcher thread, so the batches after it are still delivered.
+     */
+    private void deliver(EventBatch<C, P, E> batch) {
+        try {
+            listener.onEventBatch(batch);
+        } catch (RuntimeException e) {
+            failedBatches.incrementAndGet();
+            LOG.log(Level.WARNING, "Batch listener failed, batch dropped", e);
+        }
+    }
+
+    /**
+     * Take everything queued and fold it into {@code pending}.
+     */
+    @SuppressWarnings("unchecked")
+    private void drain(Pending pending) {
+        PlaceFlapFilter<P, E> filter = placeFilter;
+        Object event;
+        while ((event = nextEvent()) != null) {
+            if (event instanceof PlaceEvent) {
+                PlaceEvent<P, E> placeEvent = (PlaceEvent<P, E>) event;
+                if (filter == null) {
+                    collapse(pending.places, placeEvent);
+                    continue;
+                }
+                filter.filter(placeEvent, pending.passed);
+                pending.collapsePassed();
+            } else if (event == SyncEvent.SUCCESS) {
+                // Only the outcome of the last sync in the batch counts
+                pending.synced = true;
+                pending.syncFailure = null;
+            } else if (event instanceof SyncFailure) {
+                pending.synced = false;
+                pending.syncFailure = ((SyncFailure) event).exception;
+            } else {
+                // Anything else was queued by didFindCampaign
+                pending.campaigns.add((C) event);
+            }
+        }
+    }
+
+    /**
+     * Add {@code placeEvent} to the batch's {@code places}, folding it into an earlier event for
+     * the same place. The later event wins, unless the earlier one is a stable transition and the
+     * later one is not; transitions must not be lost to ranging events.
+     */
+    private void collapse(Map<String, PlaceEvent<P, E>> places, PlaceEvent<P, E> placeEvent) {
+        String id = placeIds.getId(placeEvent.place);
+        PlaceEvent<P, E> previous = places.get(id);
+        if (previous == null) {
+            places.put(id, placeEvent);
+            return;
+        }
+        coalescedPlaceEvents.incrementAndGet();
+        if (previous.transition && !placeEvent.transition) {
+            previous.repeatCount += placeEvent.repeatCount;
+        } else {
+            // Re-putting a key keeps its original position in the LinkedHashMap
+            placeEvent.repeatCount += previous.repeatCount;
+            places.put(id, placeEvent);
+        }
+    }
+
+    private Object nextEvent() {
+        Object event = ring.poll();
+        return (event != null) ? event : overflow.poll();
+    }
+
+    /**
+     * The batch being collected on the dispatcher thread.
+     */
+    private final class Pending {
+        Map<String, PlaceEvent<P, E>> places = new LinkedHashMap<>();
+        final List<PlaceEvent<P, E>> passed = new ArrayList<>();
+        List<C> campaigns = new ArrayList<>();
+        boolean synced = false;
+        Exception syncFailure = null;
+
+        /**
+         * Fold the events the filter let through into {@link #places}.
+         */
+        void collapsePassed() {
+            for (int i = 0; i < passed.size(); i++) {
+                collapse(places, passed.get(i));
+            }
+            passed.clear();
+        }
+
+        /**
+         * @return The batch collected so far, or {@code null} if there is none; starts the next
+         */
+        EventBatch<C, P, E> take() {
+            if (places.isEmpty() && campaigns.isEmpty() && !synced && syncFailure == null) {
+                return null;
+            }
+            EventBatch<C, P, E> batch = new EventBatch<>(new ArrayList<>(places.values()),
+                    campaigns, synced, syncFailure);
+            places = new LinkedHashMap<>();
+            campaigns = new ArrayList<>();
+            synced = false;
+            syncFailure = null;
+            return batch;
+        }
+    }
+
+    private enum SyncEvent {
+        SUCCESS
+    }
+
+    private static final class SyncFailure {
+        final Exception exception;
+
+        SyncFailure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * The most recent event seen for a place within a batch.
+     */
+    public static final class PlaceEvent<P, E> {
+        private final P place;
+        private final E eventType;
+        private final long timestamp;
+        private int repeatCount = 1;
+
+        /**
+         * Set by the {@link PlaceFlapFilter} on the transitions it reports
+         */
+        boolean transition;
+
+        PlaceEvent(P place, E eventType, long timestamp) {
+            this.place = place;
+            this.eventType = eventType;
+            this.timestamp = timestamp;
+        }
+
+        public P getPlace() {
+            return place;
+        }
+
+        public E getEventType() {
+            return eventType;
+        }
+
+        /**
+         * @return Wall clock time, in milliseconds, at which Campaign Kit reported the event
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return {@code true} if this is a transition made stable by the {@link PlaceFlapFilter}
+         */
+        public boolean isTransition() {
+            return transition;
+        }
+
+        /**
+         * @return Number of events reported for the place in this batch, including this one
+         */
+        public int getRepeatCount() {
+            return repeatCount;
+        }
+    }
+
+    /**
+     * Everything Campaign Kit reported during one coalescing window.
+     */
+    public static final class EventBatch<C, P, E> {
+        private final List<PlaceEvent<P, E>> placeEvents;
+        private final List<C> foundCampaigns;
+        private final boolean synced;
+        private final Exception syncFailure;
+
+        EventBatch(List<PlaceEvent<P, E>> placeEvents,
+                   List<C> foundCampaigns,
+                   boolean synced,
+                   Exception syncFailure) {
+            this.placeEvents = Collections.unmodifiableList(placeEvents);
+            this.foundCampaigns = Collections.unmodifiableList(foundCampaigns);
+            this.synced = synced;
+            this.syncFailure = syncFailure;
+        }
+
+        /**
+         * @return One event per place, in the order the places were first reported
+         */
+        public List<PlaceEvent<P, E>> getPlaceEvents() {
+            return placeEvents;
+        }
+
+        /**
+         * @return Found campaigns in the order they were reported
+         */
+        public List<C> getFoundCampaigns() {
+            return foundCampaigns;
+        }
+
+        /**
+         * @return {@code true} if the last sync reported during the window completed
+         */
+        public boolean isSynced() {
+            return synced;
+        }
+
+        /**
+         * @return The failure of the last sync reported during the window, or {@code null} if it
+         *         completed or there was none
+         */
+        public Exception getSyncFailure() {
+            return syncFailure;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes found campaigns once they end.
+ * <p/>
+ * Once {@linkplain #attach(CampaignStore) attached} to the store, every campaign added to it gets
+ * its deadline in a {@link TimerWheel}, and loses it when removed. A single {@link Alarm} is set
+ * for the wheel's next tick with work, so nothing runs while no campaign is due; when it goes
+ * off the campaigns which ended are removed through
+ * {@link CampaignCore#removeCampaigns(Collection)}, all in one batch, which also removes them
+ * from the backend.
+ * <p/>
+ * A sync can change when campaigns end or remove them altogether.
+ * {@link #reconcile(Collection)} takes the synced campaigns and, in one pass over the store,
+ * moves every deadline to what the sync says, expiring at once the campaigns the sync no longer
+ * has. Safe to use from any thread.
+ *
+ * @param <C>
+ *         Type of the campaigns
+ */
+public class CampaignExpiry<C> implements CampaignStore.OnChangeListener<C> {
+    /**
+     * When a campaign ends.
+     */
+    public interface Deadlines<C> {
+        /**
+         * @return The time {@code campaign} ends, or {@link TimerWheel#NO_DEADLINE} if it does
+         * not; a time which has passed removes it
+         */
+        long getDeadline(C campaign);
+    }
+
+    /**
+     * Runs the sweep later, e.g. on a background thread's handler.
+     */
+    public interface Alarm {
+        /**
+         * Run {@code task} once after {@code delayMillis}, replacing the run set before, if any.
+         */
+        void set(Runnable task, long delayMillis);
+
+        /**
+         * Forget the run of {@code task} set before, if any.
+         */
+        void cancel(Runnable task);
+    }
+
+    /**
+     * The wall clock the deadlines are in.
+     */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final CampaignCore<C, ?, ?> core;
+    private final IdExtractor<C> ids;
+    private final Deadlines<C> deadlines;
+    private final Alarm alarm;
+    private final Clock clock;
+    private final TimerWheel<String> wheel;
+    private CampaignStore<C> store;
+
+    /**
+     * Time the alarm is set for, or {@link TimerWheel#NO_DEADLINE}
+     */
+    private long alarmMillis = TimerWheel.NO_DEADLINE;
+
+    private volatile int size;
+    // Single writer, the alarm's thread
+    private volatile long expired;
+
+    private final Runnable sweepTask = new Runnable() {
+        @Override
+        public void run() {
+            sweep(clock.currentTimeMillis());
+        }
+    };
+
+    /**
+     * @param core
+     *         Removes the ended campaigns
+     * @param ids
+     *         Identifies campaigns, as the store does
+     * @param deadlines
+     *         When each campaign ends
+     * @param tickMillis
+     *         Precision of the deadlines; campaigns are removed up to this much after they end
+     * @param alarm
+     *         Runs the sweeps
+     */
+    public CampaignExpiry(CampaignCore<C, ?, ?> core, IdExtractor<C> ids, Deadlines<C> deadlines,
+                          long tickMillis, Alarm alarm) {
+        this(core, ids, deadlines, tickMillis, alarm, SYSTEM_CLOCK);
+    }
+
+    CampaignExpiry(CampaignCore<C, ?, ?> core, IdExtractor<C> ids, Deadlines<C> deadlines,
+                   long tickMillis, Alarm alarm, Clock clock) {
+        this.core = core;
+        this.ids = ids;
+        this.deadlines = deadlines;
+        this.alarm = alarm;
+        this.clock = clock;
+        this.wheel = new TimerWheel<>(tickMillis, clock.currentTimeMillis());
+    }
+
+    /**
+     * Follow {@code store} from now on, starting with the deadlines of the campaigns it holds.
+     */
+    public void attach(CampaignStore<C> store) {
+        // Not under our lock: the store calls listeners under its own
+        List<C> current = store.addOnChangeListener(this);
+        synchronized (this) {
+            this.store = store;
+            for (C campaign : current) {
+                // Changes may have been applied already; removed campaigns must not come back
+                String id = ids.getId(campaign);
+                if (store.contains(id)) {
+                    wheel.schedule(id, deadlines.getDeadline(campaign));
+                }
+            }
+            updated();
+        }
+    }
+
+    @Override
+    public synchronized void onCampaignsChanged(List<CampaignChange<C>> changes,
+                                                List<C> campaigns) {
+        for (CampaignChange<C> change : changes) {
+            String id = ids.getId(change.getCampaign());
+            if (change.getType() == CampaignChange.Type.ADDED) {
+                wheel.schedule(id, deadlines.getDeadline(change.getCampaign()));
+            } else if (change.getType() == CampaignChange.Type.REMOVED) {
+                wheel.cancel(id);
+            }
+        }
+        updated();
+    }
+
+    /**
+     * Make the deadlines match a sync: each stored campaign takes the deadline of its synced
+     * version, and campaigns which are not among {@code synced} expire with the next sweep.
+     *
+     * @param synced
+     *         Every campaign the backend has after the sync
+     */
+    public void reconcile(Collection<? extends C> synced) {
+        Map<String, C> byId = new HashMap<>(Math.max(4, synced.size() * 2));
+        for (C campaign : synced) {
+            byId.put(ids.getId(campaign), campaign);
+        }
+        synchronized (this) {
+            if (store == null) {
+                return;
+            }
+            List<C> campaigns = store.getCampaigns();
+            Set<String> stored = new HashSet<>(Math.max(4, campaigns.size() * 2));
+            for (C campaign : campaigns) {
+                String id = ids.getId(campaign);
+                C latest = byId.get(id);
+                // Gone from the backend: expire now
+                wheel.schedule(id, (latest != null) ? deadlines.getDeadline(latest) : 0);
+                stored.add(id);
+            }
+            wheel.retainAll(stored);
+            updated();
+        }
+    }
+
+    /**
+     * Remove the campaigns which ended by {@code nowMillis}, then set the alarm for the next.
+     */
+    void sweep(long nowMillis) {
+        List<String> ended = new ArrayList<>();
+        synchronized (this) {
+            alarmMillis = TimerWheel.NO_DEADLINE;
+            wheel.advance(nowMillis, ended);
+            updated();
+        }
+        if (!ended.isEmpty()) {
+            // Not under our lock: the store calls us back with the removals
+            expired += core.removeCampaigns(ended);
+        }
+    }
+
+    /**
+     * Set the alarm for the wheel's next work, if that moved. Must hold our lock.
+     */
+    private void updated() {
+        size = wheel.size();
+        long next = wheel.nextWakeMillis();
+        if (next == alarmMillis) {
+            return;
+        }
+        alarmMillis = next;
+        if (next == TimerWheel.NO_DEADLINE) {
+            alarm.cancel(sweepTask);
+        } else {
+            alarm.set(sweepTask, Math.max(0, next - clock.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * @return Number of campaigns with a deadline
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of campaigns removed because they ended
+     */
+    public long getExpired() {
+        return expired;
+    }
+}
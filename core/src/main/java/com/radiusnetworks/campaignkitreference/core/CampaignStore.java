@@ -0,0 +1,106 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The found campaigns, in the order they were found.
+ * <p/>
+ * Implementations are thread-safe: Campaign Kit reports found campaigns on its own threads while
+ * the UI reads the list on the main thread. Campaigns are identified by id; a campaign found
+ * again keeps its position.
+ *
+ * @param <C>
+ *         Type of the campaigns
+ * @see BoundedCampaignStore
+ */
+public interface CampaignStore<C> {
+    /**
+     * Receives the changes made by each write to the store.
+     */
+    interface OnChangeListener<C> {
+        /**
+         * Called on the writing thread, in the order the writes happened, while writers are
+         * blocked. Implementations must not block; post the work to another thread instead.
+         *
+         * @param changes
+         *         The ordered, non-empty changes which turn the previous snapshot into
+         *         {@code campaigns}
+         * @param campaigns
+         *         The new snapshot
+         */
+        void onCampaignsChanged(List<CampaignChange<C>> changes, List<C> campaigns);
+    }
+
+    /**
+     * @return Maximum number of campaigns kept
+     */
+    int getCapacity();
+
+    /**
+     * Adds a newly found campaign to the end of the store.
+     *
+     * @return {@code true} if the campaign was added, {@code false} if a campaign with the same
+     * id is already stored.
+     */
+    boolean add(C campaign);
+
+    /**
+     * Removes the campaign with {@code campaignId} in place, publishing a single
+     * {@link CampaignChange.Type#REMOVED} change; the other campaigns keep their order.
+     *
+     * @return The removed campaign, or {@code null} if there was none with that id
+     */
+    C remove(String campaignId);
+
+    /**
+     * Removes the campaigns with any of {@code campaignIds} in a single write, publishing one
+     * {@link CampaignChange.Type#REMOVED} change per campaign removed; the other campaigns keep
+     * their order. Ids which are not stored are ignored.
+     *
+     * @return The removed campaigns, in store order
+     */
+    List<C> removeAll(Collection<String> campaignIds);
+
+    /**
+     * Removes every campaign from the store.
+     */
+    void clear();
+
+    /**
+     * Registers {@code listener} for all future writes.
+     *
+     * @return The snapshot the listener's changes start from, taken atomically with the
+     * registration
+     */
+    List<C> addOnChangeListener(OnChangeListener<C> listener);
+
+    void removeOnChangeListener(OnChangeListener<C> listener);
+
+    /**
+     * @return An unmodifiable snapshot of the store. Later writes are not reflected in it.
+     */
+    List<C> getCampaigns();
+
+    /**
+     * @param position
+     *         The nth found campaign. This is zero indexed.
+     * @return The campaign or {@code null} if {@code position} is outside of the store.
+     */
+    C get(int position);
+
+    /**
+     * @return {@code true} if a campaign with {@code campaignId} has been found
+     */
+    boolean contains(String campaignId);
+
+    /**
+     * @return The position of the campaign with {@code campaignId}, or
+     * {@link CampaignChange#NO_POSITION} if it has not been found
+     */
+    int indexOf(String campaignId);
+
+    int size();
+
+    boolean isEmpty();
+}
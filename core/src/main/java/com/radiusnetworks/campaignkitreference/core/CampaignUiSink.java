@@ -0,0 +1,23 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+/**
+ * Where {@link CampaignCore} sends what the user should see.
+ * <p/>
+ * Called on the core's threads; implementations post to the UI thread themselves.
+ *
+ * @param <C>
+ *         Type of the campaigns
+ */
+public interface CampaignUiSink<C> {
+    /**
+     * A campaign was found; tell the user, e.g. with an alert or a notification. Called for
+     * campaigns found again as well.
+     */
+    void showFoundCampaign(C campaign);
+
+    /**
+     * The found campaigns changed; refresh whatever lists them. Called at most once per batch of
+     * events.
+     */
+    void refreshFoundList();
+}
@@ -0,0 +1,26 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+/**
+ * Takes the Campaign Kit callbacks on Campaign Kit's threads and hands them on for processing
+ * elsewhere.
+ * <p/>
+ * The methods mirror the SDK's {@code CampaignKitNotifier}, so the app can forward each callback
+ * as it is. They may be called from any thread and must return quickly.
+ *
+ * @param <C>
+ *         Type of the campaigns
+ * @param <P>
+ *         Type of the places
+ * @param <E>
+ *         Type of the place events
+ * @see CampaignEventDispatcher
+ */
+public interface EventDispatcher<C, P, E> {
+    void didFindCampaign(C campaign);
+
+    void didDetectPlace(P place, E event);
+
+    void didSync();
+
+    void didFailSync(Exception e);
+}
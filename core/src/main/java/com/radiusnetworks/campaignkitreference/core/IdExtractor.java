@@ -0,0 +1,17 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+/**
+ * Reads the id of a campaign or place.
+ * <p/>
+ * The core does not know the Campaign Kit types. Whatever stands for a campaign or a place, the
+ * SDK's classes in the app or plain objects in a load test, only has to have a stable id.
+ *
+ * @param <T>
+ *         Type of the identified objects
+ */
+public interface IdExtractor<T> {
+    /**
+     * @return The id of {@code item}; equal ids mean the same campaign or place
+     */
+    String getId(T item);
+}
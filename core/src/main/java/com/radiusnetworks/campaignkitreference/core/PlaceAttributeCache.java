@@ -0,0 +1,92 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The parsed {@link PlaceAttributes} of every place seen since the last sync, by place id.
+ * <p/>
+ * A place's attributes only change when Campaign Kit syncs, yet reading them copies a map and
+ * formatting them builds a string. The cache parses them the first time a place is seen, so every
+ * later event for the place costs one hash lookup. {@link #invalidate()} drops everything, to be
+ * called when a sync completed.
+ * <p/>
+ * Only used by the {@link CampaignEventDispatcher} thread; the counters may be read from any
+ * thread.
+ *
+ * @param <P>
+ *         Type of the places
+ */
+public class PlaceAttributeCache<P> {
+    /**
+     * Reads the raw attributes of a place.
+     */
+    public interface AttributeReader<P> {
+        /**
+         * @return The attributes of {@code place}; may be {@code null}
+         */
+        Map<String, String> getAttributes(P place);
+    }
+
+    private final IdExtractor<P> ids;
+    private final AttributeReader<P> reader;
+    private final Map<String, PlaceAttributes> attributes = new HashMap<>();
+
+    // Single writer, the dispatcher thread
+    private volatile long hits;
+    private volatile long parses;
+    private volatile int size;
+
+    public PlaceAttributeCache(IdExtractor<P> ids, AttributeReader<P> reader) {
+        this.ids = ids;
+        this.reader = reader;
+    }
+
+    /**
+     * @return The attributes of {@code place}, parsed if it is new since the last sync
+     */
+    public PlaceAttributes get(P place) {
+        String id = ids.getId(place);
+        PlaceAttributes cached = attributes.get(id);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        Map<String, String> raw = reader.getAttributes(place);
+        PlaceAttributes parsed = (raw == null || raw.isEmpty())
+                ? PlaceAttributes.EMPTY : new PlaceAttributes(raw);
+        attributes.put(id, parsed);
+        parses++;
+        size = attributes.size();
+        return parsed;
+    }
+
+    /**
+     * Forget all attributes, e.g. because a sync may have changed them.
+     */
+    public void invalidate() {
+        attributes.clear();
+        size = 0;
+    }
+
+    /**
+     * @return Number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of times attributes were parsed
+     */
+    public long getParses() {
+        return parses;
+    }
+
+    /**
+     * @return Number of places cached
+     */
+    public int size() {
+        return size;
+    }
+}
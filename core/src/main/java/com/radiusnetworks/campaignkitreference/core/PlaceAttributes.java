@@ -0,0 +1,175 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A place's custom attributes, parsed once into typed values.
+ * <p/>
+ * Campaign Kit only has string attributes, so their types follow our conventions for segment
+ * attributes: {@code true} and {@code false}, in any case, are booleans; decimal numbers are
+ * numbers; values with commas are lists, e.g. {@code "coffee, pastries"}, with their items
+ * trimmed and empty ones dropped. Every value is also kept as its string, and every value can be
+ * read as a list, of one item if it has no commas.
+ * <p/>
+ * Immutable, so one instance may be shared by all threads.
+ */
+public final class PlaceAttributes {
+    public static final PlaceAttributes EMPTY =
+            new PlaceAttributes(Collections.<String, String>emptyMap());
+
+    private final Map<String, String> strings;
+    private final Map<String, Boolean> booleans;
+    private final Map<String, Double> numbers;
+    private final Map<String, List<String>> lists;
+    private final String text;
+
+    /**
+     * @param attributes
+     *         The raw attributes; not kept
+     */
+    public PlaceAttributes(Map<String, String> attributes) {
+        Map<String, String> strings = new HashMap<>(capacityFor(attributes.size()));
+        Map<String, Boolean> booleans = new HashMap<>();
+        Map<String, Double> numbers = new HashMap<>();
+        Map<String, List<String>> lists = new HashMap<>(capacityFor(attributes.size()));
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            String key = attribute.getKey();
+            String value = attribute.getValue();
+            if (key == null || value == null) {
+                continue;
+            }
+            String trimmed = value.trim();
+            strings.put(key, trimmed);
+            lists.put(key, parseList(trimmed));
+            if ("true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)) {
+                booleans.put(key, Boolean.valueOf(trimmed));
+            } else {
+                Double number = parseNumber(trimmed);
+                if (number != null) {
+                    numbers.put(key, number);
+                }
+            }
+        }
+        this.strings = Collections.unmodifiableMap(strings);
+        this.booleans = booleans;
+        this.numbers = numbers;
+        this.lists = lists;
+        // Formatted once for the logs, sorted so the same attributes always read the same
+        this.text = new TreeMap<>(strings).toString();
+    }
+
+    /**
+     * @return The value of {@code key}, or {@code null} if there is none
+     */
+    public String getString(String key) {
+        return strings.get(key);
+    }
+
+    /**
+     * @return The value of {@code key} if it is a boolean, otherwise {@code fallback}
+     */
+    public boolean getBoolean(String key, boolean fallback) {
+        Boolean value = booleans.get(key);
+        return (value != null) ? value : fallback;
+    }
+
+    /**
+     * @return The value of {@code key} if it is a number, otherwise {@code fallback}
+     */
+    public double getNumber(String key, double fallback) {
+        Double value = numbers.get(key);
+        return (value != null) ? value : fallback;
+    }
+
+    /**
+     * @return The value of {@code key} if it is a whole number within the range of a long,
+     * otherwise {@code fallback}
+     */
+    public long getLong(String key, long fallback) {
+        Double value = numbers.get(key);
+        // Long.MAX_VALUE rounds up to 2^63 as a double, so compare against the powers of two
+        if (value == null || value != Math.rint(value) || value >= 0x1p63 || value < -0x1p63) {
+            return fallback;
+        }
+        return value.longValue();
+    }
+
+    /**
+     * @return The items of the value of {@code key}, or an empty list if there is none
+     */
+    public List<String> getList(String key) {
+        List<String> value = lists.get(key);
+        return (value != null) ? value : Collections.<String>emptyList();
+    }
+
+    public boolean has(String key) {
+        return strings.containsKey(key);
+    }
+
+    /**
+     * @return All values as strings
+     */
+    public Map<String, String> asMap() {
+        return strings;
+    }
+
+    public boolean isEmpty() {
+        return strings.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static List<String> parseList(String value) {
+        if (value.indexOf(',') < 0) {
+            return value.isEmpty() ? Collections.<String>emptyList()
+                    : Collections.singletonList(value);
+        }
+        List<String> items = new ArrayList<>();
+        int start = 0;
+        while (start <= value.length()) {
+            int end = value.indexOf(',', start);
+            if (end < 0) {
+                end = value.length();
+            }
+            String item = value.substring(start, end).trim();
+            if (!item.isEmpty()) {
+                items.add(item);
+            }
+            start = end + 1;
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * @return {@code value} as a finite decimal number, or {@code null}
+     */
+    private static Double parseNumber(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        // Double.parseDouble also takes "NaN", "Infinity", hex and a trailing "d"; we do not
+        char last = value.charAt(value.length() - 1);
+        if (!(last >= '0' && last <= '9' || last == '.')
+                || value.indexOf('x') >= 0 || value.indexOf('X') >= 0) {
+            return null;
+        }
+        try {
+            double number = Double.parseDouble(value);
+            return Double.isInfinite(number) ? null : number;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int capacityFor(int size) {
+        return Math.max(4, size * 4 / 3 + 1);
+    }
+}
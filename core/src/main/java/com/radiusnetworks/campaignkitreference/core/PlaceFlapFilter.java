@@ -0,0 +1,431 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps beacons at the edge of range from flapping between entered and exited.
+ * <p/>
+ * Each place has a stable state, inside or outside, and at most one pending transition to the
+ * other state. Readings move a place towards inside when its distance is within
+ * {@code enterMetres} and towards outside when it is beyond {@code exitMetres}; the gap between
+ * the two is a hysteresis band in which the state is left alone. Region enter and exit events
+ * move it as well, unless the place's distance says otherwise. A pending transition only becomes
+ * stable after it held for the minimum dwell time of its direction. If the place turns back
+ * before then, the transition is dropped and counted as a flap.
+ * <p/>
+ * Only stable transitions, as enter or exit events, and ranging events for places which are
+ * steadily inside get through. Every other event is counted as suppressed, unless it made a
+ * transition stable at once, with no dwell time. Transitions which become stable without a new
+ * event are picked up with {@link #takeDue(long, List)}, no earlier than
+ * {@link #getNextDeadline()}.
+ * <p/>
+ * Place states are kept in open-addressed arrays keyed by the places' int ids, so tracking
+ * hundreds of places allocates nothing per event. A place which is stably outside with nothing
+ * pending is the same as one never seen, so its slot is freed; the table only holds the places
+ * inside or about to change. The slots with a pending transition are also listed on their own,
+ * with the earliest deadline kept, so the dispatcher's checks for due transitions do not scan the
+ * table. Only used by the {@link CampaignEventDispatcher} thread; the counters may be read from
+ * any thread.
+ *
+ * @param <P>
+ *         Type of the places
+ * @param <E>
+ *         Type of the place events
+ */
+public class PlaceFlapFilter<P, E> {
+    /**
+     * What a place event means for the place's state.
+     */
+    public enum Transition {
+        ENTER, EXIT, NONE
+    }
+
+    /**
+     * Reads what the filter needs from the place and event types.
+     */
+    public interface Classifier<P, E> {
+        /**
+         * @return A stable int id of {@code place}
+         */
+        int getKey(P place);
+
+        /**
+         * @return Estimated distance to {@code place} in metres; negative or NaN if unknown
+         */
+        double getDistance(P place);
+
+        Transition getTransition(E event);
+
+        /**
+         * @return The event to report a stable {@code transition} with; never
+         * {@link Transition#NONE}
+         */
+        E getEvent(Transition transition);
+    }
+
+    /**
+     * Returned by {@link #getNextDeadline()} when nothing is pending
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final byte EMPTY = 0;
+    private static final byte OUTSIDE = 1;
+    private static final byte INSIDE = 2;
+    private static final byte KEEP = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Classifier<P, E> classifier;
+    private final double enterMetres;
+    private final double exitMetres;
+    private final long enterDwellMillis;
+    private final long exitDwellMillis;
+
+    private int[] keys = new int[INITIAL_CAPACITY];
+    /**
+     * {@link #EMPTY} for free slots, otherwise the stable state
+     */
+    private byte[] states = new byte[INITIAL_CAPACITY];
+    /**
+     * {@link #EMPTY} or the state a transition is pending to
+     */
+    private byte[] pendingStates = new byte[INITIAL_CAPACITY];
+    private long[] pendingSince = new long[INITIAL_CAPACITY];
+    private Object[] pendingPlaces = new Object[INITIAL_CAPACITY];
+    /**
+     * Position of each pending slot in {@link #pendingSlots}
+     */
+    private int[] pendingIndex = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * The slots with a pending transition, in no particular order
+     */
+    private int[] pendingSlots = new int[INITIAL_CAPACITY];
+    private int pendingCount;
+
+    /**
+     * Earliest deadline of the pending transitions, unless {@link #nextDeadlineStale}
+     */
+    private long nextDeadline = NO_DEADLINE;
+    private boolean nextDeadlineStale = false;
+
+    // Single writer, the dispatcher thread
+    private volatile long suppressedEvents;
+    private volatile long flaps;
+    private volatile long transitions;
+
+    /**
+     * @param classifier
+     *         Reads keys, distances and transitions
+     * @param enterMetres
+     *         A place at or within this distance is inside
+     * @param exitMetres
+     *         A place at or beyond this distance is outside; at least {@code enterMetres}
+     * @param enterDwellMillis
+     *         How long a place must stay inside before its enter is reported
+     * @param exitDwellMillis
+     *         How long a place must stay outside before its exit is reported
+     */
+    public PlaceFlapFilter(Classifier<P, E> classifier,
+                           double enterMetres,
+                           double exitMetres,
+                           long enterDwellMillis,
+                           long exitDwellMillis) {
+        if (exitMetres < enterMetres) {
+            throw new IllegalArgumentException(
+                    "exit distance " + exitMetres + " below enter distance " + enterMetres);
+        }
+        if (enterDwellMillis < 0 || exitDwellMillis < 0) {
+            throw new IllegalArgumentException("negative dwell time");
+        }
+        this.classifier = classifier;
+        this.enterMetres = enterMetres;
+        this.exitMetres = exitMetres;
+        this.enterDwellMillis = enterDwellMillis;
+        this.exitDwellMillis = exitDwellMillis;
+    }
+
+    /**
+     * Run {@code event} through its place's state machine.
+     *
+     * @param event
+     *         The next event, in the order reported
+     * @param out
+     *         Receives what gets through: a stable transition which was due for the place, the
+     *         event itself or a transition it made stable, in order
+     */
+    void filter(CampaignEventDispatcher.PlaceEvent<P, E> event,
+                List<CampaignEventDispatcher.PlaceEvent<P, E>> out) {
+        P place = event.getPlace();
+        long now = event.getTimestamp();
+        int slot = slotFor(classifier.getKey(place));
+
+        // A transition which became stable since the last event goes first
+        if (pendingStates[slot] != EMPTY && isDue(slot, now)) {
+            confirm(slot, out);
+        }
+
+        Transition transition = classifier.getTransition(event.getEventType());
+        byte wanted = wantedState(transition, classifier.getDistance(place));
+        byte stable = states[slot];
+        byte pending = pendingStates[slot];
+        boolean reported = false;
+
+        if (wanted == stable && pending != EMPTY) {
+            // Turned back before the pending transition held long enough
+            clearPending(slot);
+            flaps++;
+        } else if (wanted != KEEP && wanted != stable) {
+            if (pending == EMPTY) {
+                setPending(slot, wanted, now);
+            }
+            // Report the transition with the latest reading
+            pendingPlaces[slot] = place;
+            if (isDue(slot, now)) {
+                confirm(slot, out);
+                reported = true;
+            }
+        }
+
+        // Enter and exit events only get through as the transitions they make stable
+        if (transition == Transition.NONE && states[slot] == INSIDE
+                && pendingStates[slot] == EMPTY) {
+            out.add(event);
+        } else if (!reported) {
+            suppressedEvents++;
+        }
+        releaseIfIdle(slot);
+    }
+
+    /**
+     * Collect the pending transitions which held for their dwell time by {@code now}.
+     *
+     * @param now
+     *         Wall clock time in milliseconds
+     */
+    void takeDue(long now, List<CampaignEventDispatcher.PlaceEvent<P, E>> out) {
+        if (now < getNextDeadline()) {
+            return;
+        }
+        // Backwards, so the pending slot moved into a confirmed one's place was already seen
+        for (int i = pendingCount - 1; i >= 0; i--) {
+            int slot = pendingSlots[i];
+            if (isDue(slot, now)) {
+                confirm(slot, out);
+                releaseIfIdle(slot);
+            }
+        }
+    }
+
+    /**
+     * @return Wall clock time in milliseconds at which the next pending transition becomes
+     * stable, or {@link #NO_DEADLINE}
+     */
+    long getNextDeadline() {
+        if (nextDeadlineStale) {
+            long next = NO_DEADLINE;
+            for (int i = 0; i < pendingCount; i++) {
+                next = Math.min(next, deadline(pendingSlots[i]));
+            }
+            nextDeadline = next;
+            nextDeadlineStale = false;
+        }
+        return nextDeadline;
+    }
+
+    /**
+     * @return Number of place events kept from the app
+     */
+    public long getSuppressedEvents() {
+        return suppressedEvents;
+    }
+
+    /**
+     * @return Number of transitions dropped because the place turned back within the dwell time
+     */
+    public long getFlaps() {
+        return flaps;
+    }
+
+    /**
+     * @return Number of stable transitions reported
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * @return Number of places tracked, i.e. inside or with a pending transition
+     */
+    public int size() {
+        return size;
+    }
+
+    private byte wantedState(Transition transition, double distance) {
+        boolean known = distance >= 0;
+        if (known && distance <= enterMetres) {
+            return INSIDE;
+        }
+        if (known && distance >= exitMetres) {
+            return OUTSIDE;
+        }
+        switch (transition) {
+            case ENTER:
+                // Within the hysteresis band only an unknown distance lets a region enter through
+                return known ? KEEP : INSIDE;
+            case EXIT:
+                return OUTSIDE;
+            default:
+                return KEEP;
+        }
+    }
+
+    private long dwellMillis(byte state) {
+        return (state == INSIDE) ? enterDwellMillis : exitDwellMillis;
+    }
+
+    private boolean isDue(int slot, long now) {
+        return now - pendingSince[slot] >= dwellMillis(pendingStates[slot]);
+    }
+
+    private long deadline(int slot) {
+        return pendingSince[slot] + dwellMillis(pendingStates[slot]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void confirm(int slot, List<CampaignEventDispatcher.PlaceEvent<P, E>> out) {
+        byte state = pendingStates[slot];
+        CampaignEventDispatcher.PlaceEvent<P, E> event = new CampaignEventDispatcher.PlaceEvent<>(
+                (P) pendingPlaces[slot],
+                classifier.getEvent((state == INSIDE) ? Transition.ENTER : Transition.EXIT),
+                pendingSince[slot]);
+        event.transition = true;
+        states[slot] = state;
+        clearPending(slot);
+        transitions++;
+        out.add(event);
+    }
+
+    private void setPending(int slot, byte state, long since) {
+        pendingStates[slot] = state;
+        pendingSince[slot] = since;
+        if (pendingCount == pendingSlots.length) {
+            pendingSlots = Arrays.copyOf(pendingSlots, pendingCount * 2);
+        }
+        pendingIndex[slot] = pendingCount;
+        pendingSlots[pendingCount++] = slot;
+        if (!nextDeadlineStale) {
+            nextDeadline = Math.min(nextDeadline, deadline(slot));
+        }
+    }
+
+    private void clearPending(int slot) {
+        if (deadline(slot) <= nextDeadline) {
+            nextDeadlineStale = true;
+        }
+        // Fill its place in the list with the last pending slot
+        int last = pendingSlots[--pendingCount];
+        pendingSlots[pendingIndex[slot]] = last;
+        pendingIndex[last] = pendingIndex[slot];
+        pendingStates[slot] = EMPTY;
+        pendingPlaces[slot] = null;
+    }
+
+    /**
+     * Free {@code slot} if its place is stably outside with nothing pending, as if never seen.
+     */
+    private void releaseIfIdle(int slot) {
+        if (states[slot] != OUTSIDE || pendingStates[slot] != EMPTY) {
+            return;
+        }
+        size--;
+        // Move back every following entry which would no longer be found past the gap
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; states[next] != EMPTY; next = (next + 1) & mask) {
+            int home = IntIntMap.mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                move(next, gap);
+                gap = next;
+            }
+        }
+        states[gap] = EMPTY;
+        pendingStates[gap] = EMPTY;
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        states[to] = states[from];
+        pendingStates[to] = pendingStates[from];
+        pendingSince[to] = pendingSince[from];
+        pendingPlaces[to] = pendingPlaces[from];
+        pendingPlaces[from] = null;
+        if (pendingStates[to] != EMPTY) {
+            pendingIndex[to] = pendingIndex[from];
+            pendingSlots[pendingIndex[to]] = to;
+        }
+    }
+
+    /**
+     * @return The slot of {@code key}, added as outside if it is new
+     */
+    private int slotFor(int key) {
+        int mask = keys.length - 1;
+        int slot = IntIntMap.mix(key) & mask;
+        while (states[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return slotFor(key);
+        }
+        keys[slot] = key;
+        states[slot] = OUTSIDE;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        byte[] oldStates = states;
+        byte[] oldPendingStates = pendingStates;
+        long[] oldPendingSince = pendingSince;
+        Object[] oldPendingPlaces = pendingPlaces;
+
+        int capacity = keys.length * 2;
+        keys = new int[capacity];
+        states = new byte[capacity];
+        pendingStates = new byte[capacity];
+        pendingSince = new long[capacity];
+        pendingPlaces = new Object[capacity];
+        pendingIndex = new int[capacity];
+        pendingCount = 0;
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStates[i] == EMPTY) {
+                continue;
+            }
+            int slot = IntIntMap.mix(oldKeys[i]) & mask;
+            while (states[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            states[slot] = oldStates[i];
+            pendingStates[slot] = oldPendingStates[i];
+            pendingSince[slot] = oldPendingSince[i];
+            pendingPlaces[slot] = oldPendingPlaces[i];
+            if (pendingStates[slot] != EMPTY) {
+                pendingIndex[slot] = pendingCount;
+                pendingSlots[pendingCount++] = slot;
+            }
+        }
+        // Stale references in the old arrays go with them
+        Arrays.fill(oldPendingPlaces, null);
+    }
+}
@@ -0,0 +1,423 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The places in range, ranked by their smoothed distance.
+ * <p/>
+ * Every place event updates its place's distance with an exponentially weighted moving average,
+ * so one noisy reading does not reorder the ranking. Places are kept in a binary min-heap with a
+ * map from place key to heap slot, so an update, insert or removal costs O(log n) and nothing is
+ * ever re-sorted. Exits remove places, as does not hearing from them for the stale time.
+ * <p/>
+ * After each batch of events {@link #publish(long)} takes the nearest places off the top of the
+ * heap, in O(k log k) for k of them, and if their order changed hands an immutable ranking to the
+ * {@link OnRankingChangeListener}s. Readers on other threads use {@link #getNearest()}.
+ * <p/>
+ * Updated on the {@link CampaignEventDispatcher} thread only; the ranking may be read from any
+ * thread.
+ *
+ * @param <P>
+ *         Type of the places
+ * @param <E>
+ *         Type of the place events
+ */
+public class ProximityIndex<P, E> {
+    /**
+     * Receives the ranking whenever the order of the nearest places changes.
+     */
+    public interface OnRankingChangeListener<P> {
+        /**
+         * Called on the dispatcher thread. Implementations must not block.
+         *
+         * @param nearest
+         *         The nearest places, nearest first
+         */
+        void onRankingChanged(List<Ranked<P>> nearest);
+    }
+
+    /**
+     * Finds the place a campaign belongs to.
+     */
+    public interface CampaignPlaces<C> {
+        /**
+         * @return The key of the place {@code campaign} was found at, or {@link #NO_PLACE}
+         */
+        int getPlaceKey(C campaign);
+    }
+
+    /**
+     * Returned by {@link CampaignPlaces#getPlaceKey(Object)} for campaigns without a place
+     */
+    public static final int NO_PLACE = Integer.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final PlaceFlapFilter.Classifier<P, E> classifier;
+    private final double smoothing;
+    private final long staleMillis;
+    private final int rankedCount;
+
+    /**
+     * Heap slot of each place key
+     */
+    private final IntIntMap slots = new IntIntMap(INITIAL_CAPACITY);
+
+    // The heap, in parallel arrays ordered by distance
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private double[] distances = new double[INITIAL_CAPACITY];
+    private long[] seenAt = new long[INITIAL_CAPACITY];
+    private Object[] places = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Heap slots still to visit while collecting the nearest places
+     */
+    private int[] frontier;
+
+    /**
+     * Keys of the places found stale while publishing
+     */
+    private int[] staleKeys = new int[INITIAL_CAPACITY];
+
+    private volatile List<Ranked<P>> nearest = Collections.emptyList();
+    private final CopyOnWriteArrayList<OnRankingChangeListener<P>> listeners =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * @param classifier
+     *         Reads keys, distances and transitions
+     * @param smoothing
+     *         Weight of a new reading in the smoothed distance, between 0 exclusive and 1; 1
+     *         turns smoothing off
+     * @param staleMillis
+     *         Places not heard from for this long are dropped
+     * @param rankedCount
+     *         Number of nearest places to rank
+     */
+    public ProximityIndex(PlaceFlapFilter.Classifier<P, E> classifier,
+                          double smoothing,
+                          long staleMillis,
+                          int rankedCount) {
+        if (!(smoothing > 0 && smoothing <= 1)) {
+            throw new IllegalArgumentException("smoothing outside (0, 1]: " + smoothing);
+        }
+        if (rankedCount <= 0) {
+            throw new IllegalArgumentException("rankedCount must be positive: " + rankedCount);
+        }
+        this.classifier = classifier;
+        this.smoothing = smoothing;
+        this.staleMillis = staleMillis;
+        this.rankedCount = rankedCount;
+        this.frontier = new int[rankedCount * 2 + 1];
+    }
+
+    /**
+     * Update the index with one place event. Call {@link #publish(long)} after a batch of them.
+     */
+    public void onPlaceEvent(P place, E event, long timestamp) {
+        int key = classifier.getKey(place);
+        int slot = slots.get(key);
+        if (classifier.getTransition(event) == PlaceFlapFilter.Transition.EXIT) {
+            if (slot != IntIntMap.MISSING) {
+                removeAt(slot);
+            }
+            return;
+        }
+
+        double reading = classifier.getDistance(place);
+        boolean known = reading >= 0;
+        if (slot == IntIntMap.MISSING) {
+            // Places entered without a distance rank behind all ranged ones until ranged
+            insert(key, place, known ? reading : Double.POSITIVE_INFINITY, timestamp);
+            return;
+        }
+        places[slot] = place;
+        seenAt[slot] = Math.max(seenAt[slot], timestamp);
+        if (!known) {
+            return;
+        }
+        double previous = distances[slot];
+        double smoothed = Double.isInfinite(previous)
+                ? reading : previous + smoothing * (reading - previous);
+        distances[slot] = smoothed;
+        if (smoothed < previous) {
+            siftUp(slot);
+        } else {
+            siftDown(slot);
+        }
+    }
+
+    /**
+     * Drop stale places and publish the ranking if its order changed.
+     *
+     * @param now
+     *         Wall clock time in milliseconds
+     * @return {@code true} if the ranking changed
+     */
+    public boolean publish(long now) {
+        dropStale(now);
+        List<Ranked<P>> ranked = collectNearest();
+        if (sameOrder(ranked, nearest)) {
+            // Keep the distances current without waking anyone up
+            nearest = ranked;
+            return false;
+        }
+        nearest = ranked;
+        for (OnRankingChangeListener<P> listener : listeners) {
+            listener.onRankingChanged(ranked);
+        }
+        return true;
+    }
+
+    /**
+     * @return The nearest places, nearest first, as of the last {@link #publish(long)}
+     */
+    public List<Ranked<P>> getNearest() {
+        return nearest;
+    }
+
+    public void addOnRankingChangeListener(OnRankingChangeListener<P> listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeOnRankingChangeListener(OnRankingChangeListener<P> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Number of places in range. Only meaningful on the dispatcher thread.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Order {@code campaigns} by the ranking of their places: campaigns at the nearest places
+     * first, nearest first, then all others in their original order. Campaigns at the same place
+     * keep their original order.
+     *
+     * @param campaigns
+     *         The campaigns, e.g. in the order they were found
+     * @param nearest
+     *         A ranking from {@link #getNearest()}
+     * @return A new list
+     */
+    public static <C, P> List<C> orderByProximity(List<C> campaigns,
+                                                  List<Ranked<P>> nearest,
+                                                  CampaignPlaces<C> placesOf) {
+        List<C> ordered = new ArrayList<>(campaigns.size());
+        if (nearest.isEmpty()) {
+            ordered.addAll(campaigns);
+            return ordered;
+        }
+
+        IntIntMap ranks = new IntIntMap(nearest.size());
+        for (int i = 0; i < nearest.size(); i++) {
+            ranks.put(nearest.get(i).getKey(), i);
+        }
+        // Bucket by rank; the ranking is short, so this is linear in the campaigns
+        List<List<C>> byRank = new ArrayList<>(nearest.size());
+        for (int i = 0; i < nearest.size(); i++) {
+            byRank.add(null);
+        }
+        List<C> unranked = new ArrayList<>(campaigns.size());
+        for (C campaign : campaigns) {
+            int key = placesOf.getPlaceKey(campaign);
+            int rank = (key == NO_PLACE) ? IntIntMap.MISSING : ranks.get(key);
+            if (rank == IntIntMap.MISSING) {
+                unranked.add(campaign);
+                continue;
+            }
+            List<C> bucket = byRank.get(rank);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                byRank.set(rank, bucket);
+            }
+            bucket.add(campaign);
+        }
+        for (List<C> bucket : byRank) {
+            if (bucket != null) {
+                ordered.addAll(bucket);
+            }
+        }
+        ordered.addAll(unranked);
+        return ordered;
+    }
+
+    /**
+     * Best-first walk from the top of the heap: the next nearest place is always the root or a
+     * child of a place already taken.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Ranked<P>> collectNearest() {
+        int count = Math.min(rankedCount, size);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<Ranked<P>> ranked = new ArrayList<>(count);
+        int frontierSize = 0;
+        frontier[frontierSize++] = 0;
+        while (ranked.size() < count) {
+            // Take the nearest slot on the frontier; it holds at most 2k + 1 slots
+            int best = 0;
+            for (int i = 1; i < frontierSize; i++) {
+                if (distances[frontier[i]] < distances[frontier[best]]) {
+                    best = i;
+                }
+            }
+            int slot = frontier[best];
+            frontier[best] = frontier[--frontierSize];
+            ranked.add(new Ranked<>(keys[slot], (P) places[slot], distances[slot]));
+
+            int child = 2 * slot + 1;
+            if (child < size) {
+                frontier[frontierSize++] = child;
+            }
+            if (child + 1 < size) {
+                frontier[frontierSize++] = child + 1;
+            }
+        }
+        return Collections.unmodifiableList(ranked);
+    }
+
+    private static <P> boolean sameOrder(List<Ranked<P>> a, List<Ranked<P>> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getKey() != b.get(i).getKey()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void dropStale(long now) {
+        // Removals move entries around the heap, so find the stale places before removing any
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (now - seenAt[slot] > staleMillis) {
+                if (count == staleKeys.length) {
+                    staleKeys = Arrays.copyOf(staleKeys, count * 2);
+                }
+                staleKeys[count++] = keys[slot];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            removeAt(slots.get(staleKeys[i]));
+        }
+    }
+
+    private void insert(int key, P place, double distance, long timestamp) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+            seenAt = Arrays.copyOf(seenAt, capacity);
+            places = Arrays.copyOf(places, capacity);
+        }
+        int slot = size++;
+        keys[slot] = key;
+        distances[slot] = distance;
+        seenAt[slot] = timestamp;
+        places[slot] = place;
+        slots.put(key, slot);
+        siftUp(slot);
+    }
+
+    private void removeAt(int slot) {
+        slots.remove(keys[slot]);
+        int last = --size;
+        if (slot != last) {
+            move(last, slot);
+            places[last] = null;
+            siftDown(slot);
+            siftUp(slot);
+        } else {
+            places[last] = null;
+        }
+    }
+
+    private void siftUp(int slot) {
+        int key = keys[slot];
+        double distance = distances[slot];
+        long seen = seenAt[slot];
+        Object place = places[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (distances[parent] <= distance) {
+                break;
+            }
+            move(parent, slot);
+            slot = parent;
+        }
+        set(slot, key, distance, seen, place);
+    }
+
+    private void siftDown(int slot) {
+        int key = keys[slot];
+        double distance = distances[slot];
+        long seen = seenAt[slot];
+        Object place = places[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && distances[child + 1] < distances[child]) {
+                child++;
+            }
+            if (distance <= distances[child]) {
+                break;
+            }
+            move(child, slot);
+            slot = child;
+        }
+        set(slot, key, distance, seen, place);
+    }
+
+    private void move(int from, int to) {
+        set(to, keys[from], distances[from], seenAt[from], places[from]);
+    }
+
+    private void set(int slot, int key, double distance, long seen, Object place) {
+        keys[slot] = key;
+        distances[slot] = distance;
+        seenAt[slot] = seen;
+        places[slot] = place;
+        slots.put(key, slot);
+    }
+
+    /**
+     * A place and its smoothed distance at the time of ranking.
+     */
+    public static final class Ranked<P> {
+        private final int key;
+        private final P place;
+        private final double distance;
+
+        Ranked(int key, P place, double distance) {
+            this.key = key;
+            this.place = place;
+            this.distance = distance;
+        }
+
+        public int getKey() {
+            return key;
+        }
+
+        public P getPlace() {
+            return place;
+        }
+
+        /**
+         * @return Smoothed distance in metres; infinite if the place was never ranged
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+}
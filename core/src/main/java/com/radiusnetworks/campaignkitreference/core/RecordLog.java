@@ -0,0 +1,267 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * A file of fixed-size records, each ending with its CRC32, which is appended to and now and
+ * then rewritten whole.
+ * <p/>
+ * The file is a header followed by the records, all big-endian:
+ * <pre>
+ *     header  0  magic
+ *             4  format version
+ *             8  record size
+ *            12  CRC32 of the above
+ *     record  0  the owner's fields, record size - 4 bytes
+ *                CRC32 of the above
+ * </pre>
+ * The owner writes the fields of each record into a buffer and seals it with
+ * {@link #putChecksum(ByteBuffer, int)}. {@link #append(ByteBuffer)} adds records with one write
+ * call; {@link #rewrite(ByteBuffer)} writes a new file, syncs it and renames it over the old one,
+ * so a crash leaves one or the other. {@link #replay(Reader)} reads the whole file with a single
+ * read and stops at the first record with a bad checksum, such as one torn by a crash; the next
+ * append writes over it.
+ * <p/>
+ * An I/O error while writing disables the log: the error is thrown once and later writes do
+ * nothing. Not thread-safe.
+ */
+public final class RecordLog {
+    /**
+     * Receives the records read back.
+     */
+    public interface Reader {
+        /**
+         * @param record
+         *         Holds the record's fields at {@code offset}
+         */
+        void onRecord(ByteBuffer record, int offset);
+    }
+
+    /**
+     * What {@link #replay(Reader)} found.
+     */
+    public enum Replay {
+        /**
+         * There is no file yet
+         */
+        NONE,
+        /**
+         * Every record was read
+         */
+        COMPLETE,
+        /**
+         * The records up to one with a bad checksum were read
+         */
+        TRUNCATED,
+        /**
+         * The header is not ours, so nothing was read
+         */
+        UNKNOWN_FORMAT
+    }
+
+    public static final int HEADER_SIZE = 16;
+
+    private static final int CHECKSUM_SIZE = 4;
+
+    private final File file;
+    private final int magic;
+    private final int version;
+    private final int recordSize;
+    private final CRC32 crc = new CRC32();
+
+    private RandomAccessFile out;
+    private int records;
+    private boolean failed = false;
+
+    /**
+     * @param file
+     *         The log file, which the log owns
+     * @param magic
+     *         Identifies the owner's files
+     * @param version
+     *         Version of the owner's record format
+     * @param recordSize
+     *         Size of a record in bytes, including its checksum
+     */
+    public RecordLog(File file, int magic, int version, int recordSize) {
+        if (recordSize <= CHECKSUM_SIZE) {
+            throw new IllegalArgumentException("record size too small: " + recordSize);
+        }
+        this.file = file;
+        this.magic = magic;
+        this.version = version;
+        this.recordSize = recordSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Number of records in the file, as read or written by this log
+     */
+    public int getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return {@code true} once a write failed
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Pass every readable record to {@code reader}, in order.
+     *
+     * @throws IOException
+     *         If the file exists but cannot be read
+     */
+    public Replay replay(Reader reader) throws IOException {
+        records = 0;
+        byte[] content;
+        try {
+            content = readFile();
+        } catch (FileNotFoundException e) {
+            return Replay.NONE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if (content.length < HEADER_SIZE || buffer.getInt(0) != magic
+                || buffer.getInt(4) != version || buffer.getInt(8) != recordSize
+                || buffer.getInt(12) != checksum(content, 0, 12)) {
+            return Replay.UNKNOWN_FORMAT;
+        }
+
+        int fieldsSize = recordSize - CHECKSUM_SIZE;
+        int offset = HEADER_SIZE;
+        for (; offset + recordSize <= content.length; offset += recordSize) {
+            if (buffer.getInt(offset + fieldsSize) != checksum(content, offset, fieldsSize)) {
+                break;
+            }
+            reader.onRecord(buffer, offset);
+            records++;
+        }
+        return (offset == content.length) ? Replay.COMPLETE : Replay.TRUNCATED;
+    }
+
+    /**
+     * End the record started at {@code start} in {@code buffer}, whose fields were just put, with
+     * its checksum.
+     */
+    public void putChecksum(ByteBuffer buffer, int start) {
+        int length = buffer.position() - start;
+        if (length != recordSize - CHECKSUM_SIZE) {
+            throw new IllegalArgumentException("record fields of " + length + " bytes");
+        }
+        buffer.putInt(checksum(buffer.array(), start, length));
+    }
+
+    /**
+     * Add the records put into {@code appended}, up to its position, to the end of the file. A
+     * log without a file starts one first.
+     */
+    public void append(ByteBuffer appended) throws IOException {
+        if (failed) {
+            return;
+        }
+        if (out == null && records == 0 && !file.exists()) {
+            rewrite(ByteBuffer.allocate(0));
+        }
+        try {
+            if (out == null) {
+                out = new RandomAccessFile(file, "rw");
+                out.seek(HEADER_SIZE + (long) records * recordSize);
+            }
+            out.write(appended.array(), 0, appended.position());
+            records += appended.position() / recordSize;
+        } catch (IOException e) {
+            fail();
+            throw e;
+        }
+    }
+
+    /**
+     * Replace the file with one holding just the records put into {@code content}, up to its
+     * position.
+     */
+    public void rewrite(ByteBuffer content) throws IOException {
+        if (failed) {
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(magic).putInt(version).putInt(recordSize)
+                .putInt(checksum(header.array(), 0, 12));
+
+        File parent = file.getParentFile();
+        File temp = new File(parent, file.getName() + ".tmp");
+        try {
+            close();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
+            }
+            RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+            try {
+                raf.setLength(0);
+                raf.write(header.array());
+                raf.write(content.array(), 0, content.position());
+                raf.getFD().sync();
+            } finally {
+                raf.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+            records = content.position() / recordSize;
+        } catch (IOException e) {
+            fail();
+            throw e;
+        }
+    }
+
+    /**
+     * Release the file until the next append.
+     */
+    public void close() throws IOException {
+        if (out != null) {
+            RandomAccessFile closed = out;
+            out = null;
+            closed.close();
+        }
+    }
+
+    private byte[] readFile() throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long length = in.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Log too large: " + length);
+            }
+            byte[] content = new byte[(int) length];
+            in.readFully(content);
+            return content;
+        } finally {
+            in.close();
+        }
+    }
+
+    private int checksum(byte[] bytes, int offset, int length) {
+        crc.reset();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private void fail() {
+        failed = true;
+        try {
+            close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+    }
+}
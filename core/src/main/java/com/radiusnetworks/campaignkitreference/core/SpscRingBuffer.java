@@ -0,0 +1,97 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free, single-producer/single-consumer queue.
+ * <p/>
+ * Exactly one thread may call {@link #offer(Object)} and exactly one (other) thread may call
+ * {@link #poll()} at any given time. Neither side ever blocks: a full buffer rejects the offer and
+ * an empty buffer returns {@code null}.
+ *
+ * @param <E>
+ *         Type of the queued elements
+ */
+public final class SpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+
+    /**
+     * Index of the next slot to read. Only written by the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Index of the next slot to write. Only written by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity
+     *         Minimum number of elements the buffer can hold; rounded up to a power of two.
+     */
+    public SpscRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Producer side. Adds {@code element} unless the buffer is full.
+     *
+     * @return {@code false} if the buffer is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        slots.lazySet((int) t & mask, element);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side. Removes the oldest element.
+     *
+     * @return The oldest element, or {@code null} if the buffer is empty
+     */
+    public E poll() {
+        long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        int index = (int) h & mask;
+        E element = slots.get(index);
+        slots.lazySet(index, null);
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * @return An estimate of the number of queued elements; exact when called by either side
+     * while the other is idle.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+}
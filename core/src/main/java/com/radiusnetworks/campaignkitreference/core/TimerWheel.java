@@ -0,0 +1,297 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Deadlines by key in a hierarchical timer wheel, to expire many long-lived entries without
+ * keeping them sorted.
+ * <p/>
+ * Time advances in ticks. Each level of the wheel has 64 slots: a slot of the lowest level holds
+ * the deadlines of one tick, a slot of any other level spans the whole level below it. A deadline
+ * goes into the lowest level which reaches it, and when time arrives at a slot of a higher level
+ * its entries move down into the level which now reaches them. An entry moves at most once per
+ * level, so scheduling, cancelling and expiring cost O(1), amortized over the ticks. Deadlines
+ * beyond the reach of the top level wait in it and are placed again when their slot comes up.
+ * <p/>
+ * A bit mask of the occupied slots of each level finds the next tick with work in constant time,
+ * so the owner can sleep until {@link #nextWakeMillis()} rather than tick through empty time, and
+ * {@link #advance(long, Collection)} skips empty ticks. That work is either an expiring deadline
+ * or a slot moving down a level, which happens at most once per level for each entry.
+ * <p/>
+ * Deadlines are rounded up to whole ticks, so entries never expire early and at most a tick
+ * late. Not thread-safe.
+ *
+ * @param <K>
+ *         Type of the keys
+ */
+public final class TimerWheel<K> {
+    /**
+     * A deadline which is never reached; see {@link #nextWakeMillis()}
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * Ticks ahead which the top level reaches
+     */
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final Node<K>[][] slots;
+    private final long[] occupied = new long[LEVELS];
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+
+    /**
+     * The next tick to process
+     */
+    private long base;
+
+    /**
+     * @param tickMillis
+     *         Length of a tick, the precision of the deadlines
+     * @param nowMillis
+     *         The current time, in the same clock as the deadlines
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.slots = (Node<K>[][]) new Node[LEVELS][SLOTS];
+        this.base = floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * Set the deadline of {@code key}, replacing the one it had. A deadline which has passed
+     * expires with the next {@link #advance(long, Collection)};
+     * {@link #NO_DEADLINE} cancels it.
+     */
+    public void schedule(K key, long deadlineMillis) {
+        if (deadlineMillis == NO_DEADLINE) {
+            cancel(key);
+            return;
+        }
+        Node<K> node = nodes.get(key);
+        if (node != null) {
+            unlink(node);
+        } else {
+            node = new Node<>(key);
+            nodes.put(key, node);
+        }
+        node.deadlineMillis = deadlineMillis;
+        // Rounded up, so it does not expire early
+        long tick = deadlineMillis / tickMillis;
+        node.tick = (deadlineMillis % tickMillis > 0) ? tick + 1 : tick;
+        place(node);
+    }
+
+    /**
+     * @return {@code true} if {@code key} had a deadline
+     */
+    public boolean cancel(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Cancel the deadlines of all keys not in {@code keys}.
+     *
+     * @return Number of deadlines cancelled
+     */
+    public int retainAll(Collection<?> keys) {
+        int cancelled = 0;
+        for (Iterator<Node<K>> it = nodes.values().iterator(); it.hasNext(); ) {
+            Node<K> node = it.next();
+            if (!keys.contains(node.key)) {
+                it.remove();
+                unlink(node);
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * @return The deadline of {@code key}, or {@link #NO_DEADLINE} if it has none
+     */
+    public long getDeadline(K key) {
+        Node<K> node = nodes.get(key);
+        return (node != null) ? node.deadlineMillis : NO_DEADLINE;
+    }
+
+    public boolean contains(K key) {
+        return nodes.containsKey(key);
+    }
+
+    /**
+     * @return Number of keys with a deadline
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return When {@link #advance(long, Collection)} next has work to do, or
+     * {@link #NO_DEADLINE} if the wheel is empty. Never later than the earliest deadline.
+     */
+    public long nextWakeMillis() {
+        long tick = nextTick();
+        return (tick == Long.MAX_VALUE) ? NO_DEADLINE : tick * tickMillis;
+    }
+
+    /**
+     * Move time forward to {@code nowMillis}, removing every deadline which has passed.
+     *
+     * @param expired
+     *         Receives the keys whose deadline passed, earliest first
+     * @return Number of keys expired
+     */
+    public int advance(long nowMillis, Collection<? super K> expired) {
+        long target = floorDiv(nowMillis, tickMillis);
+        int count = 0;
+        while (base <= target) {
+            long tick = nextTick();
+            if (tick > target) {
+                base = target + 1;
+                break;
+            }
+            // Nothing happens in the ticks skipped
+            base = tick;
+
+            // Slots of higher levels which start at this tick move down first
+            for (int level = 1; level < LEVELS; level++) {
+                if ((base & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) (base >>> (SLOT_BITS * level)) & SLOT_MASK);
+            }
+
+            int slot = (int) base & SLOT_MASK;
+            Node<K> node = slots[0][slot];
+            slots[0][slot] = null;
+            occupied[0] &= ~(1L << slot);
+            while (node != null) {
+                Node<K> next = node.next;
+                node.prev = null;
+                node.next = null;
+                nodes.remove(node.key);
+                expired.add(node.key);
+                count++;
+                node = next;
+            }
+            base++;
+        }
+        return count;
+    }
+
+    /**
+     * @return The next tick which expires deadlines or moves a slot down, or
+     * {@link Long#MAX_VALUE} if the wheel is empty
+     */
+    private long nextTick() {
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            if (occupied[level] == 0) {
+                continue;
+            }
+            int shift = SLOT_BITS * level;
+            // The first slot of this level which has not been reached yet
+            long first = ((base + (1L << shift) - 1) >>> shift) << shift;
+            int start = (int) (first >>> shift) & SLOT_MASK;
+            int ahead = Long.numberOfTrailingZeros(Long.rotateRight(occupied[level], start));
+            next = Math.min(next, first + ((long) ahead << shift));
+        }
+        return next;
+    }
+
+    /**
+     * Put {@code node} into the lowest level which reaches its tick.
+     */
+    private void place(Node<K> node) {
+        long delta = node.tick - base;
+        int level;
+        long tick;
+        if (delta < SLOTS) {
+            level = 0;
+            // Passed deadlines expire with the next tick
+            tick = Math.max(node.tick, base);
+        } else {
+            // Out of reach deadlines wait in the last slot the top level reaches
+            tick = (delta < SPAN) ? node.tick : base + SPAN - 1;
+            level = (63 - Long.numberOfLeadingZeros(tick - base)) / SLOT_BITS;
+        }
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+
+        Node<K> head = slots[level][slot];
+        node.level = level;
+        node.slot = slot;
+        node.prev = null;
+        node.next = head;
+        if (head != null) {
+            head.prev = node;
+        }
+        slots[level][slot] = node;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void cascade(int level, int slot) {
+        Node<K> node = slots[level][slot];
+        slots[level][slot] = null;
+        occupied[level] &= ~(1L << slot);
+        while (node != null) {
+            Node<K> next = node.next;
+            place(node);
+            node = next;
+        }
+    }
+
+    private void unlink(Node<K> node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            slots[node.level][node.slot] = node.next;
+            if (node.next == null) {
+                occupied[node.level] &= ~(1L << node.slot);
+            }
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        return (x % y < 0) ? quotient - 1 : quotient;
+    }
+
+    /**
+     * A key's deadline, linked into the slot holding it.
+     */
+    private static final class Node<K> {
+        final K key;
+        long deadlineMillis;
+        long tick;
+        int level;
+        int slot;
+        Node<K> prev;
+        Node<K> next;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+}
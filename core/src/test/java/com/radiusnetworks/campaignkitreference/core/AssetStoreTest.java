@@ -0,0 +1,234 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AssetStoreTest {
+    /**
+     * Runs downloads on the calling thread, so a prefetch is complete when it returns.
+     */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Stand-in for the servers campaign content points at: path to content type and body
+     */
+    private final Map<String, String[]> resources = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private String base;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.putIfAbsent(path, new AtomicInteger());
+                requests.get(path).incrementAndGet();
+                String[] resource = resources.get(path);
+                if (resource == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = resource[1].getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", resource[0]);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void collectUrls_onlyResourcesThePageLoads() {
+        String html = "<html><head>"
+                + "<link rel=\"stylesheet\" href=\"http://cdn.example.com/a.css\">"
+                + "<link rel='icon' href='http://cdn.example.com/favicon.ico'>"
+                + "<script src='https://cdn.example.com/a.js'></script>"
+                + "<style>body { background: url(http://cdn.example.com/bg.png) }</style>"
+                + "</head><body>"
+                + "<IMG alt=\"logo\" SRC=\"https://cdn.example.com/logo.png\">"
+                + "<img src=\"images/relative.png\">"
+                + "<a href=\"http://www.example.com/landing.html\">More</a>"
+                + "<div style=\"background-image: url('http://cdn.example.com/tile.png')\"></div>"
+                + "</body></html>";
+        Set<String> urls = new LinkedHashSet<>();
+
+        AssetStore.collectUrls(html, urls);
+
+        assertEquals(new LinkedHashSet<>(Arrays.asList(
+                "https://cdn.example.com/a.js",
+                "https://cdn.example.com/logo.png",
+                "http://cdn.example.com/a.css",
+                "http://cdn.example.com/bg.png",
+                "http://cdn.example.com/tile.png")), urls);
+    }
+
+    @Test
+    public void prefetch_storesEachContentOnce() throws IOException {
+        resources.put("/a.png", new String[]{"image/png", "same bytes"});
+        resources.put("/b.png", new String[]{"image/png", "same bytes"});
+        resources.put("/c.css", new String[]{"text/css; charset=utf-8", "p { color: red }"});
+        AssetStore store = new AssetStore(folder.getRoot(), DIRECT);
+
+        assertEquals(3, store.prefetch(Collections.singletonList(
+                img("/a.png") + img("/b.png") + stylesheet("/c.css"))));
+
+        AssetStore.Asset a = store.get(base + "/a.png");
+        AssetStore.Asset b = store.get(base + "/b.png");
+        assertNotNull(a);
+        assertEquals(a.getBlob(), b.getBlob());
+        assertEquals("image/png", a.getMimeType());
+        assertEquals(2, blobs().length);
+        assertEquals("utf-8", store.get(base + "/c.css").getEncoding());
+        assertEquals("p { color: red }", store.readStylesheet(base + "/c.css"));
+        assertNull(store.readStylesheet(base + "/a.png"));
+    }
+
+    @Test
+    public void storedResources_notDownloadedAgain_evenAfterARestart() {
+        resources.put("/a.png", new String[]{"image/png", "a"});
+        List<String> bodies = Collections.singletonList(img("/a.png"));
+        new AssetStore(folder.getRoot(), DIRECT).prefetch(bodies);
+
+        AssetStore restarted = new AssetStore(folder.getRoot(), DIRECT);
+        assertNotNull(restarted.get(base + "/a.png"));
+        assertEquals(0, restarted.prefetch(bodies));
+        assertEquals(1, requests.get("/a.png").get());
+    }
+
+    @Test
+    public void unreferencedResources_deletedByTheNextPrefetch() {
+        resources.put("/a.png", new String[]{"image/png", "a"});
+        resources.put("/b.png", new String[]{"image/png", "b"});
+        AssetStore store = new AssetStore(folder.getRoot(), DIRECT);
+        store.prefetch(Arrays.asList(img("/a.png"), img("/b.png")));
+        File blobB = store.get(base + "/b.png").getBlob();
+
+        store.prefetch(Collections.singletonList(img("/a.png")));
+
+        assertNull(store.get(base + "/b.png"));
+        assertFalse(blobB.exists());
+        assertTrue(store.get(base + "/a.png").getBlob().exists());
+        assertNull(new AssetStore(folder.getRoot(), DIRECT).get(base + "/b.png"));
+    }
+
+    @Test
+    public void failedDownloads_leaveNothingBehind() {
+        AssetStore store = new AssetStore(folder.getRoot(), DIRECT);
+
+        store.prefetch(Collections.singletonList(img("/missing.png")));
+
+        assertNull(store.get(base + "/missing.png"));
+        assertEquals(0, blobs().length);
+        assertEquals(0, store.getDownloading());
+    }
+
+    @Test
+    public void concurrentPrefetches_neverLoseABlob() throws InterruptedException {
+        // Pairs of URLs share their content, so downloads land on blobs other URLs refer to
+        List<String> bodies = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            resources.put("/" + i + ".png", new String[]{"image/png", "content " + (i / 2)});
+            bodies.add(img("/" + i + ".png"));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AssetStore store = new AssetStore(folder.getRoot(), executor);
+        Random random = new Random(11);
+        try {
+            for (int round = 0; round < 2000; round++) {
+                List<String> some = new ArrayList<>(bodies);
+                Collections.shuffle(some, random);
+                store.prefetch(some.subList(0, 1 + random.nextInt(some.size())));
+                Thread.yield();
+            }
+            awaitDownloads(store);
+            store.prefetch(bodies);
+            awaitDownloads(store);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < bodies.size(); i++) {
+            AssetStore.Asset asset = store.get(base + "/" + i + ".png");
+            assertNotNull("no asset for " + i, asset);
+            assertTrue("blob of " + i + " deleted", asset.getBlob().exists());
+        }
+        assertEquals(bodies.size() / 2, blobs().length);
+    }
+
+    private String img(String path) {
+        return "<img src=\"" + base + path + "\">";
+    }
+
+    private String stylesheet(String path) {
+        return "<link rel=\"stylesheet\" href=\"" + base + path + "\">";
+    }
+
+    private File[] blobs() {
+        File[] blobs = new File(folder.getRoot(), "blobs").listFiles();
+        return (blobs != null) ? blobs : new File[0];
+    }
+
+    private static void awaitDownloads(AssetStore store) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (store.getDownloading() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, store.getDownloading());
+    }
+}
@@ -0,0 +1,87 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedCampaignStoreTest {
+    /**
+     * Keeps a copy of the store up to date from the published changes alone.
+     */
+    static final class Mirror implements CampaignStore.OnChangeListener<String> {
+        final List<String> items = new ArrayList<>();
+        final List<List<CampaignChange<String>>> publishes = new ArrayList<>();
+
+        @Override
+        public void onCampaignsChanged(List<CampaignChange<String>> changes,
+                                       List<String> campaigns) {
+            publishes.add(changes);
+            for (CampaignChange<String> change : changes) {
+                change.applyTo(items, change.getCampaign());
+            }
+            assertEquals(campaigns, items);
+        }
+    }
+
+    private final BoundedCampaignStore<String> store =
+            new BoundedCampaignStore<>(4, CampaignChangeTest.IDS);
+    private final Mirror mirror = new Mirror();
+
+    @Test
+    public void foundAgainKeepsItsPosition() {
+        store.addOnChangeListener(mirror);
+        assertTrue(store.add("a"));
+        assertTrue(store.add("b"));
+        assertFalse(store.add("a"));
+
+        assertEquals(Arrays.asList("a", "b"), store.getCampaigns());
+        assertEquals(2, mirror.publishes.size());
+    }
+
+    @Test
+    public void full_dropsTheOldest() {
+        store.addOnChangeListener(mirror);
+        for (String id : Arrays.asList("a", "b", "c", "d", "e")) {
+            store.add(id);
+        }
+
+        assertEquals(Arrays.asList("b", "c", "d", "e"), store.getCampaigns());
+        assertFalse(store.contains("a"));
+        assertEquals(0, store.indexOf("b"));
+    }
+
+    @Test
+    public void removeAll_publishesOnce() {
+        for (String id : Arrays.asList("a", "b", "c", "d")) {
+            store.add(id);
+        }
+        store.addOnChangeListener(mirror);
+        mirror.items.addAll(store.getCampaigns());
+
+        List<String> removed = store.removeAll(Arrays.asList("d", "a", "x", "b"));
+
+        assertEquals(Arrays.asList("a", "b", "d"), removed);
+        assertEquals(Arrays.asList("c"), store.getCampaigns());
+        assertEquals(1, mirror.publishes.size());
+        assertEquals(3, mirror.publishes.get(0).size());
+        assertEquals(0, store.indexOf("c"));
+    }
+
+    @Test
+    public void removeAll_nothingToRemovePublishesNothing() {
+        store.add("a");
+        store.add("b");
+        store.addOnChangeListener(mirror);
+
+        assertTrue(store.removeAll(Arrays.asList("x")).isEmpty());
+        assertTrue(mirror.publishes.isEmpty());
+        assertNull(store.remove("x"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CampaignChangeTest {
+    static final IdExtractor<String> IDS = new IdExtractor<String>() {
+        @Override
+        public String getId(String campaign) {
+            return campaign;
+        }
+    };
+
+    @Test
+    public void sameListHasNoChanges() {
+        List<String> list = Arrays.asList("a", "b", "c");
+        assertTrue(CampaignChange.diff(list, new ArrayList<>(list), IDS).isEmpty());
+    }
+
+    @Test
+    public void addedAtTheirPositions() {
+        List<CampaignChange<String>> changes = CampaignChange.diff(
+                Arrays.asList("a", "c"), Arrays.asList("a", "b", "c", "d"), IDS);
+
+        assertEquals(2, changes.size());
+        assertChange(changes.get(0), CampaignChange.Type.ADDED, "b",
+                CampaignChange.NO_POSITION, 1);
+        assertChange(changes.get(1), CampaignChange.Type.ADDED, "d",
+                CampaignChange.NO_POSITION, 3);
+    }
+
+    @Test
+    public void removedFromTheBackFirst() {
+        List<CampaignChange<String>> changes = CampaignChange.diff(
+                Arrays.asList("a", "b", "c", "d"), Arrays.asList("b", "c"), IDS);
+
+        assertEquals(2, changes.size());
+        assertChange(changes.get(0), CampaignChange.Type.REMOVED, "d",
+                3, CampaignChange.NO_POSITION);
+        assertChange(changes.get(1), CampaignChange.Type.REMOVED, "a",
+                0, CampaignChange.NO_POSITION);
+    }
+
+    @Test
+    public void movedToTheirNewPosition() {
+        List<CampaignChange<String>> changes = CampaignChange.diff(
+                Arrays.asList("a", "b", "c"), Arrays.asList("c", "a", "b"), IDS);
+
+        assertEquals(1, changes.size());
+        assertChange(changes.get(0), CampaignChange.Type.MOVED, "c", 2, 0);
+    }
+
+    @Test
+    public void appliedInOrderTurnsOneListIntoTheOther() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<String> from = randomList(random);
+            List<String> to = randomList(random);
+
+            List<String> items = new ArrayList<>(from);
+            for (CampaignChange<String> change : CampaignChange.diff(from, to, IDS)) {
+                change.applyTo(items, change.getCampaign());
+            }
+            assertEquals(to, items);
+        }
+    }
+
+    static void assertChange(CampaignChange<String> change, CampaignChange.Type type,
+                             String campaign, int from, int to) {
+        assertEquals(type, change.getType());
+        assertEquals(campaign, change.getCampaign());
+        assertEquals(from, change.getFromPosition());
+        assertEquals(to, change.getToPosition());
+    }
+
+    private static List<String> randomList(Random random) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            if (random.nextBoolean()) {
+                list.add("c" + i);
+            }
+        }
+        Collections.shuffle(list, random);
+        return list;
+    }
+}
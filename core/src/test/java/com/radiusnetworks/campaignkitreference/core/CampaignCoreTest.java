@@ -0,0 +1,227 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CampaignCoreTest {
+    /**
+     * Records what the core asks of Campaign Kit.
+     */
+    static final class RecordingBackend implements CampaignCore.Backend<String> {
+        final List<String> found = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+        final List<String> viewed = new ArrayList<>();
+        int lookups;
+
+        @Override
+        public void removeCampaign(String campaign) {
+            removed.add(campaign);
+            found.remove(campaign);
+        }
+
+        @Override
+        public Collection<? extends String> getFoundCampaigns() {
+            lookups++;
+            return new ArrayList<>(found);
+        }
+
+        @Override
+        public void setCampaignViewed(String campaign) {
+            viewed.add(campaign);
+        }
+    }
+
+    /**
+     * Holds the backend tasks until {@link #runAll()}.
+     */
+    static final class QueuedExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static final Executor INLINE = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    private final BoundedCampaignStore<String> store =
+            new BoundedCampaignStore<>(3, CampaignChangeTest.IDS);
+    private final BoundedCampaignStoreTest.Mirror mirror = new BoundedCampaignStoreTest.Mirror();
+    private final RecordingBackend backend = new RecordingBackend();
+    private final List<String> shown = new ArrayList<>();
+    private int refreshes;
+
+    private final CampaignUiSink<String> uiSink = new CampaignUiSink<String>() {
+        @Override
+        public void showFoundCampaign(String campaign) {
+            shown.add(campaign);
+        }
+
+        @Override
+        public void refreshFoundList() {
+            refreshes++;
+        }
+    };
+
+    @Test
+    public void foundCampaigns_storedAndShown_oneRefreshPerBatch() {
+        CampaignCore<String, String, String> core = core(INLINE);
+        core.onEventBatch(batch("a", "b", "a"));
+
+        assertEquals(Arrays.asList("a", "b"), store.getCampaigns());
+        // Found again is shown again
+        assertEquals(Arrays.asList("a", "b", "a"), shown);
+        assertEquals(1, refreshes);
+
+        // Nothing new to list
+        core.onEventBatch(batch("b"));
+        assertEquals(1, refreshes);
+    }
+
+    @Test
+    public void removeCampaigns_publishesOnce() {
+        CampaignCore<String, String, String> core = core(INLINE);
+        core.onEventBatch(batch("a", "b", "c"));
+        mirror.items.addAll(store.addOnChangeListener(mirror));
+        refreshes = 0;
+
+        assertEquals(2, core.removeCampaigns(Arrays.asList("c", "x", "a")));
+        assertEquals(1, mirror.publishes.size());
+        assertEquals(2, mirror.publishes.get(0).size());
+        assertEquals(Collections.singletonList("b"), store.getCampaigns());
+        assertEquals(1, refreshes);
+        // In store order
+        assertEquals(Arrays.asList("a", "c"), backend.removed);
+
+        assertEquals(0, core.removeCampaigns(Arrays.asList("a", "x")));
+        assertEquals(1, mirror.publishes.size());
+        assertEquals(1, refreshes);
+    }
+
+    @Test
+    public void removals_reachTheBackendInOrder_inOneRun() {
+        QueuedExecutor executor = new QueuedExecutor();
+        CampaignCore<String, String, String> core = core(executor);
+        core.onEventBatch(batch("a", "b", "c"));
+
+        assertTrue(core.removeCampaign("b"));
+        assertTrue(core.removeCampaign("a"));
+        assertEquals(1, core.removeCampaigns(Arrays.asList("c")));
+        assertTrue(backend.removed.isEmpty());
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        assertEquals(Arrays.asList("b", "a", "c"), backend.removed);
+
+        // The next removal schedules another run
+        core.onEventBatch(batch("d"));
+        core.removeCampaign("d");
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(Arrays.asList("b", "a", "c", "d"), backend.removed);
+    }
+
+    @Test
+    public void racingRemoval_countedAndPassedOnOnce() {
+        // Another removal, e.g. a user delete racing an expiry, gets in just before the write
+        final List<CampaignCore<String, String, String>> racer = new ArrayList<>();
+        BoundedCampaignStore<String> racyStore =
+                new BoundedCampaignStore<String>(3, CampaignChangeTest.IDS) {
+                    @Override
+                    public List<String> removeAll(Collection<String> campaignIds) {
+                        if (!racer.isEmpty()) {
+                            racer.remove(0).removeCampaign("a");
+                        }
+                        return super.removeAll(campaignIds);
+                    }
+                };
+        CampaignCore<String, String, String> core = new CampaignCore<>(racyStore,
+                CampaignChangeTest.IDS, CampaignChangeTest.IDS, 0, 16, backend, INLINE, uiSink);
+        core.onEventBatch(batch("a", "b"));
+        racer.add(core);
+
+        assertEquals(1, core.removeCampaigns(Arrays.asList("a", "b")));
+        assertEquals(Arrays.asList("a", "b"), backend.removed);
+    }
+
+    @Test
+    public void evictedCampaigns_notBroughtBack() {
+        CampaignCore<String, String, String> core = core(INLINE);
+        // The store holds three, so "a" is evicted while the backend keeps it found
+        core.onEventBatch(batch("a", "b", "c", "d"));
+        assertEquals(Arrays.asList("b", "c", "d"), store.getCampaigns());
+
+        assertTrue(core.removeCampaign("c"));
+        assertEquals(Arrays.asList("b", "d"), store.getCampaigns());
+        assertEquals(Collections.singletonList("c"), backend.removed);
+        assertTrue(backend.found.contains("a"));
+
+        assertFalse(core.removeCampaign("a"));
+        assertEquals(Collections.singletonList("c"), backend.removed);
+    }
+
+    @Test
+    public void setCampaignsViewed_fallsBackToTheBackend() {
+        CampaignCore<String, String, String> core = core(INLINE);
+        core.onEventBatch(batch("a", "b", "c", "d"));
+        final List<String> done = new ArrayList<>();
+
+        core.setCampaignsViewed(Arrays.asList("b", "a", "x", "d"), new Runnable() {
+            @Override
+            public void run() {
+                done.add("done");
+            }
+        });
+        // "a" was evicted but the backend has it; nobody has "x"
+        assertEquals(Arrays.asList("b", "a", "d"), backend.viewed);
+        assertEquals(1, backend.lookups);
+        assertEquals(1, done.size());
+
+        // All in the store, so the backend is not asked
+        core.setCampaignsViewed(Arrays.asList("c"), null);
+        assertEquals(Arrays.asList("b", "a", "d", "c"), backend.viewed);
+        assertEquals(1, backend.lookups);
+    }
+
+    private CampaignCore<String, String, String> core(Executor executor) {
+        return new CampaignCore<>(store, CampaignChangeTest.IDS, CampaignChangeTest.IDS, 0, 16,
+                backend, executor, uiSink);
+    }
+
+    /**
+     * A batch with just {@code campaigns}, which the backend then has as found.
+     */
+    private CampaignEventDispatcher.EventBatch<String, String, String> batch(
+            String... campaigns) {
+        for (String campaign : campaigns) {
+            if (!backend.found.contains(campaign)) {
+                backend.found.add(campaign);
+            }
+        }
+        return new CampaignEventDispatcher.EventBatch<>(
+                new ArrayList<CampaignEventDispatcher.PlaceEvent<String, String>>(),
+                Arrays.asList(campaigns), false, null);
+    }
+}
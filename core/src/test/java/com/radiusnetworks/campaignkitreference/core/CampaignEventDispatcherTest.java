@@ -0,0 +1,185 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CampaignEventDispatcherTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final BlockingQueue<CampaignEventDispatcher.EventBatch<String, String, String>> batches =
+            new LinkedBlockingQueue<>();
+    private volatile boolean failNext;
+
+    private final CampaignEventDispatcher.BatchListener<String, String, String> listener =
+            new CampaignEventDispatcher.BatchListener<String, String, String>() {
+                @Override
+                public void onEventBatch(
+                        CampaignEventDispatcher.EventBatch<String, String, String> batch) {
+                    if (failNext) {
+                        failNext = false;
+                        throw new IllegalStateException("listener failed");
+                    }
+                    batches.add(batch);
+                }
+            };
+
+    private CampaignEventDispatcher<String, String, String> dispatcher;
+
+    @After
+    public void stop() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    public void fullRing_dropsPlaceEventsOnly() throws InterruptedException {
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignChangeTest.IDS, 0, 4);
+        for (int i = 0; i < 7; i++) {
+            dispatcher.didDetectPlace("place" + i, "ranging");
+        }
+        dispatcher.didFindCampaign("campaign");
+        dispatcher.didSync();
+        dispatcher.start();
+
+        CampaignEventDispatcher.EventBatch<String, String, String> batch = take();
+        assertEquals(4, batch.getPlaceEvents().size());
+        assertEquals("place0", batch.getPlaceEvents().get(0).getPlace());
+        assertEquals(1, batch.getFoundCampaigns().size());
+        assertTrue(batch.isSynced());
+        assertEquals(3, dispatcher.getDroppedPlaceEvents());
+    }
+
+    @Test
+    public void overflowedCampaigns_stayInOrder() throws InterruptedException {
+        // A ring far too small for the campaigns, drained by the dispatcher while they arrive
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignChangeTest.IDS, 0, 2);
+        dispatcher.start();
+        int sent = 2000;
+        for (int i = 0; i < sent; i++) {
+            dispatcher.didFindCampaign("campaign" + i);
+        }
+
+        int received = 0;
+        while (received < sent) {
+            for (String campaign : take().getFoundCampaigns()) {
+                assertEquals("campaign" + received, campaign);
+                received++;
+            }
+        }
+    }
+
+    @Test
+    public void repeatedPlaceEvents_collapseIntoTheLatest() throws InterruptedException {
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignChangeTest.IDS, 0, 16);
+        dispatcher.didDetectPlace("a", "enter");
+        dispatcher.didDetectPlace("b", "enter");
+        dispatcher.didDetectPlace("a", "ranging");
+        dispatcher.didDetectPlace("a", "exit");
+        dispatcher.start();
+
+        CampaignEventDispatcher.EventBatch<String, String, String> batch = take();
+        assertEquals(2, batch.getPlaceEvents().size());
+        CampaignEventDispatcher.PlaceEvent<String, String> first = batch.getPlaceEvents().get(0);
+        assertEquals("a", first.getPlace());
+        assertEquals("exit", first.getEventType());
+        assertEquals(3, first.getRepeatCount());
+        assertEquals(2, dispatcher.getCoalescedPlaceEvents());
+    }
+
+    @Test
+    public void ringKeepsDrainingWhileTheWindowIsOpen() throws InterruptedException {
+        // Far more events than the ring holds, all within one window
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignChangeTest.IDS, 1000, 8);
+        dispatcher.start();
+        int sent = 64;
+        for (int i = 0; i < sent; i++) {
+            dispatcher.didDetectPlace("place" + (i % 3), "ranging");
+            Thread.sleep(2);
+        }
+
+        int delivered = 0;
+        while (delivered < sent) {
+            CampaignEventDispatcher.EventBatch<String, String, String> batch = take();
+            for (CampaignEventDispatcher.PlaceEvent<String, String> event
+                    : batch.getPlaceEvents()) {
+                delivered += event.getRepeatCount();
+            }
+        }
+        assertEquals(sent, delivered);
+        assertEquals(0, dispatcher.getDroppedPlaceEvents());
+    }
+
+    @Test
+    public void syncOutcome_isTheLastInTheBatch() throws InterruptedException {
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignChangeTest.IDS, 0, 16);
+        dispatcher.didSync();
+        dispatcher.didFailSync(new Exception("offline"));
+        dispatcher.start();
+
+        CampaignEventDispatcher.EventBatch<String, String, String> batch = take();
+        assertFalse(batch.isSynced());
+        assertEquals("offline", batch.getSyncFailure().getMessage());
+        dispatcher.stop();
+
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignChangeTest.IDS, 0, 16);
+        dispatcher.didFailSync(new Exception("offline"));
+        dispatcher.didSync();
+        dispatcher.start();
+
+        batch = take();
+        assertTrue(batch.isSynced());
+        assertNull(batch.getSyncFailure());
+    }
+
+    @Test
+    public void failingListener_keepsReceivingBatches() throws InterruptedException {
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignChangeTest.IDS, 0, 16);
+        failNext = true;
+        dispatcher.start();
+        dispatcher.didFindCampaign("lost");
+        waitForFailure();
+
+        dispatcher.didFindCampaign("delivered");
+        CampaignEventDispatcher.EventBatch<String, String, String> batch = take();
+        assertEquals("delivered", batch.getFoundCampaigns().get(0));
+        assertEquals(1, dispatcher.getFailedBatches());
+    }
+
+    @Test
+    public void stop_deliversWhatIsQueued() throws InterruptedException {
+        dispatcher = new CampaignEventDispatcher<>(listener, CampaignChangeTest.IDS, 0, 16);
+        dispatcher.didFailSync(new Exception("offline"));
+        dispatcher.start();
+        dispatcher.stop();
+
+        CampaignEventDispatcher.EventBatch<String, String, String> batch = take();
+        assertEquals("offline", batch.getSyncFailure().getMessage());
+        assertNull(batches.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private CampaignEventDispatcher.EventBatch<String, String, String> take()
+            throws InterruptedException {
+        CampaignEventDispatcher.EventBatch<String, String, String> batch =
+                batches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("no batch delivered", batch);
+        return batch;
+    }
+
+    private void waitForFailure() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (dispatcher.getFailedBatches() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CampaignExpiryTest {
+    private static final long TICK_MILLIS = 100;
+
+    /**
+     * A campaign as the backend has it at one time.
+     */
+    static final class Timed {
+        final String id;
+        final long endMillis;
+
+        Timed(String id, long endMillis) {
+            this.id = id;
+            this.endMillis = endMillis;
+        }
+    }
+
+    static final IdExtractor<Timed> IDS = new IdExtractor<Timed>() {
+        @Override
+        public String getId(Timed campaign) {
+            return campaign.id;
+        }
+    };
+
+    static final CampaignExpiry.Deadlines<Timed> DEADLINES = new CampaignExpiry.Deadlines<Timed>() {
+        @Override
+        public long getDeadline(Timed campaign) {
+            return campaign.endMillis;
+        }
+    };
+
+    /**
+     * Holds the one task set, until the test fires it.
+     */
+    static final class FakeAlarm implements CampaignExpiry.Alarm {
+        Runnable task;
+        long delayMillis;
+
+        @Override
+        public void set(Runnable task, long delayMillis) {
+            this.task = task;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            if (this.task == task) {
+                this.task = null;
+            }
+        }
+
+        boolean isSet() {
+            return task != null;
+        }
+
+        void fire() {
+            Runnable fired = task;
+            task = null;
+            fired.run();
+        }
+    }
+
+    private long now = 0;
+    private final CampaignExpiry.Clock clock = new CampaignExpiry.Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    };
+
+    private final FakeAlarm alarm = new FakeAlarm();
+    private final List<String> backendRemoved = new ArrayList<>();
+
+    @Test
+    public void sweep_removesEndedCampaigns() {
+        BoundedCampaignStore<Timed> store = new BoundedCampaignStore<>(10, IDS);
+        CampaignExpiry<Timed> expiry = expiry(store);
+        expiry.attach(store);
+        assertFalse(alarm.isSet());
+
+        store.add(new Timed("a", 250));
+        store.add(new Timed("b", 1000));
+        store.add(new Timed("c", TimerWheel.NO_DEADLINE));
+        assertEquals(2, expiry.size());
+        // Rounded up to the tick
+        assertEquals(300, alarm.delayMillis);
+
+        now = 300;
+        alarm.fire();
+        assertEquals(Arrays.asList("b", "c"), ids(store));
+        assertEquals(Collections.singletonList("a"), backendRemoved);
+        assertEquals(1, expiry.getExpired());
+        assertEquals(1, expiry.size());
+        assertEquals(700, alarm.delayMillis);
+    }
+
+    @Test
+    public void removedCampaigns_loseTheirDeadline() {
+        BoundedCampaignStore<Timed> store = new BoundedCampaignStore<>(10, IDS);
+        CampaignExpiry<Timed> expiry = expiry(store);
+        expiry.attach(store);
+        store.add(new Timed("a", 200));
+        store.add(new Timed("b", 1000));
+
+        store.remove("a");
+        assertEquals(1, expiry.size());
+        assertEquals(1000, alarm.delayMillis);
+
+        store.remove("b");
+        assertEquals(0, expiry.size());
+        assertFalse(alarm.isSet());
+    }
+
+    @Test
+    public void reconcile_expiresMissingCampaigns_andMovesDeadlines() {
+        BoundedCampaignStore<Timed> store = new BoundedCampaignStore<>(10, IDS);
+        CampaignExpiry<Timed> expiry = expiry(store);
+        expiry.attach(store);
+        store.add(new Timed("a", 1000));
+        store.add(new Timed("b", 1000));
+        store.add(new Timed("c", 1000));
+        store.add(new Timed("d", 1000));
+
+        // The sync ends "a" sooner, drops "b", extends "c" and no longer ends "d"
+        expiry.reconcile(Arrays.asList(new Timed("a", 200), new Timed("c", 5000),
+                new Timed("d", TimerWheel.NO_DEADLINE), new Timed("x", 100)));
+        assertEquals(3, expiry.size());
+        assertEquals(0, alarm.delayMillis);
+
+        alarm.fire();
+        assertEquals(Collections.singletonList("b"), backendRemoved);
+        assertEquals(200, alarm.delayMillis);
+
+        now = 1000;
+        alarm.fire();
+        assertEquals(Arrays.asList("b", "a"), backendRemoved);
+        assertEquals(Arrays.asList("c", "d"), ids(store));
+        assertEquals(4000, alarm.delayMillis);
+        assertEquals(2, expiry.getExpired());
+    }
+
+    @Test
+    public void attach_skipsCampaignsRemovedWhileAttaching() {
+        // Writes land between the listener's registration and the expiry reading the snapshot
+        BoundedCampaignStore<Timed> store = new BoundedCampaignStore<Timed>(10, IDS) {
+            @Override
+            public List<Timed> addOnChangeListener(OnChangeListener<Timed> listener) {
+                List<Timed> current = super.addOnChangeListener(listener);
+                remove("a");
+                add(new Timed("d", 300));
+                return current;
+            }
+        };
+        store.add(new Timed("a", 200));
+        store.add(new Timed("b", 1000));
+        CampaignExpiry<Timed> expiry = expiry(store);
+
+        expiry.attach(store);
+        assertEquals(2, expiry.size());
+        assertEquals(300, alarm.delayMillis);
+
+        now = 300;
+        alarm.fire();
+        assertEquals(Collections.singletonList("d"), backendRemoved);
+        assertEquals(Collections.singletonList("b"), ids(store));
+    }
+
+    @Test
+    public void reconcile_beforeAttach_isIgnored() {
+        BoundedCampaignStore<Timed> store = new BoundedCampaignStore<>(10, IDS);
+        CampaignExpiry<Timed> expiry = expiry(store);
+        expiry.reconcile(Collections.singletonList(new Timed("a", 100)));
+        assertEquals(0, expiry.size());
+        assertFalse(alarm.isSet());
+    }
+
+    private CampaignExpiry<Timed> expiry(CampaignStore<Timed> store) {
+        CampaignCore.Backend<Timed> backend = new CampaignCore.Backend<Timed>() {
+            @Override
+            public void removeCampaign(Timed campaign) {
+                backendRemoved.add(campaign.id);
+            }
+
+            @Override
+            public Collection<? extends Timed> getFoundCampaigns() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void setCampaignViewed(Timed campaign) {
+            }
+        };
+        CampaignUiSink<Timed> uiSink = new CampaignUiSink<Timed>() {
+            @Override
+            public void showFoundCampaign(Timed campaign) {
+            }
+
+            @Override
+            public void refreshFoundList() {
+            }
+        };
+        Executor inline = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                task.run();
+            }
+        };
+        CampaignCore<Timed, String, String> core = new CampaignCore<>(store, IDS,
+                CampaignChangeTest.IDS, 0, 16, backend, inline, uiSink);
+        return new CampaignExpiry<>(core, IDS, DEADLINES, TICK_MILLIS, alarm, clock);
+    }
+
+    private static List<String> ids(CampaignStore<Timed> store) {
+        List<String> ids = new ArrayList<>();
+        for (Timed campaign : store.getCampaigns()) {
+            ids.add(campaign.id);
+        }
+        return ids;
+    }
+}
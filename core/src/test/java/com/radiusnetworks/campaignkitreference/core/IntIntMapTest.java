@@ -0,0 +1,48 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntIntMapTest {
+    @Test
+    public void missingKeys() {
+        IntIntMap map = new IntIntMap(4);
+        assertEquals(IntIntMap.MISSING, map.get(1));
+        assertEquals(IntIntMap.MISSING, map.remove(1));
+
+        map.put(1, 10);
+        map.put(1, 11);
+        assertEquals(1, map.size());
+        assertEquals(11, map.remove(1));
+        assertEquals(IntIntMap.MISSING, map.get(1));
+    }
+
+    @Test
+    public void randomPutsAndRemoves_matchHashMap() {
+        Random random = new Random(3);
+        IntIntMap map = new IntIntMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            // Few distinct keys, so probe chains collide and removals shift entries back
+            int key = random.nextInt(300) * 64;
+            if (random.nextInt(3) == 0) {
+                Integer value = expected.remove(key);
+                assertEquals((value != null) ? value : IntIntMap.MISSING, map.remove(key));
+            } else {
+                int value = random.nextInt(1000);
+                expected.put(key, value);
+                map.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 300 * 64; key += 64) {
+            Integer value = expected.get(key);
+            assertEquals((value != null) ? value : IntIntMap.MISSING, map.get(key));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlaceAttributesTest {
+    @Test
+    public void booleans_inAnyCase() {
+        PlaceAttributes attributes = attributes("a", " TRUE ", "b", "False", "c", "yes");
+        assertTrue(attributes.getBoolean("a", false));
+        assertFalse(attributes.getBoolean("b", true));
+        assertTrue(attributes.getBoolean("c", true));
+        assertFalse(attributes.getBoolean("missing", false));
+        assertEquals("TRUE", attributes.getString("a"));
+    }
+
+    @Test
+    public void numbers_decimalOnly() {
+        PlaceAttributes attributes = attributes(
+                "int", "42", "negative", "-1.5", "dot", "3.", "exponent", "1e3",
+                "nan", "NaN", "infinity", "Infinity", "hex", "0x1p3", "double", "1d",
+                "float", "1f", "overflow", "1e999", "text", "abc", "empty", "");
+        assertEquals(42, attributes.getNumber("int", 0), 0);
+        assertEquals(-1.5, attributes.getNumber("negative", 0), 0);
+        assertEquals(3, attributes.getNumber("dot", 0), 0);
+        assertEquals(1000, attributes.getNumber("exponent", 0), 0);
+        for (String key : Arrays.asList("nan", "infinity", "hex", "double", "float", "overflow",
+                "text", "empty", "missing")) {
+            assertEquals(key, -7, attributes.getNumber(key, -7), 0);
+        }
+        // Still readable as strings
+        assertEquals("0x1p3", attributes.getString("hex"));
+    }
+
+    @Test
+    public void lists_dropEmptyItems() {
+        PlaceAttributes attributes = attributes(
+                "items", " coffee, ,pastries ,", "one", "tea", "commas", ",,", "empty", " ");
+        assertEquals(Arrays.asList("coffee", "pastries"), attributes.getList("items"));
+        assertEquals(Collections.singletonList("tea"), attributes.getList("one"));
+        assertTrue(attributes.getList("commas").isEmpty());
+        assertTrue(attributes.getList("empty").isEmpty());
+        assertTrue(attributes.getList("missing").isEmpty());
+        assertTrue(attributes.has("empty"));
+        assertNull(attributes.getString("missing"));
+    }
+
+    @Test
+    public void getLong_wholeNumbersWithinRange() {
+        PlaceAttributes attributes = attributes(
+                "small", "12", "fraction", "12.5", "whole", "12.0",
+                "min", "-9223372036854775808", "belowMin", "-9223372036854777856",
+                "max", "9223372036854774784", "aboveMax", "9223372036854775807");
+        assertEquals(12, attributes.getLong("small", -1));
+        assertEquals(-1, attributes.getLong("fraction", -1));
+        assertEquals(12, attributes.getLong("whole", -1));
+        assertEquals(Long.MIN_VALUE, attributes.getLong("min", -1));
+        assertEquals(-1, attributes.getLong("belowMin", -1));
+        // The largest double below 2^63
+        assertEquals(9223372036854774784L, attributes.getLong("max", -1));
+        // Rounds to 2^63, which a long cannot hold
+        assertEquals(-1, attributes.getLong("aboveMax", -1));
+        assertEquals(-1, attributes.getLong("missing", -1));
+    }
+
+    @Test
+    public void nullKeysAndValues_areSkipped() {
+        Map<String, String> raw = new HashMap<>();
+        raw.put(null, "1");
+        raw.put("b", null);
+        raw.put("a", "1");
+        PlaceAttributes attributes = new PlaceAttributes(raw);
+        assertFalse(attributes.has("b"));
+        assertEquals(1, attributes.asMap().size());
+        assertEquals("{a=1}", attributes.toString());
+    }
+
+    private static PlaceAttributes attributes(String... keysAndValues) {
+        Map<String, String> raw = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            raw.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return new PlaceAttributes(raw);
+    }
+}
@@ -0,0 +1,233 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlaceFlapFilterTest {
+    private static final double ENTER_METRES = 2;
+    private static final double EXIT_METRES = 5;
+    private static final long ENTER_DWELL_MILLIS = 1000;
+    private static final long EXIT_DWELL_MILLIS = 3000;
+
+    /**
+     * A place as seen in one reading.
+     */
+    static final class Reading {
+        final int key;
+        final double distance;
+
+        Reading(int key, double distance) {
+            this.key = key;
+            this.distance = distance;
+        }
+    }
+
+    static final PlaceFlapFilter.Classifier<Reading, PlaceFlapFilter.Transition> CLASSIFIER =
+            new PlaceFlapFilter.Classifier<Reading, PlaceFlapFilter.Transition>() {
+                @Override
+                public int getKey(Reading place) {
+                    return place.key;
+                }
+
+                @Override
+                public double getDistance(Reading place) {
+                    return place.distance;
+                }
+
+                @Override
+                public PlaceFlapFilter.Transition getTransition(
+                        PlaceFlapFilter.Transition event) {
+                    return event;
+                }
+
+                @Override
+                public PlaceFlapFilter.Transition getEvent(PlaceFlapFilter.Transition transition) {
+                    return transition;
+                }
+            };
+
+    private final PlaceFlapFilter<Reading, PlaceFlapFilter.Transition> filter =
+            new PlaceFlapFilter<>(CLASSIFIER, ENTER_METRES, EXIT_METRES,
+                    ENTER_DWELL_MILLIS, EXIT_DWELL_MILLIS);
+    private final List<CampaignEventDispatcher.PlaceEvent<Reading,
+            PlaceFlapFilter.Transition>> out = new ArrayList<>();
+
+    @Test
+    public void enter_reportedOnceItHeldForTheDwellTime() {
+        ranging(1, 1.0, 0);
+        ranging(1, 1.5, 500);
+        assertTrue(out.isEmpty());
+        assertEquals(ENTER_DWELL_MILLIS, filter.getNextDeadline());
+
+        filter.takeDue(ENTER_DWELL_MILLIS - 1, out);
+        assertTrue(out.isEmpty());
+
+        filter.takeDue(ENTER_DWELL_MILLIS, out);
+        assertTransition(PlaceFlapFilter.Transition.ENTER, 0);
+        assertEquals(1.5, out.get(0).getPlace().distance, 0);
+        assertEquals(PlaceFlapFilter.NO_DEADLINE, filter.getNextDeadline());
+        assertEquals(2, filter.getSuppressedEvents());
+    }
+
+    @Test
+    public void turningBackWithinTheDwellTime_isAFlap() {
+        ranging(1, 1.0, 0);
+        ranging(1, 6.0, 500);
+        filter.takeDue(10000, out);
+
+        assertTrue(out.isEmpty());
+        assertEquals(1, filter.getFlaps());
+        assertEquals(0, filter.getTransitions());
+        assertEquals(PlaceFlapFilter.NO_DEADLINE, filter.getNextDeadline());
+    }
+
+    @Test
+    public void hysteresisBand_keepsTheState() {
+        enter(1);
+
+        // Between the enter and exit distances: still inside, ranging gets through
+        ranging(1, 3.5, 2000);
+        assertEquals(1, out.size());
+        assertEquals(PlaceFlapFilter.Transition.NONE, out.get(0).getEventType());
+        out.clear();
+
+        // Nor does the band cancel a pending exit
+        event(1, 6.0, PlaceFlapFilter.Transition.EXIT, 3000);
+        ranging(1, 3.5, 4000);
+        assertTrue(out.isEmpty());
+        assertEquals(3000 + EXIT_DWELL_MILLIS, filter.getNextDeadline());
+
+        filter.takeDue(3000 + EXIT_DWELL_MILLIS, out);
+        assertTransition(PlaceFlapFilter.Transition.EXIT, 3000);
+        assertEquals(0, filter.getFlaps());
+    }
+
+    @Test
+    public void regionEnter_onlyTrustedWithoutADistance() {
+        event(1, 3.5, PlaceFlapFilter.Transition.ENTER, 0);
+        assertEquals(PlaceFlapFilter.NO_DEADLINE, filter.getNextDeadline());
+
+        event(1, -1, PlaceFlapFilter.Transition.ENTER, 100);
+        assertEquals(100 + ENTER_DWELL_MILLIS, filter.getNextDeadline());
+    }
+
+    @Test
+    public void dueTransition_goesBeforeTheNextEvent() {
+        ranging(1, 1.0, 0);
+        ranging(1, 1.0, ENTER_DWELL_MILLIS + 500);
+
+        assertEquals(2, out.size());
+        assertTransition(PlaceFlapFilter.Transition.ENTER, 0);
+        assertEquals(PlaceFlapFilter.Transition.NONE, out.get(1).getEventType());
+    }
+
+    @Test
+    public void withoutDwell_transitionsAreReportedAtOnce() {
+        PlaceFlapFilter<Reading, PlaceFlapFilter.Transition> eager =
+                new PlaceFlapFilter<>(CLASSIFIER, ENTER_METRES, EXIT_METRES, 0, 0);
+        eager.filter(placeEvent(1, 1.0, PlaceFlapFilter.Transition.ENTER, 0), out);
+
+        assertTransition(PlaceFlapFilter.Transition.ENTER, 0);
+        assertEquals(0, eager.getSuppressedEvents());
+    }
+
+    @Test
+    public void manyPlaces_trackedIndependently() {
+        for (int key = 0; key < 500; key++) {
+            ranging(key, 1.0, key);
+        }
+        filter.takeDue(ENTER_DWELL_MILLIS + 499, out);
+
+        assertEquals(500, out.size());
+        assertEquals(500, filter.size());
+        assertEquals(PlaceFlapFilter.NO_DEADLINE, filter.getNextDeadline());
+    }
+
+    @Test
+    public void placesStablyOutside_areNotKept() {
+        // Seen only far away
+        ranging(1, 9.0, 0);
+        assertEquals(0, filter.size());
+
+        // Turned back within the dwell time
+        ranging(2, 1.0, 0);
+        assertEquals(1, filter.size());
+        ranging(2, 6.0, 500);
+        assertEquals(0, filter.size());
+
+        enter(3);
+        assertEquals(1, filter.size());
+        ranging(3, 6.0, 1000);
+        filter.takeDue(1000 + EXIT_DWELL_MILLIS, out);
+        assertTransition(PlaceFlapFilter.Transition.EXIT, 1000);
+        assertEquals(0, filter.size());
+    }
+
+    @Test
+    public void manyPlacesComingAndGoing_leaveNothingBehind() {
+        for (int round = 0; round < 3; round++) {
+            long start = round * 10000L;
+            for (int key = 0; key < 500; key++) {
+                ranging(key, 1.0, start + key);
+            }
+            filter.takeDue(start + ENTER_DWELL_MILLIS + 249, out);
+            assertEquals(250, out.size());
+            // Leaving frees slots while the rest still wait to enter
+            for (int key = 0; key < 250; key++) {
+                ranging(key, 6.0, start + 2000 + key);
+            }
+            assertEquals(start + ENTER_DWELL_MILLIS + 250, filter.getNextDeadline());
+            filter.takeDue(start + ENTER_DWELL_MILLIS + 499, out);
+            for (int key = 250; key < 500; key++) {
+                ranging(key, 6.0, start + 2000 + key);
+            }
+            assertEquals(start + 2000 + EXIT_DWELL_MILLIS, filter.getNextDeadline());
+            assertEquals(500, filter.size());
+
+            filter.takeDue(start + 2000 + EXIT_DWELL_MILLIS + 499, out);
+            assertEquals(1000, out.size());
+            assertEquals(0, filter.size());
+            assertEquals(PlaceFlapFilter.NO_DEADLINE, filter.getNextDeadline());
+            out.clear();
+        }
+        assertEquals(0, filter.getFlaps());
+        assertEquals(3000, filter.getTransitions());
+    }
+
+    private void enter(int key) {
+        ranging(key, 1.0, 0);
+        filter.takeDue(ENTER_DWELL_MILLIS, out);
+        assertTransition(PlaceFlapFilter.Transition.ENTER, 0);
+        out.clear();
+    }
+
+    private void ranging(int key, double distance, long timestamp) {
+        event(key, distance, PlaceFlapFilter.Transition.NONE, timestamp);
+    }
+
+    private void event(int key, double distance, PlaceFlapFilter.Transition transition,
+                       long timestamp) {
+        filter.filter(placeEvent(key, distance, transition, timestamp), out);
+    }
+
+    private static CampaignEventDispatcher.PlaceEvent<Reading, PlaceFlapFilter.Transition>
+            placeEvent(int key, double distance, PlaceFlapFilter.Transition transition,
+                       long timestamp) {
+        return new CampaignEventDispatcher.PlaceEvent<>(
+                new Reading(key, distance), transition, timestamp);
+    }
+
+    private void assertTransition(PlaceFlapFilter.Transition transition, long since) {
+        CampaignEventDispatcher.PlaceEvent<Reading, PlaceFlapFilter.Transition> event =
+                out.get(0);
+        assertSame(transition, event.getEventType());
+        assertTrue(event.isTransition());
+        assertEquals(since, event.getTimestamp());
+    }
+}
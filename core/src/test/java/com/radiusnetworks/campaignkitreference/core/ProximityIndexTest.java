@@ -0,0 +1,201 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import com.radiusnetworks.campaignkitreference.core.PlaceFlapFilter.Transition;
+import com.radiusnetworks.campaignkitreference.core.PlaceFlapFilterTest.Reading;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProximityIndexTest {
+    private static final long STALE_MILLIS = 1000;
+
+    private final List<List<ProximityIndex.Ranked<Reading>>> published = new ArrayList<>();
+
+    private final ProximityIndex.OnRankingChangeListener<Reading> listener =
+            new ProximityIndex.OnRankingChangeListener<Reading>() {
+                @Override
+                public void onRankingChanged(List<ProximityIndex.Ranked<Reading>> nearest) {
+                    published.add(nearest);
+                }
+            };
+
+    @Test
+    public void insert_ranksNearestFirst() {
+        ProximityIndex<Reading, Transition> index = index(1, 3);
+        index.onPlaceEvent(new Reading(1, 5), Transition.NONE, 0);
+        index.onPlaceEvent(new Reading(2, 1), Transition.ENTER, 0);
+        index.onPlaceEvent(new Reading(3, 3), Transition.NONE, 0);
+        index.onPlaceEvent(new Reading(4, 9), Transition.NONE, 0);
+
+        assertTrue(index.publish(0));
+        assertKeys(index.getNearest(), 2, 3, 1);
+        assertEquals(4, index.size());
+        assertEquals(1, published.size());
+
+        // Same order, so nobody is told
+        index.onPlaceEvent(new Reading(2, 1.5), Transition.NONE, 10);
+        assertFalse(index.publish(10));
+        assertEquals(1.5, index.getNearest().get(0).getDistance(), 0);
+        assertEquals(1, published.size());
+    }
+
+    @Test
+    public void update_smoothsTheDistance() {
+        ProximityIndex<Reading, Transition> index = index(0.5, 3);
+        index.onPlaceEvent(new Reading(1, 2), Transition.NONE, 0);
+        index.onPlaceEvent(new Reading(2, 4), Transition.NONE, 0);
+        index.publish(0);
+
+        // One near reading only moves the place halfway
+        index.onPlaceEvent(new Reading(2, 1), Transition.NONE, 10);
+        index.publish(10);
+        assertKeys(index.getNearest(), 1, 2);
+        assertEquals(2.5, index.getNearest().get(1).getDistance(), 0);
+
+        index.onPlaceEvent(new Reading(2, 1), Transition.NONE, 20);
+        assertTrue(index.publish(20));
+        assertKeys(index.getNearest(), 2, 1);
+        assertEquals(1.75, index.getNearest().get(0).getDistance(), 0);
+
+        // Moving away sifts it back down
+        index.onPlaceEvent(new Reading(2, 10), Transition.NONE, 30);
+        assertTrue(index.publish(30));
+        assertKeys(index.getNearest(), 1, 2);
+    }
+
+    @Test
+    public void unknownDistance_ranksLastUntilRanged() {
+        ProximityIndex<Reading, Transition> index = index(0.5, 3);
+        index.onPlaceEvent(new Reading(1, -1), Transition.ENTER, 0);
+        index.onPlaceEvent(new Reading(2, 8), Transition.NONE, 0);
+        index.publish(0);
+        assertKeys(index.getNearest(), 2, 1);
+        assertEquals(Double.POSITIVE_INFINITY, index.getNearest().get(1).getDistance(), 0);
+
+        // The first reading is taken as is, not averaged with infinity
+        index.onPlaceEvent(new Reading(1, 2), Transition.NONE, 10);
+        index.publish(10);
+        assertKeys(index.getNearest(), 1, 2);
+        assertEquals(2, index.getNearest().get(0).getDistance(), 0);
+    }
+
+    @Test
+    public void exit_removesThePlace() {
+        ProximityIndex<Reading, Transition> index = index(1, 3);
+        index.onPlaceEvent(new Reading(1, 1), Transition.NONE, 0);
+        index.onPlaceEvent(new Reading(2, 2), Transition.NONE, 0);
+        index.onPlaceEvent(new Reading(3, 3), Transition.NONE, 0);
+        index.publish(0);
+
+        index.onPlaceEvent(new Reading(1, 1), Transition.EXIT, 10);
+        // Exiting a place not in range is ignored
+        index.onPlaceEvent(new Reading(7, 1), Transition.EXIT, 10);
+        assertTrue(index.publish(10));
+        assertKeys(index.getNearest(), 2, 3);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void publish_dropsStalePlaces() {
+        ProximityIndex<Reading, Transition> index = index(1, 3);
+        index.onPlaceEvent(new Reading(1, 1), Transition.NONE, 0);
+        index.onPlaceEvent(new Reading(2, 2), Transition.NONE, 600);
+        index.onPlaceEvent(new Reading(3, 3), Transition.NONE, 0);
+        index.publish(600);
+        assertKeys(index.getNearest(), 1, 2, 3);
+
+        assertTrue(index.publish(STALE_MILLIS + 1));
+        assertKeys(index.getNearest(), 2);
+        assertEquals(1, index.size());
+
+        index.publish(600 + STALE_MILLIS + 1);
+        assertTrue(index.getNearest().isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void randomEvents_rankLikeASort() {
+        Random random = new Random(7);
+        int rankedCount = 10;
+        ProximityIndex<Reading, Transition> index = index(1, rankedCount);
+        Map<Integer, Double> inRange = new HashMap<>();
+        for (int batch = 0; batch < 2000; batch++) {
+            for (int i = 0; i < 20; i++) {
+                int key = random.nextInt(200);
+                if (random.nextInt(5) == 0) {
+                    inRange.remove(key);
+                    index.onPlaceEvent(new Reading(key, 0), Transition.EXIT, 0);
+                } else {
+                    // Whole metres, so the unsmoothed update is exact
+                    double distance = random.nextInt(100);
+                    inRange.put(key, distance);
+                    index.onPlaceEvent(new Reading(key, distance), Transition.NONE, 0);
+                }
+            }
+            index.publish(0);
+
+            List<Double> sorted = new ArrayList<>(inRange.values());
+            Collections.sort(sorted);
+            List<ProximityIndex.Ranked<Reading>> nearest = index.getNearest();
+            assertEquals(Math.min(rankedCount, sorted.size()), nearest.size());
+            for (int i = 0; i < nearest.size(); i++) {
+                ProximityIndex.Ranked<Reading> ranked = nearest.get(i);
+                // Ties may come in either order, so compare distances
+                assertEquals(sorted.get(i), ranked.getDistance(), 0);
+                assertEquals(inRange.get(ranked.getKey()), ranked.getDistance(), 0);
+            }
+            assertEquals(inRange.size(), index.size());
+        }
+    }
+
+    @Test
+    public void orderByProximity_bucketsByRank() {
+        List<ProximityIndex.Ranked<String>> nearest = Arrays.asList(
+                new ProximityIndex.Ranked<>(20, "b", 1),
+                new ProximityIndex.Ranked<>(10, "a", 2));
+        final Map<String, Integer> placeOf = new HashMap<>();
+        placeOf.put("a1", 10);
+        placeOf.put("x1", 30);
+        placeOf.put("b1", 20);
+        placeOf.put("n1", ProximityIndex.NO_PLACE);
+        placeOf.put("a2", 10);
+        placeOf.put("b2", 20);
+        ProximityIndex.CampaignPlaces<String> places = new ProximityIndex.CampaignPlaces<String>() {
+            @Override
+            public int getPlaceKey(String campaign) {
+                return placeOf.get(campaign);
+            }
+        };
+        List<String> campaigns = Arrays.asList("a1", "x1", "b1", "n1", "a2", "b2");
+
+        assertEquals(Arrays.asList("b1", "b2", "a1", "a2", "x1", "n1"),
+                ProximityIndex.orderByProximity(campaigns, nearest, places));
+        assertEquals(campaigns, ProximityIndex.orderByProximity(campaigns,
+                Collections.<ProximityIndex.Ranked<String>>emptyList(), places));
+    }
+
+    private ProximityIndex<Reading, Transition> index(double smoothing, int rankedCount) {
+        ProximityIndex<Reading, Transition> index = new ProximityIndex<>(
+                PlaceFlapFilterTest.CLASSIFIER, smoothing, STALE_MILLIS, rankedCount);
+        index.addOnRankingChangeListener(listener);
+        return index;
+    }
+
+    private static void assertKeys(List<ProximityIndex.Ranked<Reading>> nearest, int... keys) {
+        assertEquals(keys.length, nearest.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(keys[i], nearest.get(i).getKey());
+        }
+    }
+}
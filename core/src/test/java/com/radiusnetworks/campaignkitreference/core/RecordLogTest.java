@@ -0,0 +1,155 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecordLogTest {
+    private static final int MAGIC = 0x54455354; // "TEST"
+    private static final int RECORD_SIZE = 8;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Integer> read = new ArrayList<>();
+    private final RecordLog.Reader reader = new RecordLog.Reader() {
+        @Override
+        public void onRecord(ByteBuffer record, int offset) {
+            read.add(record.getInt(offset));
+        }
+    };
+
+    @Test
+    public void noFile_replaysNothing() throws IOException {
+        RecordLog log = log(new File(folder.getRoot(), "log"));
+        assertEquals(RecordLog.Replay.NONE, log.replay(reader));
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    public void appended_replayInOrder() throws IOException {
+        File file = new File(folder.getRoot(), "log");
+        RecordLog log = log(file);
+        log.append(records(log, 1, 2));
+        log.append(records(log, 3));
+        log.close();
+        assertEquals(RecordLog.HEADER_SIZE + 3 * RECORD_SIZE, file.length());
+
+        RecordLog replayed = log(file);
+        assertEquals(RecordLog.Replay.COMPLETE, replayed.replay(reader));
+        assertEquals(Arrays.asList(1, 2, 3), read);
+        assertEquals(3, replayed.getRecordCount());
+    }
+
+    @Test
+    public void tornRecord_stopsReplay_andIsWrittenOver() throws IOException {
+        File file = new File(folder.getRoot(), "log");
+        RecordLog log = log(file);
+        log.append(records(log, 1, 2, 3));
+        log.close();
+        // A crash in the middle of the last record
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(file.length() - 3);
+        raf.close();
+
+        RecordLog replayed = log(file);
+        assertEquals(RecordLog.Replay.TRUNCATED, replayed.replay(reader));
+        assertEquals(Arrays.asList(1, 2), read);
+
+        replayed.append(records(replayed, 4));
+        replayed.close();
+        read.clear();
+        assertEquals(RecordLog.Replay.COMPLETE, log(file).replay(reader));
+        assertEquals(Arrays.asList(1, 2, 4), read);
+    }
+
+    @Test
+    public void badChecksum_stopsReplay() throws IOException {
+        File file = new File(folder.getRoot(), "log");
+        RecordLog log = log(file);
+        log.append(records(log, 1, 2, 3));
+        log.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(RecordLog.HEADER_SIZE + RECORD_SIZE + 1);
+        raf.write(0x7f);
+        raf.close();
+
+        assertEquals(RecordLog.Replay.TRUNCATED, log(file).replay(reader));
+        assertEquals(Arrays.asList(1), read);
+    }
+
+    @Test
+    public void otherFormat_isNotRead() throws IOException {
+        File file = new File(folder.getRoot(), "log");
+        RecordLog log = log(file);
+        log.append(records(log, 1));
+        log.close();
+
+        assertEquals(RecordLog.Replay.UNKNOWN_FORMAT,
+                new RecordLog(file, MAGIC, 2, RECORD_SIZE).replay(reader));
+        assertEquals(RecordLog.Replay.UNKNOWN_FORMAT,
+                new RecordLog(file, MAGIC + 1, 1, RECORD_SIZE).replay(reader));
+        assertEquals(RecordLog.Replay.UNKNOWN_FORMAT,
+                new RecordLog(file, MAGIC, 1, RECORD_SIZE * 2).replay(reader));
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    public void rewrite_replacesTheRecords() throws IOException {
+        File file = new File(folder.getRoot(), "log");
+        RecordLog log = log(file);
+        log.append(records(log, 1, 2, 3));
+        log.rewrite(records(log, 7));
+        assertEquals(1, log.getRecordCount());
+        log.append(records(log, 8));
+        log.close();
+
+        assertEquals(RecordLog.Replay.COMPLETE, log(file).replay(reader));
+        assertEquals(Arrays.asList(7, 8), read);
+        assertFalse(new File(folder.getRoot(), "log.tmp").exists());
+    }
+
+    @Test
+    public void failedWrite_disablesTheLog() throws IOException {
+        // A file where the log's directory should be
+        File parent = folder.newFile("parent");
+        RecordLog log = log(new File(parent, "log"));
+        try {
+            log.append(records(log, 1));
+            fail("appended under a file");
+        } catch (IOException expected) {
+            // Disabled from now on
+        }
+        assertTrue(log.isFailed());
+        log.append(records(log, 2));
+        log.rewrite(records(log, 3));
+        assertEquals(0, log.getRecordCount());
+    }
+
+    private static RecordLog log(File file) {
+        return new RecordLog(file, MAGIC, 1, RECORD_SIZE);
+    }
+
+    private static ByteBuffer records(RecordLog log, int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * RECORD_SIZE);
+        for (int value : values) {
+            int start = buffer.position();
+            buffer.putInt(value);
+            log.putChecksum(buffer, start);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,168 @@
+package com.radiusnetworks.campaignkitreference.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+    @Test
+    public void deadlines_roundedUpToTheTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 0);
+        wheel.schedule("a", 25);
+        List<String> expired = new ArrayList<>();
+
+        assertEquals(30, wheel.nextWakeMillis());
+        assertEquals(0, wheel.advance(29, expired));
+        assertEquals(1, wheel.advance(30, expired));
+        assertEquals(Arrays.asList("a"), expired);
+        assertEquals(TimerWheel.NO_DEADLINE, wheel.nextWakeMillis());
+    }
+
+    @Test
+    public void deadlinesOnEveryLevel_cascadeDownAndExpireOnTime() {
+        // One millisecond ticks: levels reach 64, 4096, 262144 and 16777216 ticks ahead
+        TimerWheel<String> wheel = new TimerWheel<>(1, 0);
+        Map<String, Long> deadlines = new HashMap<>();
+        deadlines.put("level0", 5L);
+        deadlines.put("level1", 100L);
+        deadlines.put("level1-edge", 4095L);
+        deadlines.put("level2", 5000L);
+        deadlines.put("level3", 300000L);
+        deadlines.put("beyond", 20000000L);
+        for (Map.Entry<String, Long> entry : deadlines.entrySet()) {
+            wheel.schedule(entry.getKey(), entry.getValue());
+        }
+
+        Map<String, Long> expiredAt = sleepUntilEmpty(wheel, deadlines);
+
+        assertEquals(deadlines, expiredAt);
+    }
+
+    @Test
+    public void wakes_fewTimesForFarDeadlines() {
+        TimerWheel<String> wheel = new TimerWheel<>(1, 0);
+        wheel.schedule("far", 300000);
+
+        int wakes = 0;
+        List<String> expired = new ArrayList<>();
+        while (wheel.size() > 0) {
+            wheel.advance(wheel.nextWakeMillis(), expired);
+            wakes++;
+        }
+        // One per level it moves down through, then the expiry
+        assertTrue("woke " + wakes + " times", wakes <= 4);
+        assertEquals(Arrays.asList("far"), expired);
+    }
+
+    @Test
+    public void schedule_replacesTheDeadline() {
+        TimerWheel<String> wheel = new TimerWheel<>(1, 0);
+        wheel.schedule("a", 5000);
+        wheel.schedule("a", 10);
+        List<String> expired = new ArrayList<>();
+
+        wheel.advance(10, expired);
+        assertEquals(Arrays.asList("a"), expired);
+        wheel.advance(6000, expired);
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void cancelled_neverExpire() {
+        TimerWheel<String> wheel = new TimerWheel<>(1, 0);
+        wheel.schedule("a", 10);
+        wheel.schedule("b", 70);
+        wheel.schedule("c", 5000);
+        wheel.schedule("d", TimerWheel.NO_DEADLINE);
+
+        assertTrue(wheel.cancel("a"));
+        assertFalse(wheel.cancel("a"));
+        assertEquals(1, wheel.retainAll(Collections.singleton("c")));
+        assertFalse(wheel.contains("d"));
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(10000, expired);
+        assertEquals(Arrays.asList("c"), expired);
+    }
+
+    @Test
+    public void passedDeadlines_expireWithTheNextAdvance() {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 1000);
+        wheel.schedule("past", 0);
+        List<String> expired = new ArrayList<>();
+
+        wheel.advance(1000, expired);
+        assertEquals(Arrays.asList("past"), expired);
+    }
+
+    @Test
+    public void randomDeadlines_matchSortedOrder() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            long tick = 1 + random.nextInt(50);
+            long now = random.nextInt(1000000);
+            TimerWheel<Integer> wheel = new TimerWheel<>(tick, now);
+            Map<Integer, Long> due = new HashMap<>();
+            for (int key = 0; key < 200; key++) {
+                long deadline = now + (long) (random.nextDouble() * random.nextDouble()
+                        * 40000000L);
+                wheel.schedule(key, deadline);
+                // The tick at which it must expire
+                due.put(key, (deadline + tick - 1) / tick * tick);
+            }
+
+            List<Integer> expired = new ArrayList<>();
+            while (wheel.size() > 0) {
+                long step = 1 + (long) (random.nextDouble() * random.nextDouble() * 5000000L);
+                now = Math.min(now + step, wheel.nextWakeMillis() + random.nextInt(3) * tick);
+                wheel.advance(now, expired);
+                for (Integer key : expired) {
+                    long at = due.remove(key);
+                    assertTrue("key " + key + " due " + at + " expired at " + now, at <= now);
+                }
+                expired.clear();
+                for (long at : due.values()) {
+                    assertTrue("missed a deadline at " + at + ", now " + now, at > now);
+                }
+            }
+            assertTrue(due.isEmpty());
+        }
+    }
+
+    /**
+     * Advance from wake to wake, as the alarm does, recording when each key expires.
+     */
+    private static Map<String, Long> sleepUntilEmpty(TimerWheel<String> wheel,
+                                                     Map<String, Long> deadlines) {
+        Map<String, Long> expiredAt = new HashMap<>();
+        List<String> expired = new ArrayList<>();
+        long earliest = Collections.min(deadlines.values());
+        while (wheel.size() > 0) {
+            long wake = wheel.nextWakeMillis();
+            assertTrue("woke at " + wake + " after a deadline at " + earliest, wake <= earliest);
+            wheel.advance(wake, expired);
+            for (String key : expired) {
+                expiredAt.put(key, wake);
+            }
+            expired.clear();
+
+            earliest = Long.MAX_VALUE;
+            for (Map.Entry<String, Long> entry : deadlines.entrySet()) {
+                if (!expiredAt.containsKey(entry.getKey())) {
+                    earliest = Math.min(earliest, entry.getValue());
+                }
+            }
+        }
+        return expiredAt;
+    }
+}